@@ -0,0 +1,46 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+/**
+ * Lets commands of other threads wait until the asynchronous commands of the same session
+ * finished, so they run in the order they were issued and never pass the interceptors concurrently.
+ *
+ * @see CosmoCodeSeleniumTest#async()
+ * @since 1.6
+ */
+final class AsyncGuard implements SeleniumInterceptor {
+
+    private volatile AsyncSession async;
+
+    /**
+     * @param session the asynchronous view of the guarded session, null if there is none
+     */
+    void setAsync(AsyncSession session) {
+        this.async = session;
+    }
+
+    @Override
+    public Object intercept(SeleniumInvocation invocation) throws Throwable {
+        final AsyncSession session = async;
+        if (session != null) {
+            session.awaitIdle();
+        }
+        return invocation.proceed();
+    }
+
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous variant of {@link com.thoughtworks.selenium.Selenium}. Every command returns
+ * immediately and runs on the session's own thread. Commands of one session run in the
+ * order they were issued, commands of different sessions run concurrently.
+ *
+ * @see AsyncSession
+ * @since 1.6
+ */
+public interface AsyncSelenium {
+
+    /* CHECKSTYLE:OFF */
+
+    Future<Void> setExtensionJs(String extensionJs);
+
+    Future<Void> showContextualBanner();
+
+    Future<Void> showContextualBanner(String className, String methodName);
+
+    Future<Void> click(String locator);
+
+    Future<Void> doubleClick(String locator);
+
+    Future<Void> contextMenu(String locator);
+
+    Future<Void> clickAt(String locator, String coordString);
+
+    Future<Void> doubleClickAt(String locator, String coordString);
+
+    Future<Void> contextMenuAt(String locator, String coordString);
+
+    Future<Void> fireEvent(String locator, String eventName);
+
+    Future<Void> focus(String locator);
+
+    Future<Void> keyPress(String locator, String keySequence);
+
+    Future<Void> shiftKeyDown();
+
+    Future<Void> shiftKeyUp();
+
+    Future<Void> metaKeyDown();
+
+    Future<Void> metaKeyUp();
+
+    Future<Void> altKeyDown();
+
+    Future<Void> altKeyUp();
+
+    Future<Void> controlKeyDown();
+
+    Future<Void> controlKeyUp();
+
+    Future<Void> keyDown(String locator, String keySequence);
+
+    Future<Void> keyUp(String locator, String keySequence);
+
+    Future<Void> mouseOver(String locator);
+
+    Future<Void> mouseOut(String locator);
+
+    Future<Void> mouseDown(String locator);
+
+    Future<Void> mouseDownRight(String locator);
+
+    Future<Void> mouseDownAt(String locator, String coordString);
+
+    Future<Void> mouseDownRightAt(String locator, String coordString);
+
+    Future<Void> mouseUp(String locator);
+
+    Future<Void> mouseUpRight(String locator);
+
+    Future<Void> mouseUpAt(String locator, String coordString);
+
+    Future<Void> mouseUpRightAt(String locator, String coordString);
+
+    Future<Void> mouseMove(String locator);
+
+    Future<Void> mouseMoveAt(String locator, String coordString);
+
+    Future<Void> type(String locator, String value);
+
+    Future<Void> typeKeys(String locator, String value);
+
+    Future<Void> setSpeed(String value);
+
+    Future<String> getSpeed();
+
+    Future<Void> check(String locator);
+
+    Future<Void> uncheck(String locator);
+
+    Future<Void> select(String selectLocator, String optionLocator);
+
+    Future<Void> addSelection(String locator, String optionLocator);
+
+    Future<Void> removeSelection(String locator, String optionLocator);
+
+    Future<Void> removeAllSelections(String locator);
+
+    Future<Void> submit(String formLocator);
+
+    Future<Void> open(String url);
+
+    Future<Void> openWindow(String url, String windowID);
+
+    Future<Void> selectWindow(String windowID);
+
+    Future<Void> selectPopUp(String windowID);
+
+    Future<Void> deselectPopUp();
+
+    Future<Void> selectFrame(String locator);
+
+    Future<Boolean> getWhetherThisFrameMatchFrameExpression(String currentFrameString, String target);
+
+    Future<Boolean> getWhetherThisWindowMatchWindowExpression(String currentWindowString, String target);
+
+    Future<Void> waitForPopUp(String windowID, String timeout);
+
+    Future<Void> chooseCancelOnNextConfirmation();
+
+    Future<Void> chooseOkOnNextConfirmation();
+
+    Future<Void> answerOnNextPrompt(String answer);
+
+    Future<Void> goBack();
+
+    Future<Void> refresh();
+
+    Future<Void> close();
+
+    Future<Boolean> isAlertPresent();
+
+    Future<Boolean> isPromptPresent();
+
+    Future<Boolean> isConfirmationPresent();
+
+    Future<String> getAlert();
+
+    Future<String> getConfirmation();
+
+    Future<String> getPrompt();
+
+    Future<String> getLocation();
+
+    Future<String> getTitle();
+
+    Future<String> getBodyText();
+
+    Future<String> getValue(String locator);
+
+    Future<String> getText(String locator);
+
+    Future<Void> highlight(String locator);
+
+    Future<String> getEval(String script);
+
+    Future<Boolean> isChecked(String locator);
+
+    Future<String> getTable(String tableCellAddress);
+
+    Future<String[]> getSelectedLabels(String selectLocator);
+
+    Future<String> getSelectedLabel(String selectLocator);
+
+    Future<String[]> getSelectedValues(String selectLocator);
+
+    Future<String> getSelectedValue(String selectLocator);
+
+    Future<String[]> getSelectedIndexes(String selectLocator);
+
+    Future<String> getSelectedIndex(String selectLocator);
+
+    Future<String[]> getSelectedIds(String selectLocator);
+
+    Future<String> getSelectedId(String selectLocator);
+
+    Future<Boolean> isSomethingSelected(String selectLocator);
+
+    Future<String[]> getSelectOptions(String selectLocator);
+
+    Future<String> getAttribute(String attributeLocator);
+
+    Future<Boolean> isTextPresent(String pattern);
+
+    Future<Boolean> isElementPresent(String locator);
+
+    Future<Boolean> isVisible(String locator);
+
+    Future<Boolean> isEditable(String locator);
+
+    Future<String[]> getAllButtons();
+
+    Future<String[]> getAllLinks();
+
+    Future<String[]> getAllFields();
+
+    Future<String[]> getAttributeFromAllWindows(String attributeName);
+
+    Future<Void> dragdrop(String locator, String movementsString);
+
+    Future<Void> setMouseSpeed(String pixels);
+
+    Future<Number> getMouseSpeed();
+
+    Future<Void> dragAndDrop(String locator, String movementsString);
+
+    Future<Void> dragAndDropToObject(String locatorOfObjectToBeDragged, String locatorOfDragDestinationObject);
+
+    Future<Void> windowFocus();
+
+    Future<Void> windowMaximize();
+
+    Future<String[]> getAllWindowIds();
+
+    Future<String[]> getAllWindowNames();
+
+    Future<String[]> getAllWindowTitles();
+
+    Future<String> getHtmlSource();
+
+    Future<Void> setCursorPosition(String locator, String position);
+
+    Future<Number> getElementIndex(String locator);
+
+    Future<Boolean> isOrdered(String locator1, String locator2);
+
+    Future<Number> getElementPositionLeft(String locator);
+
+    Future<Number> getElementPositionTop(String locator);
+
+    Future<Number> getElementWidth(String locator);
+
+    Future<Number> getElementHeight(String locator);
+
+    Future<Number> getCursorPosition(String locator);
+
+    Future<String> getExpression(String expression);
+
+    Future<Number> getXpathCount(String xpath);
+
+    Future<Void> assignId(String locator, String identifier);
+
+    Future<Void> allowNativeXpath(String allow);
+
+    Future<Void> ignoreAttributesWithoutValue(String ignore);
+
+    Future<Void> waitForCondition(String script, String timeout);
+
+    Future<Void> setTimeout(String timeout);
+
+    Future<Void> waitForPageToLoad(String timeout);
+
+    Future<Void> waitForFrameToLoad(String frameAddress, String timeout);
+
+    Future<String> getCookie();
+
+    Future<String> getCookieByName(String name);
+
+    Future<Boolean> isCookiePresent(String name);
+
+    Future<Void> createCookie(String nameValuePair, String optionsString);
+
+    Future<Void> deleteCookie(String name, String optionsString);
+
+    Future<Void> deleteAllVisibleCookies();
+
+    Future<Void> setBrowserLogLevel(String logLevel);
+
+    Future<Void> runScript(String script);
+
+    Future<Void> addLocationStrategy(String strategyName, String functionDefinition);
+
+    Future<Void> captureEntirePageScreenshot(String filename, String kwargs);
+
+    Future<Void> rollup(String rollupName, String kwargs);
+
+    Future<Void> addScript(String scriptContent, String scriptTagId);
+
+    Future<Void> removeScript(String scriptTagId);
+
+    Future<Void> useXpathLibrary(String libraryName);
+
+    Future<Void> setContext(String context);
+
+    Future<Void> attachFile(String fieldLocator, String fileLocator);
+
+    Future<Void> captureScreenshot(String filename);
+
+    Future<String> captureScreenshotToString();
+
+    Future<String> captureNetworkTraffic(String type);
+
+    Future<String> captureEntirePageScreenshotToString(String kwargs);
+
+    Future<String> retrieveLastRemoteControlLogs();
+
+    Future<Void> keyDownNative(String keycode);
+
+    Future<Void> keyUpNative(String keycode);
+
+    Future<Void> keyPressNative(String keycode);
+
+    /* CHECKSTYLE:ON */
+
+}
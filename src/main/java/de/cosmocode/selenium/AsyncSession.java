@@ -0,0 +1,305 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.thoughtworks.selenium.Selenium;
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * A selenium session with its own serial command thread.
+ *
+ * <p>
+ * Usage, e.g. for a chat between two users:
+ * </p>
+ * <pre>
+ * final AsyncSelenium alice = async();
+ * final AsyncSelenium bob = startAsyncSession();
+ * alice.type("message", "hello");
+ * bob.type("message", "hi");
+ * alice.click("send");
+ * bob.click("send").get();
+ * </pre>
+ *
+ * <p>
+ * The interceptors of a session are not thread-safe, so other threads using the same session
+ * have to {@link #awaitIdle() wait} until all asynchronous commands finished. Sessions created
+ * by {@link CosmoCodeSeleniumTest#createSelenium()} do so on every command.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class AsyncSession {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    // resolved once, so a mismatch between both interfaces fails on first use of the class
+    private static final Map<Method, Method> TARGETS = resolveTargets();
+
+    private final Selenium selenium;
+    private final boolean owned;
+    private final ExecutorService executor;
+    private final AsyncSelenium async;
+
+    private volatile Thread thread;
+    private int pending;
+
+    /**
+     * Wraps a started session.
+     *
+     * @param selenium the session
+     * @param owned whether {@link #close(long)} stops the session
+     */
+    public AsyncSession(Selenium selenium, boolean owned) {
+        this.selenium = selenium;
+        this.owned = owned;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread created = new Thread(runnable, "selenium-session-" + COUNTER.incrementAndGet());
+                created.setDaemon(true);
+                thread = created;
+                return created;
+            }
+        });
+        this.async = (AsyncSelenium) Proxy.newProxyInstance(
+            AsyncSelenium.class.getClassLoader(),
+            new Class<?>[] {AsyncSelenium.class},
+            new Handler()
+        );
+    }
+
+    public Selenium getSelenium() {
+        return selenium;
+    }
+
+    /**
+     * @return the asynchronous view of this session
+     */
+    public AsyncSelenium async() {
+        return async;
+    }
+
+    /**
+     * Runs several commands in a row on this session's thread.
+     *
+     * @param <T> the result type
+     * @param task the commands, using {@link #getSelenium()}
+     * @return the task's future
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        synchronized (this) {
+            pending++;
+        }
+        try {
+            return executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    try {
+                        return task.call();
+                    } finally {
+                        finished(1);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finished(1);
+            throw e;
+        }
+    }
+
+    private synchronized void finished(int commands) {
+        pending = Math.max(0, pending - commands);
+        if (pending == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until all commands issued so far finished. Returns at once on the command thread.
+     *
+     * @throws SeleniumException if the current thread was interrupted while waiting
+     */
+    public void awaitIdle() {
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        synchronized (this) {
+            while (pending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SeleniumException("interrupted while waiting for asynchronous commands", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for all issued commands, stops the session if owned and ends the command thread.
+     *
+     * @param timeoutInMs how long to wait for outstanding commands
+     */
+    public void close(long timeoutInMs) {
+        if (owned) {
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    selenium.stop();
+                    return null;
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutInMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        } finally {
+            // cancelled commands never finish
+            synchronized (this) {
+                finished(pending);
+            }
+        }
+    }
+
+    /**
+     * Maps every {@link AsyncSelenium} method to the {@link Selenium} method with the same
+     * signature, whose return type, boxed, is the type of the future's value.
+     *
+     * @return all mappings
+     * @throws IllegalStateException if a method has no counterpart
+     */
+    private static Map<Method, Method> resolveTargets() {
+        final Map<Method, Method> targets = new HashMap<Method, Method>();
+        for (Method method : AsyncSelenium.class.getMethods()) {
+            final Method target;
+            try {
+                target = Selenium.class.getMethod(method.getName(), method.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("no selenium method matches " + method, e);
+            }
+            final Type returned = method.getGenericReturnType();
+            if (!(returned instanceof ParameterizedType) ||
+                    ((ParameterizedType) returned).getRawType() != Future.class ||
+                    !boxed(target.getReturnType()).equals(
+                        rawTypeOf(((ParameterizedType) returned).getActualTypeArguments()[0]))) {
+                throw new IllegalStateException(method + " does not return a future of " + target.getReturnType());
+            }
+            targets.put(method, target);
+        }
+        return Collections.unmodifiableMap(targets);
+    }
+
+    /**
+     * Java 6 reflects array type arguments like {@code String[]} as {@link GenericArrayType}s.
+     */
+    private static Class<?> rawTypeOf(Type type) {
+        if (type instanceof Class<?>) {
+            return (Class<?>) type;
+        } else if (type instanceof GenericArrayType) {
+            final Class<?> component = rawTypeOf(((GenericArrayType) type).getGenericComponentType());
+            return component == null ? null : Array.newInstance(component, 0).getClass();
+        } else if (type instanceof ParameterizedType) {
+            return rawTypeOf(((ParameterizedType) type).getRawType());
+        } else {
+            return null;
+        }
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        if (type == Void.TYPE) {
+            return Void.class;
+        } else if (type == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (type == Integer.TYPE) {
+            return Integer.class;
+        } else if (type == Long.TYPE) {
+            return Long.class;
+        } else {
+            return type;
+        }
+    }
+
+    /**
+     * Retrieves the method an {@link AsyncSelenium} method runs.
+     *
+     * @param method the asynchronous method
+     * @return the {@link Selenium} method
+     */
+    static Method targetOf(Method method) {
+        return TARGETS.get(method);
+    }
+
+    /**
+     * Runs every {@link AsyncSelenium} method as its {@link #targetOf(Method) target}.
+     */
+    private final class Handler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, final Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else {
+                    return "async " + selenium;
+                }
+            }
+            final Method target = TARGETS.get(method);
+            return submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    try {
+                        return target.invoke(selenium, args);
+                    } catch (InvocationTargetException e) {
+                        if (e.getCause() instanceof Exception) {
+                            throw (Exception) e.getCause();
+                        }
+                        throw e;
+                    }
+                }
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable handle of a window and the path of frames selected within it.
+ *
+ * <p>
+ * Frames are given by the locators passed to
+ * {@link com.thoughtworks.selenium.Selenium#selectFrame(String)}, each relative to its parent.
+ * </p>
+ *
+ * @see ContextInterceptor
+ * @since 1.6
+ */
+public final class BrowserContext {
+
+    private static final BrowserContext MAIN = new BrowserContext(null, Collections.<String>emptyList());
+
+    private final String window;
+    private final List<String> frames;
+
+    private BrowserContext(String window, List<String> frames) {
+        this.window = window;
+        this.frames = frames;
+    }
+
+    /**
+     * @return the top frame of the main window
+     */
+    public static BrowserContext main() {
+        return MAIN;
+    }
+
+    /**
+     * Creates the context of the top frame of a window.
+     *
+     * @param windowId the id as passed to {@link com.thoughtworks.selenium.Selenium#selectWindow(String)},
+     *        null or "null" for the main window
+     * @return the context
+     */
+    public static BrowserContext window(String windowId) {
+        if (windowId == null || windowId.length() == 0 || "null".equals(windowId)) {
+            return MAIN;
+        }
+        return new BrowserContext(windowId, Collections.<String>emptyList());
+    }
+
+    /**
+     * Creates the context of a frame within this context.
+     *
+     * @param locator the frame's locator, relative to this context
+     * @return the context of the frame
+     */
+    public BrowserContext frame(String locator) {
+        final List<String> path = new ArrayList<String>(frames.size() + 1);
+        path.addAll(frames);
+        path.add(locator);
+        return new BrowserContext(window, Collections.unmodifiableList(path));
+    }
+
+    /**
+     * @return the context of the parent frame, this context if it is a top frame already
+     */
+    public BrowserContext parent() {
+        if (frames.isEmpty()) {
+            return this;
+        }
+        return new BrowserContext(window, frames.subList(0, frames.size() - 1));
+    }
+
+    /**
+     * @return the context of this window's top frame
+     */
+    public BrowserContext top() {
+        return frames.isEmpty() ? this : new BrowserContext(window, Collections.<String>emptyList());
+    }
+
+    /**
+     * @return the window id or null for the main window
+     */
+    public String getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the unmodifiable path of frame locators, empty for the top frame
+     */
+    public List<String> getFrames() {
+        return frames;
+    }
+
+    /**
+     * @param other another context
+     * @return whether both contexts belong to the same window
+     */
+    public boolean isSameWindow(BrowserContext other) {
+        return window == null ? other.window == null : window.equals(other.window);
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        } else if (that instanceof BrowserContext) {
+            final BrowserContext other = (BrowserContext) that;
+            return isSameWindow(other) && frames.equals(other.frames);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return (window == null ? 0 : window.hashCode()) * 31 + frames.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return (window == null ? "main" : window) + frames;
+    }
+
+}
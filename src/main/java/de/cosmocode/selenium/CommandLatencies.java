@@ -0,0 +1,104 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures the mean latency of every command of a session, leaving out the first
+ * invocations of each command as warm-up.
+ *
+ * @see CosmoCodeSeleniumTest#assertCommandLatencyUnder(String, long)
+ * @since 1.6
+ */
+public final class CommandLatencies implements SeleniumInterceptor {
+
+    private final int warmUp;
+    private final Map<String, long[]> commands = new HashMap<String, long[]>();
+
+    /**
+     * Creates a measurement.
+     *
+     * @param warmUp how many invocations of each command are not measured
+     */
+    public CommandLatencies(int warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    @Override
+    public Object intercept(final SeleniumInvocation invocation) throws Throwable {
+        final long start = System.nanoTime();
+        if (invocation.isStreaming()) {
+            final StreamedString stream;
+            try {
+                stream = (StreamedString) invocation.proceed();
+            /* CHECKSTYLE:OFF */
+            } catch (Throwable throwable) {
+            /* CHECKSTYLE:ON */
+                record(invocation.getName(), System.nanoTime() - start);
+                throw throwable;
+            }
+            stream.onClose(new Runnable() {
+                @Override
+                public void run() {
+                    record(invocation.getName(), System.nanoTime() - start);
+                }
+            });
+            return stream;
+        }
+        try {
+            return invocation.proceed();
+        } finally {
+            record(invocation.getName(), System.nanoTime() - start);
+        }
+    }
+
+    private synchronized void record(String command, long nanos) {
+        // invocations, measured invocations, measured nanos
+        long[] stats = commands.get(command);
+        if (stats == null) {
+            stats = new long[3];
+            commands.put(command, stats);
+        }
+        if (++stats[0] > warmUp) {
+            stats[1]++;
+            stats[2] += nanos;
+        }
+    }
+
+    /**
+     * Calculates the mean latency of a command after its warm-up.
+     *
+     * @param command the command, e.g. "click"
+     * @return the mean latency in ms or -1 if the command did not run after its warm-up
+     */
+    public synchronized double getMeanInMs(String command) {
+        final long[] stats = commands.get(command);
+        return stats == null || stats[1] == 0 ? -1 : stats[2] / 1e6 / stats[1];
+    }
+
+    /**
+     * @param command the command, e.g. "click"
+     * @return how often the command was measured, warm-up excluded
+     */
+    public synchronized long getMeasured(String command) {
+        final long[] stats = commands.get(command);
+        return stats == null ? 0 : stats[1];
+    }
+
+}
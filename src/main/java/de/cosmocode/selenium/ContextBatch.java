@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * Collects steps for several windows and frames and runs them grouped by context,
+ * so every context gets selected only once.
+ *
+ * <p>
+ * Steps of the same context run in the order they were added. Steps of different
+ * contexts must not depend on each other, because their groups may run in any order:
+ * the selected context first, all others in the order of their first step.
+ * Afterwards the previously selected context gets selected again if it was known.
+ * </p>
+ *
+ * @see ContextInterceptor
+ * @since 1.6
+ */
+public final class ContextBatch {
+
+    private final Selenium selenium;
+    private final Map<BrowserContext, List<Runnable>> steps = new LinkedHashMap<BrowserContext, List<Runnable>>();
+
+    public ContextBatch(Selenium selenium) {
+        this.selenium = selenium;
+    }
+
+    /**
+     * Adds a step.
+     *
+     * @param context the context the step has to run in
+     * @param step the step
+     * @return this batch
+     */
+    public ContextBatch add(BrowserContext context, Runnable step) {
+        List<Runnable> list = steps.get(context);
+        if (list == null) {
+            list = new ArrayList<Runnable>();
+            steps.put(context, list);
+        }
+        list.add(step);
+        return this;
+    }
+
+    /**
+     * Runs and removes all steps.
+     */
+    public void run() {
+        final ContextInterceptor tracker = Interceptors.find(selenium, ContextInterceptor.class);
+        final BrowserContext previous = tracker == null ? null : tracker.getCurrent();
+
+        try {
+            if (previous != null && steps.containsKey(previous)) {
+                runAll(steps.remove(previous));
+            }
+            for (Map.Entry<BrowserContext, List<Runnable>> entry : steps.entrySet()) {
+                ContextInterceptor.select(selenium, entry.getKey());
+                runAll(entry.getValue());
+            }
+        } finally {
+            steps.clear();
+        }
+
+        if (previous != null) {
+            ContextInterceptor.select(selenium, previous);
+        }
+    }
+
+    private static void runAll(List<Runnable> list) {
+        for (Runnable step : list) {
+            step.run();
+        }
+    }
+
+}
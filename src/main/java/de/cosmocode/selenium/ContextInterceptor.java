@@ -0,0 +1,159 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * Tracks the selected window and frame on the client and drops
+ * {@code selectWindow} and {@code selectFrame} commands which would not change them.
+ *
+ * <p>
+ * Commands which change the selection in ways the client can not follow
+ * ({@code selectPopUp}, {@code close}) or which fail make the context unknown;
+ * nothing gets dropped until the next {@code selectWindow} or {@code deselectPopUp}.
+ * Commands which can load a page, e.g. {@code open}, {@code click}, {@code submit},
+ * {@code goBack}, {@code refresh} or {@code waitForPageToLoad}, make it unknown as well:
+ * selenium drops back to the top frame when the top window navigates, but keeps
+ * a navigating frame selected.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class ContextInterceptor implements SeleniumInterceptor {
+
+    private static final Set<String> UNTRACKED = new HashSet<String>(Arrays.asList(
+        "selectPopUp", "close",
+        // may load a page
+        "open", "goBack", "refresh", "waitForPageToLoad", "waitForFrameToLoad",
+        "click", "clickAt", "doubleClick", "doubleClickAt", "mouseUp", "mouseUpAt", "mouseUpRight",
+        "mouseUpRightAt", "submit", "keyPress", "keyDown", "keyUp", "typeKeys", "select", "check",
+        "uncheck", "fireEvent", "runScript"
+    ));
+
+    private BrowserContext current = BrowserContext.main();
+    private long skipped;
+
+    @Override
+    public Object intercept(SeleniumInvocation invocation) throws Throwable {
+        final String name = invocation.getName();
+        if ("selectWindow".equals(name)) {
+            return select(invocation, BrowserContext.window(invocation.getFirstArgument()));
+        } else if ("selectFrame".equals(name)) {
+            final BrowserContext known = getCurrent();
+            final String locator = invocation.getFirstArgument();
+            if (known == null) {
+                return select(invocation, null);
+            } else if ("relative=top".equals(locator)) {
+                return select(invocation, known.top());
+            } else if ("relative=up".equals(locator)) {
+                return select(invocation, known.parent());
+            } else {
+                return select(invocation, known.frame(locator));
+            }
+        } else if ("deselectPopUp".equals(name)) {
+            return select(invocation, BrowserContext.main());
+        } else if (UNTRACKED.contains(name)) {
+            return select(invocation, null);
+        } else {
+            return invocation.proceed();
+        }
+    }
+
+    private Object select(SeleniumInvocation invocation, BrowserContext target) throws Throwable {
+        synchronized (this) {
+            if (target != null && target.equals(current)) {
+                skipped++;
+                return null;
+            }
+            current = null;
+        }
+        final Object result = invocation.proceed();
+        synchronized (this) {
+            current = target;
+        }
+        return result;
+    }
+
+    /**
+     * @return the selected context or null if it is unknown
+     */
+    public synchronized BrowserContext getCurrent() {
+        return current;
+    }
+
+    /**
+     * Forgets the selected context, so the next switch is sent in full.
+     */
+    public synchronized void reset() {
+        current = null;
+    }
+
+    /**
+     * @return how many switches this session did not send
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Switches a session to the given context with as few commands as possible. Without
+     * a tracking interceptor or with an unknown context, the window and all frames get selected.
+     *
+     * @param selenium the session
+     * @param target the context to select
+     */
+    public static void select(Selenium selenium, BrowserContext target) {
+        final ContextInterceptor tracker = Interceptors.find(selenium, ContextInterceptor.class);
+        final BrowserContext from = tracker == null ? null : tracker.getCurrent();
+        final List<String> frames = target.getFrames();
+        int common = 0;
+
+        if (from == null || !from.isSameWindow(target)) {
+            selenium.selectWindow(target.getWindow() == null ? "null" : target.getWindow());
+        } else {
+            final List<String> selected = from.getFrames();
+            while (common < selected.size() && common < frames.size() &&
+                    selected.get(common).equals(frames.get(common))) {
+                common++;
+            }
+            // nothing to leave if the selected frame is on the target's path
+            if (common == 0 && !selected.isEmpty()) {
+                selenium.selectFrame("relative=top");
+            } else {
+                for (int i = common; i < selected.size(); i++) {
+                    selenium.selectFrame("relative=up");
+                }
+            }
+        }
+
+        for (String frame : frames.subList(common, frames.size())) {
+            selenium.selectFrame(frame);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s, %d switches skipped", current == null ? "unknown" : current, skipped);
+    }
+
+}
@@ -16,11 +16,39 @@
 
 package de.cosmocode.selenium;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 
-import com.thoughtworks.selenium.DefaultSelenium;
+import com.thoughtworks.selenium.Selenium;
 import com.thoughtworks.selenium.SeleneseTestCase;
+import com.thoughtworks.selenium.SeleniumException;
+
+import de.cosmocode.selenium.event.EventInterceptor;
+import de.cosmocode.selenium.event.FlightRecorderEvents;
+import de.cosmocode.selenium.event.PageLoadEvent;
+import de.cosmocode.selenium.event.SeleniumEvents;
+import de.cosmocode.selenium.event.TimeAccounting;
+import de.cosmocode.selenium.event.WaitEvent;
+import de.cosmocode.selenium.headless.HeadlessSelenium;
+import de.cosmocode.selenium.screenshot.DiffResult;
+import de.cosmocode.selenium.screenshot.ScreenshotDiff;
+import de.cosmocode.selenium.screenshot.ScreenshotStore;
+import de.cosmocode.selenium.screenshot.TiledImage;
+import de.cosmocode.selenium.timing.NavigationTiming;
+import de.cosmocode.selenium.timing.NavigationTimings;
 
 /**
  * Abstract base class for selenium testcases.
@@ -38,9 +66,144 @@ public abstract class CosmoCodeSeleniumTest extends SeleneseTestCase {
     public static final String CONFIG_SELENIUM_BROWSER = "selenium.browser";
     public static final String CONFIG_SELENIUM_BROWSER_DEFAULT = "*chrome";
 
+    // comma separated, defaults to CONFIG_SELENIUM_BROWSER
+    public static final String CONFIG_SELENIUM_BROWSERS = "selenium.browsers";
+
+    public static final String CONFIG_SELENIUM_READINESS = "selenium.readiness";
+    public static final String CONFIG_SELENIUM_READINESS_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_MEMOIZE = "selenium.memoize";
+    public static final String CONFIG_SELENIUM_MEMOIZE_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_LAZY = "selenium.lazy";
+    public static final String CONFIG_SELENIUM_LAZY_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_EVENT_WAITS = "selenium.eventWaits";
+    public static final String CONFIG_SELENIUM_EVENT_WAITS_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_CONTEXT_TRACKING = "selenium.contextTracking";
+    public static final String CONFIG_SELENIUM_CONTEXT_TRACKING_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_LOCATOR_PROFILE = "selenium.locatorProfile";
+    public static final String CONFIG_SELENIUM_LOCATOR_PROFILE_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_LOCATOR_PROFILE_SAMPLES = "selenium.locatorProfile.samples";
+    public static final String CONFIG_SELENIUM_LOCATOR_PROFILE_SAMPLES_DEFAULT = "3";
+
+    public static final String CONFIG_SELENIUM_LOCATOR_PROFILE_REPORT = "selenium.locatorProfile.report";
+    public static final String CONFIG_SELENIUM_LOCATOR_PROFILE_REPORT_DEFAULT = "target/selenium-locators.txt";
+
+    public static final String CONFIG_SELENIUM_RECYCLE = "selenium.recycle";
+    public static final String CONFIG_SELENIUM_RECYCLE_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_RECYCLE_COMMANDS = "selenium.recycle.commands";
+    public static final String CONFIG_SELENIUM_RECYCLE_COMMANDS_DEFAULT = "5000";
+
+    public static final String CONFIG_SELENIUM_RECYCLE_AGE = "selenium.recycle.age";
+    public static final String CONFIG_SELENIUM_RECYCLE_AGE_DEFAULT = "1800000";
+
+    public static final String CONFIG_SELENIUM_RECYCLE_MEMORY = "selenium.recycle.memory";
+    public static final String CONFIG_SELENIUM_RECYCLE_MEMORY_DEFAULT = Long.toString(256L << 20);
+
+    public static final String CONFIG_SELENIUM_RECYCLE_DRIFT = "selenium.recycle.drift";
+    public static final String CONFIG_SELENIUM_RECYCLE_DRIFT_DEFAULT = "3";
+
+    public static final String CONFIG_SELENIUM_RECYCLE_SAMPLES = "selenium.recycle.samples";
+    public static final String CONFIG_SELENIUM_RECYCLE_SAMPLES_DEFAULT = "1";
+
+    public static final String CONFIG_SELENIUM_RECYCLE_REPORT = "selenium.recycle.report";
+    public static final String CONFIG_SELENIUM_RECYCLE_REPORT_DEFAULT = "target/selenium-recycling.txt";
+
+    public static final String CONFIG_SELENIUM_NAVIGATION_TIMING = "selenium.navigationTiming";
+    public static final String CONFIG_SELENIUM_NAVIGATION_TIMING_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_NAVIGATION_TIMING_REPORT = "selenium.navigationTiming.report";
+    public static final String CONFIG_SELENIUM_NAVIGATION_TIMING_REPORT_DEFAULT = "target/selenium-navigation.txt";
+
+    public static final String CONFIG_SELENIUM_BUDGET_TOLERANCE = "selenium.budget.tolerance";
+    public static final String CONFIG_SELENIUM_BUDGET_TOLERANCE_DEFAULT = "0.1";
+
+    public static final String CONFIG_SELENIUM_BUDGET_WARM_UP = "selenium.budget.warmUp";
+    public static final String CONFIG_SELENIUM_BUDGET_WARM_UP_DEFAULT = "1";
+
+    public static final String CONFIG_SELENIUM_SCREENSHOTS = "selenium.screenshots";
+    public static final String CONFIG_SELENIUM_SCREENSHOTS_DEFAULT = "target/screenshots";
+
+    public static final String CONFIG_SELENIUM_RETRIES = "selenium.retries";
+    public static final String CONFIG_SELENIUM_RETRIES_DEFAULT = "0";
+
+    public static final String CONFIG_SELENIUM_RETRY_EXCEPTIONS = "selenium.retry.exceptions";
+    public static final String CONFIG_SELENIUM_RETRY_EXCEPTIONS_DEFAULT = SeleniumException.class.getName();
+
+    public static final String CONFIG_SELENIUM_RETRY_BUDGET = "selenium.retry.budget";
+    public static final String CONFIG_SELENIUM_RETRY_BUDGET_DEFAULT = "10";
+
+    public static final String CONFIG_SELENIUM_RETRY_REPORT = "selenium.retry.report";
+    public static final String CONFIG_SELENIUM_RETRY_REPORT_DEFAULT = "target/selenium-retries.txt";
+
+    public static final String CONFIG_SELENIUM_ACCOUNTING = "selenium.accounting";
+    public static final String CONFIG_SELENIUM_ACCOUNTING_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_ACCOUNTING_REPORT = "selenium.accounting.report";
+    public static final String CONFIG_SELENIUM_ACCOUNTING_REPORT_DEFAULT = "target/selenium-accounting.txt";
+
+    public static final String CONFIG_SELENIUM_FLIGHT_RECORDER = "selenium.flightRecorder";
+    public static final String CONFIG_SELENIUM_FLIGHT_RECORDER_DEFAULT = "false";
+
+    public static final String CONFIG_SELENIUM_WORKERS = "selenium.workers";
+    public static final String CONFIG_SELENIUM_WORKERS_DEFAULT = "1";
+
+    public static final String CONFIG_SELENIUM_DURATIONS = "selenium.durations";
+    public static final String CONFIG_SELENIUM_DURATIONS_DEFAULT = "target/selenium-durations.properties";
+
+    public static final String CONFIG_SELENIUM_FORKS = "selenium.forks";
+    public static final String CONFIG_SELENIUM_FORKS_DEFAULT = "1";
+
+    public static final String CONFIG_SELENIUM_SHARD_PORT = "selenium.shard.port";
+    public static final String CONFIG_SELENIUM_SHARD_PORT_DEFAULT = "0";
+
+    public static final String CONFIG_SELENIUM_SHARD_REPORT = "selenium.shard.report";
+    public static final String CONFIG_SELENIUM_SHARD_REPORT_DEFAULT = "target/selenium-shards.txt";
+
+    public static final String CONFIG_SELENIUM_SHARD_TIMEOUT = "selenium.shard.timeout";
+    public static final String CONFIG_SELENIUM_SHARD_TIMEOUT_DEFAULT = "600000";
+
+    public static final String CONFIG_SELENIUM_CIRCUIT_FAILURES = "selenium.circuit.failures";
+    public static final String CONFIG_SELENIUM_CIRCUIT_FAILURES_DEFAULT = "3";
+
+    public static final String CONFIG_SELENIUM_CIRCUIT_ERROR_RATE = "selenium.circuit.errorRate";
+    public static final String CONFIG_SELENIUM_CIRCUIT_ERROR_RATE_DEFAULT = "0.5";
+
+    public static final String CONFIG_SELENIUM_CIRCUIT_COOLDOWN = "selenium.circuit.cooldown";
+    public static final String CONFIG_SELENIUM_CIRCUIT_COOLDOWN_DEFAULT = "30000";
+
+    public static final String CONFIG_SELENIUM_PROBE_INTERVAL = "selenium.probe.interval";
+    public static final String CONFIG_SELENIUM_PROBE_INTERVAL_DEFAULT = "30000";
+
+    public static final String CONFIG_SELENIUM_NODE_SESSIONS = "selenium.node.sessions";
+    public static final String CONFIG_SELENIUM_NODE_SESSIONS_DEFAULT = "0";
+
+    public static final String CONFIG_SELENIUM_NODE_COMMANDS = "selenium.node.commands";
+    public static final String CONFIG_SELENIUM_NODE_COMMANDS_DEFAULT = "0";
+
+    public static final String CONFIG_SELENIUM_NODE_WAIT = "selenium.node.wait";
+    public static final String CONFIG_SELENIUM_NODE_WAIT_DEFAULT = "300000";
+
     // in general helful constants
     public static final String ENTER = "\\13";
 
+    private SeleniumServer seleniumServer;
+    private String seleniumBrowser;
+
+    private int attempt;
+
+    private AsyncSession asyncSession;
+    private final List<AsyncSession> asyncSessions = new ArrayList<AsyncSession>();
+
+    private NavigationTiming lastNavigationTiming;
+    private long lastPageLoadInMs = -1;
+    private int lastPageLoadNumber;
+
 
     /**
      * Overwrite this to change the default selenium remote control server.
@@ -48,6 +211,9 @@ public abstract class CosmoCodeSeleniumTest extends SeleneseTestCase {
      * @return informations where the selenium remote control server is running.
      */
     public SeleniumServer getSeleniumServer() {
+        if (seleniumServer != null) {
+            return seleniumServer;
+        }
         return new SeleniumServer() {
             @Override
             public String getHost() {
@@ -75,9 +241,36 @@ public abstract class CosmoCodeSeleniumTest extends SeleneseTestCase {
      * @return which browser to use
      */
     public String getSeleniumBrowser() {
+        if (seleniumBrowser != null) {
+            return seleniumBrowser;
+        }
         return System.getProperty(CONFIG_SELENIUM_BROWSER, CONFIG_SELENIUM_BROWSER_DEFAULT);
     }
 
+    /**
+     * Overrides the configured remote control server for this test instance,
+     * e.g. used by {@link de.cosmocode.selenium.parallel.BrowserMatrix}.
+     * Has no effect if {@link #getSeleniumServer()} is overwritten.
+     *
+     * @param seleniumServer the server or null to use the configured one
+     * @since 1.6
+     */
+    public void setSeleniumServer(SeleniumServer seleniumServer) {
+        this.seleniumServer = seleniumServer;
+    }
+
+    /**
+     * Overrides the configured browser for this test instance,
+     * e.g. used by {@link de.cosmocode.selenium.parallel.BrowserMatrix}.
+     * Has no effect if {@link #getSeleniumBrowser()} is overwritten.
+     *
+     * @param seleniumBrowser the browser or null to use the configured one
+     * @since 1.6
+     */
+    public void setSeleniumBrowser(String seleniumBrowser) {
+        this.seleniumBrowser = seleniumBrowser;
+    }
+
     /**
      * Overwrite to change the default timeout.
      *
@@ -89,180 +282,1569 @@ public abstract class CosmoCodeSeleniumTest extends SeleneseTestCase {
     }
 
     /**
-     * e.g. "https://admin.trip-to.com/"
+     * Overwrite to enable the readiness detection for all *AndWait methods.
+     * If enabled, they wait until the new page has loaded and became quiescent
+     * instead of only waiting for the load event.
      *
-     * @return the test server's URL
+     * @see #waitForPageReady()
+     * @return whether the readiness detection is used
+     * @since 1.6
      */
-    public abstract String getTestServerUrl();
+    public boolean isReadinessDetectionEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_READINESS, CONFIG_SELENIUM_READINESS_DEFAULT));
+    }
 
     /**
-     * Don't forget to call super() when overriding this method.
+     * Overwrite to enable the navigation timing, which collects the browser's Navigation and
+     * Resource Timing data after every *AndWait method. The data is aggregated per
+     * {@link #getUrlPattern(String) url pattern} and written to {@link #CONFIG_SELENIUM_NAVIGATION_TIMING_REPORT}.
+     *
+     * @see #getLastNavigationTiming()
+     * @return whether page loads get timed
+     * @since 1.6
      */
-    @Before
-    @Override
-    public void setUp() {
-        // lifecycle
-        setUpTestServer();
-
-        // start session with remote server
-        final SeleniumServer seleniumServer = getSeleniumServer();
-        selenium = new DefaultSelenium(
-                seleniumServer.getHost(),
-                seleniumServer.getPort(),
-                getSeleniumBrowser(),
-                getTestServerUrl()
-        );
-        selenium.start();
-
-        // configure our own default timeout
-        selenium.setTimeout(Integer.toString(getTimeoutInMs()));
+    public boolean isNavigationTimingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_NAVIGATION_TIMING,
+            CONFIG_SELENIUM_NAVIGATION_TIMING_DEFAULT));
+    }
 
-        // lifecycle
-        setUpWebsite();
+    /**
+     * Overwrite to change how page loads are grouped in the navigation timing report.
+     *
+     * @see NavigationTimings#patternOf(String)
+     * @param url the url of a loaded page
+     * @return the url's pattern
+     * @since 1.6
+     */
+    protected String getUrlPattern(String url) {
+        return NavigationTimings.patternOf(url);
     }
 
     /**
-     * Don't forget to call super() when overriding this method.
+     * Overwrite to enable the memoization of page queries like {@link #getTitle()} or
+     * {@link #getAllLinks()} until the next mutating command.
+     *
+     * @see MemoizingInterceptor
+     * @return whether page queries are memoized
+     * @since 1.6
      */
-    @After
-    @Override
-    public void tearDown() {
-        // lifecycle
-        tearDownWebsite();
+    public boolean isMemoizationEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_MEMOIZE, CONFIG_SELENIUM_MEMOIZE_DEFAULT));
+    }
 
-        // end the session
-        selenium.stop();
+    /**
+     * Overwrite to start sessions only when their first command is sent, so test methods
+     * which never use the browser never launch one. {@link #tearDown()} only stops
+     * sessions which were started.
+     *
+     * @return whether sessions start lazily
+     * @since 1.6
+     */
+    public boolean isLazySessionStart() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_LAZY, CONFIG_SELENIUM_LAZY_DEFAULT));
+    }
 
-        // lifecycle
-        tearDownTestServer();
+    /**
+     * Overwrite to let {@link #waitForElementPresent(String, int)} and
+     * {@link #waitForValueChange(String, String, int)} wait for an in-page log of DOM mutations
+     * instead of polling the remote control once per second. They return as soon as the
+     * browser noticed the change and also catch elements or values which existed only briefly.
+     *
+     * @see #watchElement(String)
+     * @return whether waits are driven by DOM mutations
+     * @since 1.6
+     */
+    public boolean isEventDrivenWaitEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_EVENT_WAITS,
+            CONFIG_SELENIUM_EVENT_WAITS_DEFAULT));
     }
 
     /**
-     * Lifecycle: before selenium is set up.
+     * Overwrite to track the selected window and frame on the client, which drops
+     * {@link #selectWindow(String)} and {@link #selectFrame(String)} calls that would not
+     * change the selection and lets {@link #selectContext(BrowserContext)} switch with
+     * as few commands as possible.
+     *
+     * @see ContextInterceptor
+     * @return whether the selected context is tracked
+     * @since 1.6
      */
-    public void setUpTestServer() {
+    public boolean isContextTrackingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_CONTEXT_TRACKING,
+            CONFIG_SELENIUM_CONTEXT_TRACKING_DEFAULT));
+    }
 
+    /**
+     * Overwrite to enable the time accounting, which splits each test's wall time into
+     * remote control commands, browser side waits, client side sleeping and test code.
+     * The summary of the run is written to {@link #CONFIG_SELENIUM_ACCOUNTING_REPORT}.
+     *
+     * @see TimeAccounting
+     * @return whether the time accounting is enabled
+     * @since 1.6
+     */
+    public boolean isTimeAccountingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_ACCOUNTING, CONFIG_SELENIUM_ACCOUNTING_DEFAULT));
     }
 
     /**
-     * Lifecycle: after selenium is set up.
+     * Overwrite to forward the command, wait and page load events to JDK Flight Recorder.
+     * Has no effect on a JDK without it.
+     *
+     * @see FlightRecorderEvents
+     * @return whether the events are forwarded to JDK Flight Recorder
+     * @since 1.6
      */
-    public void setUpWebsite() {
+    public boolean isFlightRecorderEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_FLIGHT_RECORDER,
+            CONFIG_SELENIUM_FLIGHT_RECORDER_DEFAULT));
+    }
 
+    /**
+     * Overwrite to enable the locator profiling, which counts every locator and measures
+     * how long the browser needs to resolve it. The ranked profile, including cheaper
+     * alternatives to slow locators, is written to {@link #CONFIG_SELENIUM_LOCATOR_PROFILE_REPORT}.
+     *
+     * @see LocatorProfiler
+     * @return whether locators get profiled
+     * @since 1.6
+     */
+    public boolean isLocatorProfilingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_LOCATOR_PROFILE,
+            CONFIG_SELENIUM_LOCATOR_PROFILE_DEFAULT));
     }
 
     /**
-     * Lifecycle: before selenium is teared down.
+     * Overwrite to change how long a page has to be without DOM mutations to be quiescent.
+     *
+     * @return the quiet period in milliseconds
+     * @since 1.6
      */
-    public void tearDownWebsite() {
+    public int getQuietPeriodInMs() {
+        return 100;
+    }
 
+    /**
+     * Overwrite to change where screenshots get stored.
+     *
+     * @see #storeScreenshot(String)
+     * @return the screenshot store
+     * @since 1.6
+     */
+    public ScreenshotStore getScreenshotStore() {
+        return ScreenshotStore.open(new File(System.getProperty(CONFIG_SELENIUM_SCREENSHOTS,
+            CONFIG_SELENIUM_SCREENSHOTS_DEFAULT)));
     }
 
     /**
-     * Lifecycle: after selenium is teared down.
+     * Overwrite to change the performance budget. Uses the {@link PerformanceBudget} annotation
+     * of the current test method or class.
+     *
+     * @return the budget for the current test method or null if there is none
+     * @since 1.6
      */
-    public void tearDownTestServer() {
+    public PerformanceBudget getPerformanceBudget() {
+        PerformanceBudget budget = null;
+        try {
+            budget = getClass().getMethod(getName()).getAnnotation(PerformanceBudget.class);
+        } catch (NoSuchMethodException e) {
+            // runTest() will report that
+        }
+        return budget == null ? getClass().getAnnotation(PerformanceBudget.class) : budget;
+    }
+
+    private double getBudgetTolerance() {
+        final PerformanceBudget budget = getPerformanceBudget();
+        return budget != null && budget.tolerance() >= 0 ? budget.tolerance() : Double.parseDouble(
+            System.getProperty(CONFIG_SELENIUM_BUDGET_TOLERANCE, CONFIG_SELENIUM_BUDGET_TOLERANCE_DEFAULT));
+    }
 
+    private int getBudgetWarmUp() {
+        final PerformanceBudget budget = getPerformanceBudget();
+        return budget != null && budget.warmUp() >= 0 ? budget.warmUp() : Integer.parseInt(
+            System.getProperty(CONFIG_SELENIUM_BUDGET_WARM_UP, CONFIG_SELENIUM_BUDGET_WARM_UP_DEFAULT));
     }
 
     /**
-     * Asserts that two values are not equal.
+     * Overwrite to change when a {@link SharedSession} gets a fresh browser. Uses the thresholds
+     * {@link #CONFIG_SELENIUM_RECYCLE_COMMANDS}, {@link #CONFIG_SELENIUM_RECYCLE_AGE},
+     * {@link #CONFIG_SELENIUM_RECYCLE_MEMORY} and {@link #CONFIG_SELENIUM_RECYCLE_DRIFT}
+     * if {@link #CONFIG_SELENIUM_RECYCLE} is enabled.
      *
-     * @param failMessage message
-     * @param obj1 object
-     * @param obj2 object
+     * @see SessionAging
+     * @return the recycling policy, {@link RecyclingPolicy#NEVER} to keep sessions for the whole class
+     * @since 1.6
      */
-    public static void assertNotEquals(String failMessage, Object obj1, Object obj2) {
-        if (obj1.equals(obj2)) {
-            fail(failMessage);
+    public RecyclingPolicy getRecyclingPolicy() {
+        if (!Boolean.parseBoolean(System.getProperty(CONFIG_SELENIUM_RECYCLE, CONFIG_SELENIUM_RECYCLE_DEFAULT))) {
+            return RecyclingPolicy.NEVER;
         }
+        final String commands = System.getProperty(CONFIG_SELENIUM_RECYCLE_COMMANDS,
+            CONFIG_SELENIUM_RECYCLE_COMMANDS_DEFAULT);
+        return new RecyclingPolicy(
+            Long.parseLong(commands),
+            Long.parseLong(System.getProperty(CONFIG_SELENIUM_RECYCLE_AGE, CONFIG_SELENIUM_RECYCLE_AGE_DEFAULT)),
+            Long.parseLong(System.getProperty(CONFIG_SELENIUM_RECYCLE_MEMORY, CONFIG_SELENIUM_RECYCLE_MEMORY_DEFAULT)),
+            Double.parseDouble(System.getProperty(CONFIG_SELENIUM_RECYCLE_DRIFT, CONFIG_SELENIUM_RECYCLE_DRIFT_DEFAULT))
+        );
     }
 
     /**
-     * Shortcut for selenium.waitForPageToLoad(String) with default timeout.
+     * Overwrite to change how failed test methods are rerun. Uses the {@link Retry} annotation
+     * of the current test method or class and falls back to the system properties
+     * {@link #CONFIG_SELENIUM_RETRIES} and {@link #CONFIG_SELENIUM_RETRY_EXCEPTIONS}.
+     *
+     * @return the retry policy for the current test method
+     * @since 1.6
      */
-    public void waitForPageToLoad() {
-        selenium.waitForPageToLoad(Integer.toString(getTimeoutInMs()));
+    @SuppressWarnings("unchecked")
+    public RetryPolicy getRetryPolicy() {
+        Retry retry = null;
+        try {
+            retry = getClass().getMethod(getName()).getAnnotation(Retry.class);
+        } catch (NoSuchMethodException e) {
+            // runTest() will report that
+        }
+        if (retry == null) {
+            retry = getClass().getAnnotation(Retry.class);
+        }
+        if (retry != null) {
+            return RetryPolicy.of(retry);
+        }
+
+        final int retries = Integer.parseInt(System.getProperty(CONFIG_SELENIUM_RETRIES,
+            CONFIG_SELENIUM_RETRIES_DEFAULT));
+        if (retries <= 0) {
+            return RetryPolicy.NEVER;
+        }
+        final List<Class<? extends Throwable>> retryable = new ArrayList<Class<? extends Throwable>>();
+        final String types = System.getProperty(CONFIG_SELENIUM_RETRY_EXCEPTIONS,
+            CONFIG_SELENIUM_RETRY_EXCEPTIONS_DEFAULT);
+        for (String type : types.split(",")) {
+            if (type.trim().length() == 0) {
+                continue;
+            }
+            try {
+                retryable.add((Class<? extends Throwable>) Class.forName(type.trim()));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("unknown exception type in " + CONFIG_SELENIUM_RETRY_EXCEPTIONS, e);
+            }
+        }
+        return new RetryPolicy(retries, retryable);
     }
 
     /**
-     * Shortcut for selenium.waitForPageToLoad(String) with correctly typed timeout.
+     * e.g. "https://admin.trip-to.com/"
      *
-     * @param timeoutInMs timeout for waiting
+     * @return the test server's URL
      */
-    public void waitForPageToLoad(int timeoutInMs) {
-        selenium.waitForPageToLoad(Integer.toString(timeoutInMs));
+    public abstract String getTestServerUrl();
+
+    /**
+     * Runs the test method and reruns it on a fresh session as long as the
+     * {@link #getRetryPolicy() retry policy} allows. Attempts of rerun test methods
+     * are appended to the file configured by {@link #CONFIG_SELENIUM_RETRY_REPORT}.
+     *
+     * @throws Throwable the failure of the last attempt
+     * @since 1.6
+     */
+    @Override
+    public void runBare() throws Throwable {
+        final RetryPolicy policy = getRetryPolicy();
+        final List<Long> durations = new ArrayList<Long>();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        if (isFlightRecorderEnabled()) {
+            FlightRecorderEvents.install();
+        }
+        final boolean accounting = isTimeAccountingEnabled();
+        if (accounting) {
+            TimeAccounting.get().writeReportOnShutdown(new File(System.getProperty(
+                CONFIG_SELENIUM_ACCOUNTING_REPORT, CONFIG_SELENIUM_ACCOUNTING_REPORT_DEFAULT)));
+            TimeAccounting.get().begin(getClass().getName() + "." + getName());
+        }
+        try {
+            for (attempt = 1;; attempt++) {
+                final long start = System.currentTimeMillis();
+                try {
+                    super.runBare();
+                    durations.add(System.currentTimeMillis() - start);
+                    failures.add(null);
+                    return;
+                /* CHECKSTYLE:OFF */
+                } catch (Throwable throwable) {
+                /* CHECKSTYLE:ON */
+                    durations.add(System.currentTimeMillis() - start);
+                    failures.add(throwable);
+                    if (!policy.shouldRetry(throwable, attempt)) {
+                        throw throwable;
+                    }
+                    discardSharedSession();
+                }
+            }
+        } finally {
+            if (accounting) {
+                TimeAccounting.get().end();
+            }
+            if (durations.size() > 1) {
+                RetryReport.write(
+                    new File(System.getProperty(CONFIG_SELENIUM_RETRY_REPORT, CONFIG_SELENIUM_RETRY_REPORT_DEFAULT)),
+                    getClass().getName() + "." + getName(), durations, failures
+                );
+            }
+        }
+    }
+
+    private void discardSharedSession() {
+        if (!getClass().isAnnotationPresent(SharedSession.class)) {
+            return;
+        }
+        final SharedSessions.Entry entry = SharedSessions.discard(getSharedSessionKey());
+        if (entry != null) {
+            try {
+                entry.getSelenium().stop();
+            /* CHECKSTYLE:OFF */
+            } catch (RuntimeException e) {
+            /* CHECKSTYLE:ON */
+                // the session is broken anyway
+            }
+        }
     }
 
     /**
-     * Wait for the value in an input field to change, for example by some AJAX request.
-     * Requires the old value to check for.
-     * This method fails with the message "timeout" if the field did not change after 60 seconds.
-     * 
-     * @param locator the locator for the input field
-     * @param oldValue the old value in the input field
+     * Don't forget to call super() when overriding this method.
      */
-    public void waitForValueChange(final String locator, final String oldValue) {
-        waitForValueChange(locator, oldValue, 60);
+    @Before
+    @Override
+    public void setUp() {
+        // lifecycle
+        setUpTestServer();
+
+        final SharedSession sharedSession = getClass().getAnnotation(SharedSession.class);
+        // the previous class on this thread is done, even if not all of its test methods ran
+        finish(SharedSessions.takeOver(sharedSession == null ? null : getSharedSessionKey()));
+        boolean successful = false;
+        try {
+            if (sharedSession == null) {
+                // start session with remote server
+                selenium = createSelenium();
+            } else {
+                setUpSharedSession(sharedSession);
+            }
+
+            // lifecycle
+            setUpWebsite();
+            successful = true;
+        } finally {
+            if (!successful) {
+                abortSetUp();
+            }
+        }
     }
-    
+
     /**
-     * Wait for the value in an input field to change, for example by some AJAX request.
-     * Requires the old value to check for.
-     * This method fails with the message "timeout" after the given number of seconds have passed.
-     * 
-     * @param locator the locator for the input field
-     * @param oldValue the old value in the input field
-     * @param timeout the number of seconds to wait for value change until the method fails
+     * Ends the session of a failed setUp, which JUnit does not tear down,
+     * so neither the browser nor its slot on the node leak.
      */
-    public void waitForValueChange(final String locator, final String oldValue, final int timeout) {
-        for (int second = 0;; second++) {
-            if (second >= timeout) fail("timeout");
-            try {
-                final String newValue = getValue(locator);
-                if (oldValue == null && newValue == null) {
-                    Thread.sleep(1000);
-                } else if (oldValue != null && oldValue.equals(newValue)) {
-                    Thread.sleep(1000);
-                } else {
-                    break;
-                }
-            } catch (InterruptedException e) {
-                fail("Sleep was interrupted");
+    private void abortSetUp() {
+        try {
+            if (getClass().isAnnotationPresent(SharedSession.class)) {
+                // in an unknown state, the next test method starts a fresh one
+                finish(SharedSessions.discard(getSharedSessionKey()));
+            } else if (selenium != null) {
+                selenium.stop();
             }
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            // must not hide why setUp failed
+            Reports.warn("unable to stop the session of a failed setUp", e);
+        }
+        try {
+            // lifecycle
+            tearDownTestServer();
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            Reports.warn("unable to tear down the test server of a failed setUp", e);
         }
     }
 
     /**
-     * Wait until an element with the given locator is present, for example after an AJAX request.
-     * This method fails with the message "timeout" if the element did not appear after 60 seconds.
+     * Starts a new session with the remote control server and configures the default timeout.
+     * Fails fast if the server's {@link SeleniumServerHealth circuit} is open and waits for a free slot
+     * if the server's {@link NodeThrottle} caps sessions or commands.
+     * If {@link #isLazySessionStart()} is enabled, the session will be started by its first command.
+     * If the browser is {@value HeadlessSelenium#BROWSER}, an in-process {@link HeadlessSelenium}
+     * is used instead.
      *
-     * @param locator the locator of the element that we wait for
+     * @return the session
      * @since 1.6
      */
-    public void waitForElementPresent(final String locator) {
-        waitForElementPresent(locator, 60);
+    protected Selenium createSelenium() {
+        if (HeadlessSelenium.BROWSER.equals(getSeleniumBrowser())) {
+            // in-process, there is no server to contact
+            final Selenium session = HeadlessSelenium.create(getTestServerUrl());
+            session.start();
+            session.setTimeout(Integer.toString(getTimeoutInMs()));
+            final List<SeleniumInterceptor> interceptors = createInterceptors();
+            interceptors.add(0, new AsyncGuard());
+            return Interceptors.wrap(session, interceptors);
+        }
+
+        final SeleniumServer seleniumServer = getSeleniumServer();
+        final Selenium session = new StreamingSelenium(
+                seleniumServer.getHost(),
+                seleniumServer.getPort(),
+                getSeleniumBrowser(),
+                getTestServerUrl()
+        );
+
+        final List<SeleniumInterceptor> interceptors = createInterceptors();
+        // inside the lazy start, which swallows stopping a session that never started, and inside
+        // memoization and context tracking, whose answered and dropped commands never reach the node
+        final ThrottleInterceptor throttle = new ThrottleInterceptor(NodeThrottle.of(seleniumServer));
+        final int local = indexAfterLocalInterceptors(interceptors);
+        interceptors.add(local, throttle);
+        // inside the throttle, waiting for a command slot says nothing about the node
+        interceptors.add(local + 1, new HealthInterceptor(SeleniumServerHealth.of(seleniumServer)));
+        if (isLazySessionStart()) {
+            interceptors.add(0, new LazyStartInterceptor(new Runnable() {
+                @Override
+                public void run() {
+                    startSession(seleniumServer, session, throttle);
+                }
+            }));
+        } else {
+            startSession(seleniumServer, session, throttle);
+        }
+        // outermost, no other interceptor is thread-safe
+        interceptors.add(0, new AsyncGuard());
+        return Interceptors.wrap(session, interceptors);
+    }
+
+    private static int indexAfterLocalInterceptors(List<SeleniumInterceptor> interceptors) {
+        int index = 0;
+        for (int i = 0; i < interceptors.size(); i++) {
+            final SeleniumInterceptor interceptor = interceptors.get(i);
+            if (interceptor instanceof MemoizingInterceptor || interceptor instanceof ContextInterceptor) {
+                index = i + 1;
+            }
+        }
+        return index;
+    }
+
+    private void startSession(SeleniumServer seleniumServer, Selenium session, ThrottleInterceptor throttle) {
+        final SeleniumServerHealth health = SeleniumServerHealth.of(seleniumServer);
+        if (!health.allowSession()) {
+            throw new SeleniumException("selenium server " + health.getNode() + " is unhealthy, circuit is open");
+        }
+
+        throttle.acquireSession();
+        final long start = System.currentTimeMillis();
+        try {
+            session.start();
+        } catch (RuntimeException e) {
+            health.recordFailure(System.currentTimeMillis() - start);
+            throttle.releaseSession();
+            throw e;
+        }
+        health.recordSuccess(System.currentTimeMillis() - start);
+
+        boolean configured = false;
+        try {
+            // configure our own default timeout
+            session.setTimeout(Integer.toString(getTimeoutInMs()));
+            configured = true;
+        } finally {
+            if (!configured) {
+                try {
+                    session.stop();
+                } finally {
+                    throttle.releaseSession();
+                }
+            }
+        }
     }
 
     /**
-     * Wait until an element with the given locator is present, for example after an AJAX request.
-     * This method fails with the message "timeout" after the given number of seconds have passed.
+     * Checks whether the current session was started, which is only false
+     * if {@link #isLazySessionStart()} is enabled and no command was sent yet.
      *
-     * @param locator the locator of the element that we wait for
-     * @param timeout the number of seconds to wait for the element until the method fails
+     * @return true if the session was started
      * @since 1.6
      */
-    public void waitForElementPresent(final String locator, final int timeout) {
-        for (int second = 0;; second++) {
-            if (second >= timeout) fail("timeout");
-            if (selenium.isElementPresent(locator)) {
-                break;
-            }
+    public boolean isSessionStarted() {
+        final LazyStartInterceptor lazyStart = Interceptors.find(selenium, LazyStartInterceptor.class);
+        return selenium != null && (lazyStart == null || lazyStart.isStarted());
+    }
+
+    /**
+     * Overwrite to add own interceptors to every session created by {@link #createSelenium()}.
+     * The first interceptor is the outermost one.
+     *
+     * @return a mutable list of interceptors
+     * @since 1.6
+     */
+    protected List<SeleniumInterceptor> createInterceptors() {
+        final List<SeleniumInterceptor> interceptors = new ArrayList<SeleniumInterceptor>();
+        if (isContextTrackingEnabled()) {
+            interceptors.add(new ContextInterceptor());
+        }
+        if (isMemoizationEnabled()) {
+            interceptors.add(new MemoizingInterceptor());
+        }
+        if (isLocatorProfilingEnabled()) {
+            final LocatorProfile profile = LocatorProfile.get();
+            profile.writeReportOnShutdown(new File(System.getProperty(
+                CONFIG_SELENIUM_LOCATOR_PROFILE_REPORT, CONFIG_SELENIUM_LOCATOR_PROFILE_REPORT_DEFAULT)));
+            interceptors.add(new LocatorProfiler(profile, Integer.parseInt(System.getProperty(
+                CONFIG_SELENIUM_LOCATOR_PROFILE_SAMPLES, CONFIG_SELENIUM_LOCATOR_PROFILE_SAMPLES_DEFAULT))));
+        }
+        interceptors.add(new EventInterceptor());
+        if (getRecyclingPolicy() != RecyclingPolicy.NEVER) {
+            // like the latencies, only commands which reach the browser count
+            interceptors.add(new SessionAging(Integer.parseInt(System.getProperty(
+                CONFIG_SELENIUM_RECYCLE_SAMPLES, CONFIG_SELENIUM_RECYCLE_SAMPLES_DEFAULT))));
+        }
+        interceptors.add(new CommandLatencies(getBudgetWarmUp()));
+        return interceptors;
+    }
+
+    /**
+     * Retrieves the memoization statistics of the current session.
+     *
+     * @return the memoizing interceptor or null if memoization is disabled
+     * @since 1.6
+     */
+    public MemoizingInterceptor getMemoizingInterceptor() {
+        return Interceptors.find(selenium, MemoizingInterceptor.class);
+    }
+
+    /**
+     * Selects the given window and frame. With {@link #isContextTrackingEnabled() context tracking},
+     * only the commands needed to get there from the current context are sent.
+     *
+     * @param context the context to select
+     * @since 1.6
+     */
+    public void selectContext(BrowserContext context) {
+        ContextInterceptor.select(selenium, context);
+    }
+
+    /**
+     * Retrieves the selected window and frame of the current session.
+     *
+     * @return the selected context or null if it is unknown or context tracking is disabled
+     * @since 1.6
+     */
+    public BrowserContext getCurrentContext() {
+        final ContextInterceptor tracker = Interceptors.find(selenium, ContextInterceptor.class);
+        return tracker == null ? null : tracker.getCurrent();
+    }
+
+    /**
+     * Creates a batch of steps for several windows and frames, which selects each of them only once.
+     *
+     * @return a new batch for the current session
+     * @since 1.6
+     */
+    public ContextBatch batch() {
+        return new ContextBatch(selenium);
+    }
+
+    private void setUpSharedSession(SharedSession sharedSession) {
+        SharedSessions.Entry entry = SharedSessions.acquire(getClass(), getSharedSessionKey(), attempt <= 1);
+        if (entry != null && recycle(entry.getSelenium())) {
+            entry = null;
+        }
+        if (entry == null) {
+            // first test method of this class or a retry
+            selenium = createSelenium();
+            boolean registered = false;
+            try {
+                setUpClassWebsite();
+                SharedSessions.register(getSharedSessionKey(), this, selenium,
+                    selenium.getLocation(), selenium.getCookie());
+                registered = true;
+            } finally {
+                if (!registered) {
+                    // not shared yet, so nothing else would stop it
+                    stopQuietly(selenium);
+                }
+            }
+            checkpoint();
+        } else {
+            entry.setOwner(this);
+            selenium = entry.getSelenium();
+            resetWebsite();
+            checkpoint();
+            if (sharedSession.verifyIsolation()) {
+                assertEquals("shared session did not return to its location",
+                    entry.getLocation(), selenium.getLocation());
+                assertEquals("shared session did not restore its cookies",
+                    entry.getCookies(), selenium.getCookie());
+            }
+        }
+    }
+
+    private static void stopQuietly(Selenium session) {
+        try {
+            session.stop();
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            // must not hide why the session is stopped
+            Reports.warn("unable to stop session", e);
+        }
+    }
+
+    /**
+     * Samples the shared session's heap while it shows the page its class fixture left it on.
+     */
+    private void checkpoint() {
+        final SessionAging aging = Interceptors.find(selenium, SessionAging.class);
+        if (aging != null) {
+            aging.checkpoint(Interceptors.unwrap(selenium));
+        }
+    }
+
+    /**
+     * Replaces an aged shared session: tears down its class fixture and stops it,
+     * so the caller starts a fresh one.
+     */
+    private boolean recycle(Selenium shared) {
+        final SessionAging aging = Interceptors.find(shared, SessionAging.class);
+        final String reason = aging == null ? null : getRecyclingPolicy().check(aging);
+        if (reason == null) {
+            return false;
+        }
+        RecyclingReport.write(new File(System.getProperty(CONFIG_SELENIUM_RECYCLE_REPORT,
+            CONFIG_SELENIUM_RECYCLE_REPORT_DEFAULT)), getSharedSessionKey(), reason, aging);
+        selenium = shared;
+        try {
+            tearDownClassWebsite();
+        } finally {
+            discardSharedSession();
+        }
+        return true;
+    }
+
+    private String getSharedSessionKey() {
+        return getClass().getName() + "@" + getSeleniumBrowser();
+    }
+
+    /**
+     * Finishes the {@link SharedSession} the current thread used last, if it is still running.
+     * Suites which run tests on their own threads call this when a thread ran out of tests,
+     * because classes of which not all test methods ran are otherwise only finished by the next
+     * class on the same thread or when the jvm shuts down.
+     *
+     * @since 1.6
+     */
+    public static void finishSharedSession() {
+        finish(SharedSessions.takeOver(null));
+    }
+
+    private static void finish(SharedSessions.Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        try {
+            entry.finish();
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            // belongs to a test which already finished, must not fail the next one
+            Reports.warn("unable to finish shared session", e);
+        }
+    }
+
+    /**
+     * Don't forget to call super() when overriding this method.
+     */
+    @After
+    @Override
+    public void tearDown() {
+        String budgetViolations = null;
+        try {
+            // lifecycle
+            tearDownWebsite();
+
+            // checked before the session stops, reported after everything was cleaned up
+            budgetViolations = checkCommandBudgets();
+        } finally {
+            try {
+                try {
+                    closeAsyncSessions();
+                } finally {
+                    endSession();
+                }
+            } finally {
+                // lifecycle
+                tearDownTestServer();
+            }
+        }
+
+        if (budgetViolations != null) {
+            fail(budgetViolations);
+        }
+    }
+
+    private void endSession() {
+        if (getClass().isAnnotationPresent(SharedSession.class)) {
+            final SharedSessions.Entry entry = SharedSessions.release(getSharedSessionKey());
+            if (entry != null) {
+                // last test method of this class
+                entry.finish();
+            }
+        } else {
+            selenium.stop();
+        }
+    }
+
+    /**
+     * Retrieves the asynchronous view of this test's session. Commands issued through it
+     * run on their own thread, in order, but concurrently to other sessions.
+     * Commands issued through {@link #selenium} wait until all asynchronous ones finished.
+     *
+     * @return the asynchronous session
+     * @since 1.6
+     */
+    public AsyncSelenium async() {
+        if (asyncSession == null) {
+            asyncSession = new AsyncSession(selenium, false);
+            final AsyncGuard guard = Interceptors.find(selenium, AsyncGuard.class);
+            if (guard != null) {
+                guard.setAsync(asyncSession);
+            }
+        }
+        return asyncSession.async();
+    }
+
+    /**
+     * Starts an additional session, e.g. for a second user, which will be stopped
+     * after this test method.
+     *
+     * @return the asynchronous view of the new session
+     * @since 1.6
+     */
+    public AsyncSelenium startAsyncSession() {
+        final AsyncSession session = new AsyncSession(createSelenium(), true);
+        asyncSessions.add(session);
+        return session.async();
+    }
+
+    private void closeAsyncSessions() {
+        if (asyncSession != null) {
+            asyncSession.close(getTimeoutInMs());
+            final AsyncGuard guard = Interceptors.find(selenium, AsyncGuard.class);
+            if (guard != null) {
+                guard.setAsync(null);
+            }
+            asyncSession = null;
+        }
+        for (AsyncSession session : asyncSessions) {
+            session.close(getTimeoutInMs());
+        }
+        asyncSessions.clear();
+    }
+
+    /**
+     * Lifecycle: before selenium is set up.
+     */
+    public void setUpTestServer() {
+
+    }
+
+    /**
+     * Lifecycle: after selenium is set up.
+     */
+    public void setUpWebsite() {
+
+    }
+
+    /**
+     * Lifecycle: before selenium is teared down.
+     */
+    public void tearDownWebsite() {
+
+    }
+
+    /**
+     * Lifecycle: after selenium is teared down.
+     */
+    public void tearDownTestServer() {
+
+    }
+
+    /**
+     * Lifecycle: once per {@link SharedSession} class, after selenium is set up
+     * and before {@link #setUpWebsite()} of the first test method.
+     *
+     * @since 1.6
+     */
+    public void setUpClassWebsite() {
+
+    }
+
+    /**
+     * Lifecycle: before {@link #setUpWebsite()} of every but the first test method of
+     * a {@link SharedSession} class. Has to bring the session back to the state
+     * {@link #setUpClassWebsite()} left it in.
+     *
+     * @since 1.6
+     */
+    public void resetWebsite() {
+
+    }
+
+    /**
+     * Lifecycle: once per {@link SharedSession} class, after {@link #tearDownWebsite()}
+     * of the last test method and before selenium is teared down.
+     *
+     * @since 1.6
+     */
+    public void tearDownClassWebsite() {
+
+    }
+
+    /**
+     * Asserts that two values are not equal.
+     *
+     * @param failMessage message
+     * @param obj1 object
+     * @param obj2 object
+     */
+    public static void assertNotEquals(String failMessage, Object obj1, Object obj2) {
+        if (obj1.equals(obj2)) {
+            fail(failMessage);
+        }
+    }
+
+    /**
+     * Shortcut for selenium.waitForPageToLoad(String) with default timeout.
+     */
+    public void waitForPageToLoad() {
+        selenium.waitForPageToLoad(Integer.toString(getTimeoutInMs()));
+    }
+
+    /**
+     * Shortcut for selenium.waitForPageToLoad(String) with correctly typed timeout.
+     *
+     * @param timeoutInMs timeout for waiting
+     */
+    public void waitForPageToLoad(int timeoutInMs) {
+        selenium.waitForPageToLoad(Integer.toString(timeoutInMs));
+    }
+
+    /**
+     * Waits until a new page has loaded and became quiescent, which means there are no outstanding
+     * XHRs, no pending short timers and no DOM mutations during the quiet period.
+     * Uses the default timeout.
+     *
+     * @since 1.6
+     */
+    public void waitForPageReady() {
+        waitForPageReady(getTimeoutInMs());
+    }
+
+    /**
+     * Waits until a new page has loaded and became quiescent.
+     *
+     * @see #waitForPageReady()
+     * @param timeoutInMs timeout for waiting
+     * @since 1.6
+     */
+    public void waitForPageReady(int timeoutInMs) {
+        selenium.waitForCondition(Readiness.condition(true, getQuietPeriodInMs()), Integer.toString(timeoutInMs));
+    }
+
+    /**
+     * Waits until the current page became quiescent, for example after an AJAX request
+     * which did not load a new page. Uses the default timeout.
+     *
+     * @since 1.6
+     */
+    public void waitForQuiescence() {
+        waitForQuiescence(getTimeoutInMs());
+    }
+
+    /**
+     * Waits until the current page became quiescent.
+     *
+     * @see #waitForQuiescence()
+     * @param timeoutInMs timeout for waiting
+     * @since 1.6
+     */
+    public void waitForQuiescence(int timeoutInMs) {
+        selenium.waitForCondition(Readiness.condition(false, getQuietPeriodInMs()), Integer.toString(timeoutInMs));
+    }
+
+    /**
+     * Installs the readiness tracker in the current page right away. Without calling this,
+     * the tracker gets installed by the first wait on the page, which misses requests
+     * that were started before.
+     *
+     * @since 1.6
+     */
+    public void installReadinessTracker() {
+        selenium.runScript(Readiness.install());
+    }
+
+    /**
+     * Waits after an action which loads a new page, used by all *AndWait methods.
+     */
+    private void waitForNewPage(String trigger, String target, long start) {
+        final long waitStart = System.currentTimeMillis();
+        boolean successful = false;
+        try {
+            if (isReadinessDetectionEnabled()) {
+                waitForPageReady();
+            } else {
+                waitForPageToLoad();
+            }
+            successful = true;
+        } finally {
+            if (SeleniumEvents.isEnabled()) {
+                final long end = System.currentTimeMillis();
+                SeleniumEvents.fire(new PageLoadEvent(trigger, target, start, end - start, end - waitStart,
+                    successful));
+            }
+        }
+        lastPageLoadInMs = System.currentTimeMillis() - start;
+        lastPageLoadNumber = 0;
+        final PerformanceBudget budget = getPerformanceBudget();
+        lastNavigationTiming = isNavigationTimingEnabled() || budget != null ? captureNavigationTiming() : null;
+        if (budget != null && (budget.pageLoad() > 0 || budget.resourceBytes() > 0)) {
+            checkPageBudget(budget.pageLoad(), budget.resourceBytes());
+        }
+    }
+
+    private NavigationTiming captureNavigationTiming() {
+        final NavigationTiming timing;
+        try {
+            timing = NavigationTiming.parse(selenium.getEval(NavigationTiming.script()));
+        } catch (SeleniumException e) {
+            // timing is a side product, it must not fail the test
+            return null;
+        } catch (UnsupportedOperationException e) {
+            // the headless backend has no javascript
+            return null;
+        }
+        if (timing != null && isNavigationTimingEnabled()) {
+            final NavigationTimings timings = NavigationTimings.get();
+            timings.writeReportOnShutdown(new File(System.getProperty(CONFIG_SELENIUM_NAVIGATION_TIMING_REPORT,
+                CONFIG_SELENIUM_NAVIGATION_TIMING_REPORT_DEFAULT)));
+            timings.record(getUrlPattern(timing.getUrl()), timing);
+        }
+        return timing;
+    }
+
+    /**
+     * Retrieves the timing of the page loaded by the last *AndWait method.
+     *
+     * @return the timing or null if {@link #isNavigationTimingEnabled() disabled} or unsupported by the browser
+     * @since 1.6
+     */
+    public NavigationTiming getLastNavigationTiming() {
+        return lastNavigationTiming;
+    }
+
+    /**
+     * Asserts that the page loaded by the last *AndWait method took less than the given time,
+     * measured by the browser's Navigation Timing or, if not available, around the *AndWait method.
+     * The {@link PerformanceBudget#tolerance() tolerance} and {@link PerformanceBudget#warmUp() warm-up}
+     * of the current budget or of the system properties apply.
+     *
+     * @param ms the budget in ms
+     * @since 1.6
+     */
+    public void assertPageLoadUnder(long ms) {
+        checkPageBudget(ms, 0);
+    }
+
+    /**
+     * Asserts that the page loaded by the last *AndWait method and its resources transferred
+     * less than the given number of bytes. Tolerance and warm-up apply as for {@link #assertPageLoadUnder(long)}.
+     *
+     * @param bytes the budget in bytes
+     * @since 1.6
+     */
+    public void assertResourceBytesUnder(long bytes) {
+        if (lastNavigationTiming == null && lastPageLoadInMs >= 0) {
+            lastNavigationTiming = captureNavigationTiming();
+        }
+        checkPageBudget(0, bytes);
+    }
+
+    /**
+     * Asserts that a command took less than the given time on average in the current session,
+     * leaving out the first invocations as {@link PerformanceBudget#warmUp() warm-up}.
+     * Passes if the command did not run after its warm-up.
+     *
+     * @param command the command, e.g. "click"
+     * @param ms the budget in ms
+     * @since 1.6
+     */
+    public void assertCommandLatencyUnder(String command, long ms) {
+        final String violation = checkCommandBudget(command, ms);
+        if (violation != null) {
+            fail(violation);
+        }
+    }
+
+    private void checkPageBudget(long loadBudget, long bytesBudget) {
+        if (lastPageLoadInMs < 0) {
+            fail("no page was loaded by an *AndWait method");
+        }
+        if (lastPageLoadNumber == 0) {
+            final String url = lastNavigationTiming == null ? selenium.getLocation() : lastNavigationTiming.getUrl();
+            lastPageLoadNumber = PageLoads.count(getUrlPattern(url));
+        }
+        if (lastPageLoadNumber <= getBudgetWarmUp()) {
+            return;
+        }
+
+        final double tolerance = getBudgetTolerance();
+        final String page = lastNavigationTiming == null ? "page" : lastNavigationTiming.getUrl();
+        if (loadBudget > 0) {
+            final long load = lastNavigationTiming == null || lastNavigationTiming.getLoad() < 0 ?
+                lastPageLoadInMs : lastNavigationTiming.getLoad();
+            if (load > loadBudget * (1 + tolerance)) {
+                fail(String.format("loading %s took %dms, budget is %dms (+%.0f%%)",
+                    page, load, loadBudget, tolerance * 100));
+            }
+        }
+        if (bytesBudget > 0) {
+            if (lastNavigationTiming == null) {
+                fail("the browser does not provide the resource timing of " + selenium.getLocation());
+            }
+            final long bytes = lastNavigationTiming.getResourceBytes();
+            if (bytes > bytesBudget * (1 + tolerance)) {
+                fail(String.format("%s transferred %d bytes, budget is %d bytes (+%.0f%%)",
+                    page, bytes, bytesBudget, tolerance * 100));
+            }
+        }
+    }
+
+    /**
+     * Checks a command budget.
+     *
+     * @return the violation or null if the command is within its budget
+     */
+    private String checkCommandBudget(String command, long ms) {
+        final CommandLatencies latencies = Interceptors.find(selenium, CommandLatencies.class);
+        final double mean = latencies == null ? -1 : latencies.getMeanInMs(command);
+        final double tolerance = getBudgetTolerance();
+        if (mean > ms * (1 + tolerance)) {
+            return String.format("%s took %.1fms on average over %d invocations, budget is %dms (+%.0f%%)",
+                command, mean, latencies.getMeasured(command), ms, tolerance * 100);
+        }
+        return null;
+    }
+
+    /**
+     * Checks the command budgets of the current {@link PerformanceBudget}.
+     *
+     * @return all violations or null if all commands are within their budgets
+     */
+    private String checkCommandBudgets() {
+        final PerformanceBudget budget = getPerformanceBudget();
+        if (budget == null || selenium == null) {
+            return null;
+        }
+        final StringBuilder violations = new StringBuilder();
+        for (String entry : budget.commandLatency()) {
+            final int split = entry.indexOf('=');
+            long ms = -1;
+            if (split > 0) {
+                try {
+                    ms = Long.parseLong(entry.substring(split + 1).trim());
+                } catch (NumberFormatException e) {
+                    ms = -1;
+                }
+            }
+            // a malformed budget must not keep tearDown from stopping the session
+            final String violation = ms < 0 ?
+                "command budget has to be \"command=ms\" but was \"" + entry + "\"" :
+                checkCommandBudget(entry.substring(0, split).trim(), ms);
+            if (violation != null) {
+                violations.append(violations.length() == 0 ? "" : "; ").append(violation);
+            }
+        }
+        return violations.length() == 0 ? null : violations.toString();
+    }
+
+    /**
+     * Wait for the value in an input field to change, for example by some AJAX request.
+     * Requires the old value to check for.
+     * This method fails with the message "timeout" if the field did not change after 60 seconds.
+     * 
+     * @param locator the locator for the input field
+     * @param oldValue the old value in the input field
+     */
+    public void waitForValueChange(final String locator, final String oldValue) {
+        waitForValueChange(locator, oldValue, 60);
+    }
+    
+    /**
+     * Wait for the value in an input field to change, for example by some AJAX request.
+     * Requires the old value to check for.
+     * This method fails with the message "timeout" after the given number of seconds have passed.
+     * 
+     * @param locator the locator for the input field
+     * @param oldValue the old value in the input field
+     * @param timeout the number of seconds to wait for value change until the method fails
+     */
+    public void waitForValueChange(final String locator, final String oldValue, final int timeout) {
+        if (isEventDrivenWaitEnabled()) {
+            waitInBrowser("waitForValueChange", locator, MutationLog.differs(locator, oldValue), timeout);
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        int iterations = 0;
+        long slept = 0;
+        boolean successful = false;
+        try {
+            for (int second = 0;; second++) {
+                if (second >= timeout) fail("timeout");
+                iterations++;
+                try {
+                    final String newValue = getValue(locator);
+                    if (oldValue == null && newValue == null) {
+                        slept += sleep(1000);
+                    } else if (oldValue != null && oldValue.equals(newValue)) {
+                        slept += sleep(1000);
+                    } else {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    fail("Sleep was interrupted");
+                }
+            }
+            successful = true;
+        } finally {
+            fireWait("waitForValueChange", locator, start, iterations, slept, successful);
+        }
+    }
+
+    /**
+     * Wait until an element with the given locator is present, for example after an AJAX request.
+     * This method fails with the message "timeout" if the element did not appear after 60 seconds.
+     *
+     * @param locator the locator of the element that we wait for
+     * @since 1.6
+     */
+    public void waitForElementPresent(final String locator) {
+        waitForElementPresent(locator, 60);
+    }
+
+    /**
+     * Wait until an element with the given locator is present, for example after an AJAX request.
+     * This method fails with the message "timeout" after the given number of seconds have passed.
+     *
+     * @param locator the locator of the element that we wait for
+     * @param timeout the number of seconds to wait for the element until the method fails
+     * @since 1.6
+     */
+    public void waitForElementPresent(final String locator, final int timeout) {
+        if (isEventDrivenWaitEnabled()) {
+            waitInBrowser("waitForElementPresent", locator, MutationLog.appeared(locator), timeout);
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        int iterations = 0;
+        long slept = 0;
+        boolean successful = false;
+        try {
+            for (int second = 0;; second++) {
+                if (second >= timeout) fail("timeout");
+                iterations++;
+                if (selenium.isElementPresent(locator)) {
+                    break;
+                }
+                try {
+                    slept += sleep(1000);
+                } catch (InterruptedException e) {
+                    fail("Sleep was interrupted");
+                }
+            }
+            successful = true;
+        } finally {
+            fireWait("waitForElementPresent", locator, start, iterations, slept, successful);
+        }
+    }
+
+    /**
+     * Waits until at least one of the given elements is present, for example when a form
+     * can either show a success or an error message. This method fails with the message
+     * "timeout" if none of them appeared after 60 seconds.
+     *
+     * @param locators the locators of the elements
+     * @return the locator of the first present element
+     * @since 1.6
+     */
+    public String waitForAny(String... locators) {
+        return waitForAny(60, locators);
+    }
+
+    /**
+     * Waits until at least one of the given elements is present. All locators are checked
+     * at once inside the browser, so there is no round trip per locator and poll.
+     * If one of them is present already, a single round trip finds it.
+     * This method fails with the message "timeout" after the given number of seconds have passed.
+     *
+     * @param timeout the number of seconds to wait until the method fails
+     * @param locators the locators of the elements
+     * @return the locator of the first present element, in the order given
+     * @throws IllegalArgumentException if no locator is given
+     * @since 1.6
+     */
+    public String waitForAny(int timeout, String... locators) {
+        checkLocators(locators);
+        // stores the index of the first present element, -1 if there is none
+        final String match = "(function () {" +
+            "var locators = " + toArray(locators) + ";" +
+            "for (var i = 0; i < locators.length; i++) {" +
+                "if (selenium.browserbot.findElementOrNull(locators[i])) { return storedVars['ccMatched'] = i; }" +
+            "}" +
+            "return storedVars['ccMatched'] = -1; })()";
+
+        final long start = System.currentTimeMillis();
+        final int present = Integer.parseInt(selenium.getEval(match));
+        if (present >= 0) {
+            fireWait("waitForAny", join(locators), start, 1, 0, true);
+            return locators[present];
+        }
+        waitInBrowser("waitForAny", join(locators), match + " >= 0", timeout);
+        return locators[Integer.parseInt(selenium.getEval("storedVars['ccMatched']"))];
+    }
+
+    /**
+     * Waits until all of the given elements are present.
+     * This method fails with the message "timeout" if they did not appear after 60 seconds.
+     *
+     * @param locators the locators of the elements
+     * @since 1.6
+     */
+    public void waitForAll(String... locators) {
+        waitForAll(60, locators);
+    }
+
+    /**
+     * Waits until all of the given elements are present. All locators are checked
+     * at once inside the browser, so there is no round trip per locator and poll.
+     * This method fails with the message "timeout" after the given number of seconds have passed.
+     *
+     * @param timeout the number of seconds to wait until the method fails
+     * @param locators the locators of the elements
+     * @throws IllegalArgumentException if no locator is given
+     * @since 1.6
+     */
+    public void waitForAll(int timeout, String... locators) {
+        checkLocators(locators);
+        waitInBrowser("waitForAll", join(locators), "(function () {" +
+            "var locators = " + toArray(locators) + ";" +
+            "for (var i = 0; i < locators.length; i++) {" +
+                "if (!selenium.browserbot.findElementOrNull(locators[i])) { return false; }" +
+            "}" +
+            "return true; })()", timeout);
+    }
+
+    private static void checkLocators(String[] locators) {
+        if (locators == null || locators.length == 0) {
+            throw new IllegalArgumentException("locators must not be empty");
+        }
+    }
+
+    private static String toArray(String[] values) {
+        final StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(MutationLog.quote(values[i]));
+        }
+        return builder.append(']').toString();
+    }
+
+    private static String join(String[] values) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(values[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Starts watching the given locator in the current page, so a following
+     * {@link #waitForElementPresent(String)} or {@link #waitForValueChange(String, String)}
+     * also sees changes which happened in between, e.g. a message which was shown only briefly.
+     * Watched locators are forgotten when a new page loads.
+     *
+     * @param locator the locator of the element to watch
+     * @since 1.6
+     */
+    public void watchElement(String locator) {
+        selenium.getEval(MutationLog.watch(locator));
+    }
+
+    /**
+     * Retrieves the changes of a watched element since the last successful wait for it.
+     *
+     * @param locator the locator of the element
+     * @return one "timestamp type [value]" line per change where type is appeared, disappeared or changed
+     * @since 1.6
+     */
+    public String[] getElementEvents(String locator) {
+        final String events = selenium.getEval(MutationLog.dump(locator));
+        return events.length() == 0 ? new String[0] : events.split("\n");
+    }
+
+    /**
+     * Waits inside the browser for a condition, failing with the message "timeout"
+     * just like the polling waits.
+     */
+    private void waitInBrowser(String method, String locator, String condition, int timeout) {
+        final long start = System.currentTimeMillis();
+        boolean successful = false;
+        try {
+            selenium.waitForCondition(condition, Long.toString(timeout * 1000L));
+            successful = true;
+        } catch (SeleniumException e) {
+            if (e.getMessage() != null && e.getMessage().startsWith("Timed out")) {
+                fail("timeout");
+            }
+            throw e;
+        } finally {
+            fireWait(method, locator, start, 1, 0, successful);
+        }
+    }
+
+    /**
+     * Sleeps between two polls of a wait.
+     *
+     * @return how long the thread actually slept
+     */
+    private static long sleep(long millis) throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        Thread.sleep(millis);
+        return System.currentTimeMillis() - start;
+    }
+
+    private static void fireWait(String method, String locator, long start, int iterations, long slept,
+            boolean successful) {
+        if (SeleniumEvents.isEnabled()) {
+            SeleniumEvents.fire(new WaitEvent(method, locator, start, System.currentTimeMillis() - start,
+                iterations, slept, successful));
+        }
+    }
+
+    /**
+     * Streams the source of the current page. The caller has to close the reader.
+     *
+     * @return the page's source
+     * @since 1.6
+     */
+    public Reader openHtmlSource() {
+        return readerOf(openString("getHtmlSource"));
+    }
+
+    /**
+     * Streams the text of the current page. The caller has to close the reader.
+     *
+     * @return the page's text
+     * @since 1.6
+     */
+    public Reader openBodyText() {
+        return readerOf(openString("getBodyText"));
+    }
+
+    /**
+     * Writes the UTF-8 encoded source of the current page to a file without holding it in memory.
+     *
+     * @param file the target file, will be overwritten
+     * @return the number of bytes written
+     * @since 1.6
+     */
+    public long writeHtmlSource(File file) {
+        return writeString("getHtmlSource", file);
+    }
+
+    /**
+     * Writes the UTF-8 encoded source of the current page to a channel without holding it in memory.
+     *
+     * @param channel the target channel, stays open
+     * @return the number of bytes written
+     * @since 1.6
+     */
+    public long writeHtmlSource(WritableByteChannel channel) {
+        return writeString("getHtmlSource", channel);
+    }
+
+    /**
+     * Writes the UTF-8 encoded text of the current page to a file without holding it in memory.
+     *
+     * @param file the target file, will be overwritten
+     * @return the number of bytes written
+     * @since 1.6
+     */
+    public long writeBodyText(File file) {
+        return writeString("getBodyText", file);
+    }
+
+    /**
+     * Writes the UTF-8 encoded text of the current page to a channel without holding it in memory.
+     *
+     * @param channel the target channel, stays open
+     * @return the number of bytes written
+     * @since 1.6
+     */
+    public long writeBodyText(WritableByteChannel channel) {
+        return writeString("getBodyText", channel);
+    }
+
+    /**
+     * Searches the source of the current page while streaming it, which stops
+     * transferring the page as soon as the text was found.
+     *
+     * @param text the exact text to search
+     * @return whether the source contains the text
+     * @since 1.6
+     */
+    public boolean isTextPresentInHtmlSource(String text) {
+        return search(openHtmlSource(), text);
+    }
+
+    /**
+     * Searches the text of the current page while streaming it. Unlike
+     * {@link #isTextPresent(String)}, the text is exact and not a pattern.
+     *
+     * @param text the exact text to search
+     * @return whether the page's text contains the text
+     * @since 1.6
+     */
+    public boolean isTextPresentInBodyText(String text) {
+        return search(openBodyText(), text);
+    }
+
+    /**
+     * Streams a string result through the session's interceptors, falling back to
+     * the in-memory one for sessions which are not {@link StreamingSelenium}s.
+     */
+    private InputStream openString(String command) {
+        final InputStream stream = Interceptors.openString(selenium, command);
+        if (stream != null) {
+            return stream;
+        }
+        final String value = "getHtmlSource".equals(command) ? selenium.getHtmlSource() : selenium.getBodyText();
+        try {
+            return new ByteArrayInputStream(value.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long writeString(String command, File file) {
+        try {
+            final FileOutputStream stream = new FileOutputStream(file);
             try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                fail("Sleep was interrupted");
+                return writeString(command, stream.getChannel());
+            } finally {
+                stream.close();
             }
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to write " + file, e);
+        }
+    }
+
+    private long writeString(String command, WritableByteChannel channel) {
+        final InputStream stream = openString(command);
+        try {
+            try {
+                return StreamingSelenium.copy(Channels.newChannel(stream), channel);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new SeleniumException("unable to stream " + command, e);
+        }
+    }
+
+    private static Reader readerOf(InputStream stream) {
+        try {
+            return new InputStreamReader(stream, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean search(Reader reader, String text) {
+        try {
+            try {
+                return ReaderSearch.contains(reader, text);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new SeleniumException("unable to search the page", e);
+        }
+    }
+
+    /**
+     * Asserts that a screenshot of the entire page matches the given baseline image.
+     *
+     * @param baseline the baseline image file
+     * @param diff the diff which defines tolerance and masked regions
+     * @since 1.6
+     */
+    public void assertEntirePageMatches(File baseline, ScreenshotDiff diff) {
+        final DiffResult result;
+        try {
+            final TiledImage expected = TiledImage.read(baseline, ScreenshotDiff.DEFAULT_TILE_SIZE);
+            final TiledImage actual = TiledImage.fromBase64(
+                selenium.captureEntirePageScreenshotToString(""), ScreenshotDiff.DEFAULT_TILE_SIZE);
+            result = diff.compare(expected, actual);
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to decode screenshots", e);
+        }
+        assertTrue("screenshot does not match " + baseline + ": " + result, result.isMatch());
+    }
+
+    /**
+     * Stores a screenshot of the current window in the {@link #getScreenshotStore() screenshot store}.
+     * Identical images are only written once.
+     *
+     * @param step the step within this test
+     * @return the hash of the image
+     * @since 1.6
+     */
+    public String storeScreenshot(String step) {
+        try {
+            return getScreenshotStore().store(getClass().getName() + "." + getName(), step,
+                selenium.captureScreenshotToString());
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to store screenshot", e);
+        }
+    }
+
+    /**
+     * Stores a screenshot of the entire page in the {@link #getScreenshotStore() screenshot store}.
+     * Identical images are only written once.
+     *
+     * @param step the step within this test
+     * @return the hash of the image
+     * @since 1.6
+     */
+    public String storeEntirePageScreenshot(String step) {
+        try {
+            return getScreenshotStore().store(getClass().getName() + "." + getName(), step,
+                selenium.captureEntirePageScreenshotToString(""));
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to store screenshot", e);
         }
     }
 
@@ -282,8 +1864,9 @@ public abstract class CosmoCodeSeleniumTest extends SeleneseTestCase {
      * @since 1.2
      */
     public void pressEnterAndWait(String locator) {
+        final long start = System.currentTimeMillis();
         pressEnter(locator);
-        waitForPageToLoad();
+        waitForNewPage("pressEnter", locator, start);
     }
 
     /**
@@ -292,8 +1875,9 @@ public abstract class CosmoCodeSeleniumTest extends SeleneseTestCase {
      * @param url the URL to open
      */
     public void openAndWait(String url) {
+        final long start = System.currentTimeMillis();
         selenium.open(url);
-        waitForPageToLoad();
+        waitForNewPage("open", url, start);
     }
 
     /**
@@ -303,8 +1887,9 @@ public abstract class CosmoCodeSeleniumTest extends SeleneseTestCase {
      * @since 1.2
      */
     public void submitAndWait(String locator) {
+        final long start = System.currentTimeMillis();
         selenium.submit(locator);
-        waitForPageToLoad();
+        waitForNewPage("submit", locator, start);
     }
 
     /**
@@ -314,8 +1899,9 @@ public abstract class CosmoCodeSeleniumTest extends SeleneseTestCase {
      * @since 1.6
      */
     public void clickAndWait(String locator) {
+        final long start = System.currentTimeMillis();
         selenium.click(locator);
-        waitForPageToLoad();
+        waitForNewPage("click", locator, start);
     }
 
     /**
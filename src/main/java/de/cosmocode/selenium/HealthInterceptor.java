@@ -0,0 +1,77 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Feeds the outcome of every command of one session into the {@link SeleniumServerHealth} of its node.
+ *
+ * <p>
+ * Only the node's own failures count: a command the node answered with "ERROR: ...", e.g. an element
+ * which was not found, or with a timeout of the page is a failure of the test and a successful request. Waits like
+ * {@code waitForPageToLoad} take as long as the page needs, so they only count if they fail.
+ * Streamed commands are timed until the node answered, not until the result is read.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class HealthInterceptor implements SeleniumInterceptor {
+
+    private final SeleniumServerHealth health;
+
+    public HealthInterceptor(SeleniumServerHealth health) {
+        this.health = health;
+    }
+
+    @Override
+    public Object intercept(SeleniumInvocation invocation) throws Throwable {
+        final long start = System.currentTimeMillis();
+        final Object result;
+        try {
+            result = invocation.proceed();
+        } catch (SeleniumException e) {
+            if (isAnswer(e)) {
+                recordSuccess(invocation, start);
+            } else {
+                health.recordFailure(System.currentTimeMillis() - start);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            health.recordFailure(System.currentTimeMillis() - start);
+            throw e;
+        }
+        recordSuccess(invocation, start);
+        return result;
+    }
+
+    private void recordSuccess(SeleniumInvocation invocation, long start) {
+        if (!invocation.getName().startsWith("waitFor")) {
+            health.recordSuccess(System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Selenium reports failed commands as "ERROR: ..." and "Timed out after ...", but internal
+     * errors of the server as "ERROR Server Exception: ..." and io problems with their own message.
+     */
+    private static boolean isAnswer(SeleniumException e) {
+        final String message = e.getMessage();
+        return message != null && (message.startsWith("ERROR: ") || message.startsWith("Timed out after"));
+    }
+
+}
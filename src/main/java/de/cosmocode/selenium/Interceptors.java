@@ -0,0 +1,163 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * Creates sessions whose commands pass through {@link SeleniumInterceptor}s.
+ *
+ * @since 1.6
+ */
+public final class Interceptors {
+
+    private Interceptors() {
+
+    }
+
+    /**
+     * Wraps a session. The first interceptor is the outermost one.
+     *
+     * @param target the session
+     * @param interceptors the interceptors
+     * @return the intercepted session or the target itself if there are no interceptors
+     */
+    public static Selenium wrap(Selenium target, List<? extends SeleniumInterceptor> interceptors) {
+        if (interceptors.isEmpty()) {
+            return target;
+        }
+        return (Selenium) Proxy.newProxyInstance(
+            Selenium.class.getClassLoader(),
+            new Class<?>[] {Selenium.class},
+            new Handler(target, Collections.unmodifiableList(new ArrayList<SeleniumInterceptor>(interceptors)))
+        );
+    }
+
+    /**
+     * Finds an interceptor of the given type.
+     *
+     * @param <T> the interceptor type
+     * @param selenium a session created by {@link #wrap(Selenium, List)}
+     * @param type the interceptor type
+     * @return the first interceptor of the given type or null if there is none
+     */
+    public static <T extends SeleniumInterceptor> T find(Selenium selenium, Class<T> type) {
+        if (selenium == null || !Proxy.isProxyClass(selenium.getClass())) {
+            return null;
+        }
+        final InvocationHandler handler = Proxy.getInvocationHandler(selenium);
+        if (!(handler instanceof Handler)) {
+            return null;
+        }
+        for (SeleniumInterceptor interceptor : ((Handler) handler).interceptors) {
+            if (type.isInstance(interceptor)) {
+                return type.cast(interceptor);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the session behind the interceptors, e.g. to use methods
+     * which are not part of the {@link Selenium} interface.
+     *
+     * @param selenium a session created by {@link #wrap(Selenium, List)}
+     * @return the wrapped session or the given one if it is not intercepted
+     */
+    public static Selenium unwrap(Selenium selenium) {
+        if (selenium == null || !Proxy.isProxyClass(selenium.getClass())) {
+            return selenium;
+        }
+        final InvocationHandler handler = Proxy.getInvocationHandler(selenium);
+        return handler instanceof Handler ? ((Handler) handler).target : selenium;
+    }
+
+    /**
+     * Sends a string command through the interceptors of a session, but streams its result
+     * if the session behind them is a {@link StreamingSelenium}.
+     *
+     * @param selenium a session created by {@link #wrap(Selenium, List)}
+     * @param command a string command without arguments, e.g. "getHtmlSource"
+     * @return the UTF-8 encoded result, which the caller has to close,
+     *         or null if the session can not stream
+     * @throws NoSuchMethodError if the command does not exist
+     */
+    public static InputStream openString(Selenium selenium, String command) {
+        final Selenium target = unwrap(selenium);
+        if (!(target instanceof StreamingSelenium)) {
+            return null;
+        } else if (target == selenium) {
+            return ((StreamingSelenium) target).openString(command);
+        }
+        final Method method;
+        try {
+            method = Selenium.class.getMethod(command);
+        } catch (NoSuchMethodException e) {
+            throw new NoSuchMethodError(command);
+        }
+        final Handler handler = (Handler) Proxy.getInvocationHandler(selenium);
+        try {
+            return (InputStream) new SeleniumInvocation(target, handler.interceptors, method, null, true).proceed();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        /* CHECKSTYLE:OFF */
+        } catch (Throwable e) {
+        /* CHECKSTYLE:ON */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends every {@link Selenium} method through the interceptors.
+     */
+    private static final class Handler implements InvocationHandler {
+
+        private final Selenium target;
+        private final List<SeleniumInterceptor> interceptors;
+
+        private Handler(Selenium target, List<SeleniumInterceptor> interceptors) {
+            this.target = target;
+            this.interceptors = interceptors;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else {
+                    return "intercepted " + target;
+                }
+            }
+            return new SeleniumInvocation(target, interceptors, method, args).proceed();
+        }
+
+    }
+
+}
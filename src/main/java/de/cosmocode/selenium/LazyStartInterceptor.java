@@ -0,0 +1,78 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+/**
+ * Starts the session when the first command is sent. Stopping a session which
+ * was never started does nothing.
+ *
+ * @see CosmoCodeSeleniumTest#isLazySessionStart()
+ * @since 1.6
+ */
+public final class LazyStartInterceptor implements SeleniumInterceptor {
+
+    private final Runnable starter;
+    private boolean started;
+
+    /**
+     * Creates a lazy start.
+     *
+     * @param starter starts and configures the session
+     */
+    public LazyStartInterceptor(Runnable starter) {
+        this.starter = starter;
+    }
+
+    @Override
+    public Object intercept(SeleniumInvocation invocation) throws Throwable {
+        final String name = invocation.getName();
+        if ("stop".equals(name)) {
+            synchronized (this) {
+                if (!started) {
+                    return null;
+                }
+                started = false;
+            }
+            return invocation.proceed();
+        }
+
+        ensureStarted();
+        if ("start".equals(name)) {
+            // already done
+            return null;
+        }
+        return invocation.proceed();
+    }
+
+    /**
+     * Starts the session unless it is running already.
+     */
+    public synchronized void ensureStarted() {
+        if (!started) {
+            starter.run();
+            started = true;
+        }
+    }
+
+    /**
+     * @return whether the session is running
+     */
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects how often every locator is used and how long the browser needs to resolve it,
+ * and ranks the locators by their estimated total resolution time.
+ *
+ * @see LocatorProfiler
+ * @since 1.6
+ */
+public final class LocatorProfile implements Reports.Report {
+
+    private static LocatorProfile instance;
+
+    private final Map<String, Stats> locators = new HashMap<String, Stats>();
+
+    private final Reports.OnShutdown onShutdown = Reports.onShutdown("selenium-locator-profile", this);
+
+    private LocatorProfile() {
+
+    }
+
+    /**
+     * @return the profile of this jvm
+     */
+    public static synchronized LocatorProfile get() {
+        if (instance == null) {
+            instance = new LocatorProfile();
+        }
+        return instance;
+    }
+
+    /**
+     * Counts one use of a locator.
+     *
+     * @param locator the locator
+     * @param samples how many resolution times should be measured per locator
+     * @return whether the resolution time of this use should be measured
+     */
+    synchronized boolean use(String locator, int samples) {
+        Stats stats = locators.get(locator);
+        if (stats == null) {
+            stats = new Stats(locator);
+            locators.put(locator, stats);
+        }
+        stats.uses++;
+        return stats.samples + stats.pending++ < samples;
+    }
+
+    /**
+     * Adds a measurement.
+     *
+     * @param locator the locator
+     * @param result the result of {@link #script(String)}, null if the measurement failed
+     */
+    synchronized void sample(String locator, String result) {
+        final Stats stats = locators.get(locator);
+        stats.pending--;
+        if (result == null) {
+            return;
+        }
+        final String[] parts = result.split("\\|", 4);
+        if (parts.length < 4) {
+            return;
+        }
+        final double micros = parseMicros(parts[0]);
+        final int split = parts[3].indexOf('|');
+        final double suggestionMicros = split < 0 ? -1 : parseMicros(parts[3].substring(0, split));
+        if (micros < 0 || parts[3].length() > 0 && suggestionMicros < 0) {
+            // e.g. "null" if the browser failed to measure, a broken sample would spoil the average
+            return;
+        }
+        stats.samples++;
+        stats.totalMicros += micros;
+        stats.found |= "1".equals(parts[1]);
+        if (parts[3].length() > 0) {
+            stats.suggestion = parts[3].substring(split + 1);
+            stats.suggestionMicros = suggestionMicros;
+        }
+        if (parts[2].length() > 0) {
+            stats.tag = parts[2];
+        }
+    }
+
+    /**
+     * @return the measured time or -1 if it is no finite, non-negative number
+     */
+    private static double parseMicros(String value) {
+        final double micros;
+        try {
+            micros = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return Double.isNaN(micros) || Double.isInfinite(micros) || micros < 0 ? -1 : micros;
+    }
+
+    /**
+     * Creates the script which measures a locator inside the browser. It resolves the locator
+     * repeatedly for up to 25ms and, if the element has a unique id, name or class combination,
+     * measures that alternative as well.
+     *
+     * @param locator the locator
+     * @return the script for {@link com.thoughtworks.selenium.Selenium#getEval(String)}
+     */
+    static String script(String locator) {
+        return "(function () {" +
+            "var bot = selenium.browserbot;" +
+            "var measure = function (l) {" +
+                "var runs = 0, start = new Date().getTime(), elapsed;" +
+                "do { bot.findElementOrNull(l); runs++; elapsed = new Date().getTime() - start; }" +
+                "while (elapsed < 25 && runs < 500);" +
+                "return elapsed * 1000 / runs;" +
+            "};" +
+            "var locator = " + MutationLog.quote(locator) + ";" +
+            "var time = measure(locator), element = bot.findElementOrNull(locator), better = '';" +
+            "if (element) {" +
+                "var doc = element.ownerDocument;" +
+                "if (element.id && doc.getElementById(element.id) === element) {" +
+                    "better = 'id=' + element.id;" +
+                "} else if (element.name && doc.getElementsByName(element.name).length == 1) {" +
+                    "better = 'name=' + element.name;" +
+                "} else if (element.className && doc.querySelectorAll) {" +
+                    "var css = element.tagName.toLowerCase() + '.' +" +
+                        "element.className.replace(/^\\s+|\\s+$/g, '').split(/\\s+/).join('.');" +
+                    "try { if (doc.querySelectorAll(css).length == 1) { better = 'css=' + css; } } catch (e) { }" +
+                "}" +
+            "}" +
+            "if (better && better != locator) { better = measure(better) + '|' + better; } else { better = ''; }" +
+            "var tag = element ? element.tagName.toLowerCase() : '';" +
+            "return time + '|' + (element ? 1 : 0) + '|' + tag + '|' + better;" +
+        "})()";
+    }
+
+    /**
+     * Ranks the locators.
+     *
+     * @return all locators, the highest estimated total resolution time first
+     */
+    public synchronized List<Stats> getRanked() {
+        final List<Stats> ranked = new ArrayList<Stats>(locators.size());
+        for (Stats stats : locators.values()) {
+            ranked.add(stats.copy());
+        }
+        Collections.sort(ranked, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats left, Stats right) {
+                return Double.compare(right.getTotalMicros(), left.getTotalMicros());
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * Writes one tab separated line per locator, the highest estimated total resolution time first.
+     *
+     * @param file the report file
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void writeReport(File file) throws IOException {
+        final PrintWriter writer = Reports.open(file, false);
+        try {
+            writer.println("# total ms\tuses\tavg us\telement\tlocator\tcheaper alternative\talternative us");
+            for (Stats stats : getRanked()) {
+                writer.println(stats);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the {@link #writeReport(File) report} when the jvm shuts down.
+     *
+     * @param file the report file
+     * @see Reports.OnShutdown
+     */
+    public void writeReportOnShutdown(File file) {
+        onShutdown.writeTo(file);
+    }
+
+    /**
+     * Usage and resolution time of one locator.
+     */
+    public static final class Stats {
+
+        private final String locator;
+        private long uses;
+        private int samples;
+        private int pending;
+        private double totalMicros;
+        private boolean found;
+        private String tag;
+        private String suggestion;
+        private double suggestionMicros;
+
+        private Stats(String locator) {
+            this.locator = locator;
+        }
+
+        private Stats copy() {
+            final Stats copy = new Stats(locator);
+            copy.uses = uses;
+            copy.samples = samples;
+            copy.totalMicros = totalMicros;
+            copy.found = found;
+            copy.tag = tag;
+            copy.suggestion = suggestion;
+            copy.suggestionMicros = suggestionMicros;
+            return copy;
+        }
+
+        public String getLocator() {
+            return locator;
+        }
+
+        /**
+         * @return how often the locator was used
+         */
+        public long getUses() {
+            return uses;
+        }
+
+        /**
+         * @return the average resolution time in microseconds, 0 if it was never measured
+         */
+        public double getAverageMicros() {
+            return samples == 0 ? 0 : totalMicros / samples;
+        }
+
+        /**
+         * @return the estimated resolution time of all uses in microseconds
+         */
+        public double getTotalMicros() {
+            return getAverageMicros() * uses;
+        }
+
+        /**
+         * @return whether the locator matched an element in at least one measurement
+         */
+        public boolean isFound() {
+            return found;
+        }
+
+        /**
+         * @return a cheaper locator for the same element or null if there is none
+         */
+        public String getSuggestion() {
+            return suggestion != null && suggestionMicros < getAverageMicros() ? suggestion : null;
+        }
+
+        @Override
+        public String toString() {
+            final String better = getSuggestion();
+            return String.format("%.1f\t%d\t%.1f\t%s\t%s\t%s\t%s",
+                getTotalMicros() / 1000, uses, getAverageMicros(), found ? tag : "no", locator,
+                better == null ? "" : better, better == null ? "" : String.format("%.1f", suggestionMicros));
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Counts every locator passed to a command and measures how long the browser
+ * needs to resolve it, right before the command runs.
+ *
+ * <p>
+ * Measuring costs an additional round trip and up to 50ms in the browser, therefore only
+ * the first uses of each locator are measured. Results go to the jvm wide {@link LocatorProfile}.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class LocatorProfiler implements SeleniumInterceptor {
+
+    /**
+     * Commands whose first argument is an element locator.
+     */
+    private static final Set<String> LOCATOR_COMMANDS = new HashSet<String>(Arrays.asList(
+        "click", "doubleClick", "contextMenu", "clickAt", "doubleClickAt", "contextMenuAt", "fireEvent", "focus",
+        "keyPress", "keyDown", "keyUp", "mouseOver", "mouseOut", "mouseDown", "mouseDownRight", "mouseDownAt",
+        "mouseDownRightAt", "mouseUp", "mouseUpRight", "mouseUpAt", "mouseUpRightAt", "mouseMove", "mouseMoveAt",
+        "type", "typeKeys", "check", "uncheck", "select", "addSelection", "removeSelection", "removeAllSelections",
+        "submit", "getText", "getValue", "isChecked", "getSelectedLabels", "getSelectedLabel", "getSelectedValues",
+        "getSelectedValue", "getSelectedIndexes", "getSelectedIndex", "getSelectedIds", "getSelectedId",
+        "isSomethingSelected", "getSelectOptions", "getAttribute", "isElementPresent", "isVisible", "isEditable",
+        "dragdrop", "dragAndDrop", "dragAndDropToObject", "highlight", "isOrdered", "getElementPositionLeft",
+        "getElementPositionTop", "getElementWidth", "getElementHeight", "getCursorPosition", "setCursorPosition",
+        "getElementIndex", "assignId"
+    ));
+
+    private final LocatorProfile profile;
+    private final int samples;
+
+    /**
+     * Creates a profiler which measures each locator up to the given number of times.
+     *
+     * @param profile the profile which collects the results
+     * @param samples how many uses of each locator get measured
+     */
+    public LocatorProfiler(LocatorProfile profile, int samples) {
+        this.profile = profile;
+        this.samples = samples;
+    }
+
+    @Override
+    public Object intercept(SeleniumInvocation invocation) throws Throwable {
+        final String name = invocation.getName();
+        String locator = invocation.getFirstArgument();
+        if (locator == null || !LOCATOR_COMMANDS.contains(name)) {
+            return invocation.proceed();
+        }
+        if ("getAttribute".equals(name)) {
+            final int split = locator.lastIndexOf('@');
+            locator = split > 0 ? locator.substring(0, split) : locator;
+        }
+
+        if (profile.use(locator, samples)) {
+            String result = null;
+            try {
+                // bypasses the inner interceptors, measuring does not change the page
+                result = invocation.getTarget().getEval(LocatorProfile.script(locator));
+            /* CHECKSTYLE:OFF */
+            } catch (RuntimeException e) {
+            /* CHECKSTYLE:ON */
+                // e.g. no page loaded yet, profiling must not break the test
+                result = null;
+            } finally {
+                profile.sample(locator, result);
+            }
+        }
+        return invocation.proceed();
+    }
+
+}
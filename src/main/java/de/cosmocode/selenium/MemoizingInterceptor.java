@@ -0,0 +1,146 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of side-effect-free page queries until the page may have changed.
+ *
+ * <p>
+ * Every command which is not a pure query ({@code get*} except {@code getEval}, {@code is*})
+ * starts a new page epoch and clears the cache, before and after it runs. Element
+ * queries like {@code isElementPresent} are never cached, so polling keeps working.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class MemoizingInterceptor implements SeleniumInterceptor {
+
+    private static final Set<String> MEMOIZED = new HashSet<String>(Arrays.asList(
+        "getTitle", "getLocation", "getAllLinks", "getAllFields", "getAllButtons", "getHtmlSource"
+    ));
+
+    private static final AtomicLong TOTAL_HITS = new AtomicLong();
+    private static final AtomicLong TOTAL_MISSES = new AtomicLong();
+
+    private final Map<String, Object> cache = new HashMap<String, Object>();
+
+    private long epoch;
+    private long hits;
+    private long misses;
+
+    @Override
+    public Object intercept(SeleniumInvocation invocation) throws Throwable {
+        final String name = invocation.getName();
+        if (invocation.isStreaming()) {
+            // a stream is read only once, nothing to keep
+            return invocation.proceed();
+        } else if (MEMOIZED.contains(name)) {
+            synchronized (this) {
+                if (cache.containsKey(name)) {
+                    hits++;
+                    TOTAL_HITS.incrementAndGet();
+                    return copy(cache.get(name));
+                }
+            }
+            final long before = getEpoch();
+            final Object result = invocation.proceed();
+            synchronized (this) {
+                misses++;
+                TOTAL_MISSES.incrementAndGet();
+                if (epoch == before) {
+                    cache.put(name, copy(result));
+                }
+            }
+            return result;
+        } else if (isQuery(name)) {
+            return invocation.proceed();
+        } else {
+            invalidate();
+            try {
+                return invocation.proceed();
+            } finally {
+                invalidate();
+            }
+        }
+    }
+
+    private static boolean isQuery(String name) {
+        return (name.startsWith("get") && !"getEval".equals(name)) || name.startsWith("is");
+    }
+
+    private static Object copy(Object value) {
+        return value instanceof String[] ? ((String[]) value).clone() : value;
+    }
+
+    /**
+     * Starts a new page epoch, e.g. after the page was changed behind selenium's back.
+     */
+    public synchronized void invalidate() {
+        if (!cache.isEmpty()) {
+            cache.clear();
+        }
+        epoch++;
+    }
+
+    /**
+     * @return the current page epoch, incremented by every mutating command
+     */
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return how many round-trips this session saved
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return how many memoizable queries were sent to the browser by this session
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return how many round-trips all sessions of this jvm saved
+     */
+    public static long getTotalHits() {
+        return TOTAL_HITS.get();
+    }
+
+    /**
+     * @return how many memoizable queries all sessions of this jvm sent to the browser
+     */
+    public static long getTotalMisses() {
+        return TOTAL_MISSES.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hits, %d misses in %d epochs", hits, misses, epoch);
+    }
+
+}
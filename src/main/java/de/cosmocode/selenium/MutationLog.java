@@ -0,0 +1,236 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Javascript snippets for an in-page log of watched elements.
+ *
+ * <p>
+ * Every watched locator is checked again after each DOM mutation (using a
+ * {@code MutationObserver}, falling back to {@code DOMSubtreeModified}) and after
+ * every input or change event. Whenever the element appears, disappears or changes
+ * its value, an event with the browser's timestamp is appended to the locator's log.
+ * Successful waits consume the log of their locator.
+ * </p>
+ *
+ * <p>
+ * Values are read by {@code selenium.getValue}, just like the polling waits read them. A wait for
+ * a changed value only counts events after the last one which still had the old value, because
+ * earlier events may predate the old value the caller saw. Like {@code getValue}, it fails
+ * with "element not found" while the element is missing.
+ * </p>
+ *
+ * <p>
+ * Locators are resolved by {@code selenium.browserbot.findElementOrNull}, so they behave
+ * exactly like in every other selenium command. A locator selenium does not support
+ * fails the wait immediately.
+ * </p>
+ *
+ * @since 1.6
+ */
+final class MutationLog {
+
+    /**
+     * Function which installs the log in the given window once and returns it.
+     * Its second parameter resolves a locator to an element or null,
+     * its third one reads the value of a locator's element or throws if there is none.
+     */
+    static final String LOG = "function (w, find, get) {" +
+        "if (w.__ccMutations) { return w.__ccMutations; }" +
+        "var d = w.document;" +
+        "var log = { watched: {}, order: [] };" +
+        "w.__ccMutations = log;" +
+        // elements without a value have none, like getValue fails for them
+        "var valueOf = function (locator) { try { return get(locator); } catch (x) { return null; } };" +
+        "log.scan = function () {" +
+            "var t = new Date().getTime();" +
+            "for (var k = 0; k < log.order.length; k++) {" +
+                "var entry = log.watched[log.order[k]];" +
+                "var e = null;" +
+                // e.g. an xpath evaluated while the page unloads
+                "try { e = find(entry.locator); } catch (x) { e = null; }" +
+                "var present = e != null, value = present ? valueOf(entry.locator) : null;" +
+                "if (present != entry.present) {" +
+                    "entry.events.push({ t: t, type: present ? 'appeared' : 'disappeared', value: value });" +
+                "} else if (present && value !== entry.value) {" +
+                    "entry.events.push({ t: t, type: 'changed', value: value });" +
+                "}" +
+                "entry.present = present; entry.value = value;" +
+            "}" +
+        "};" +
+        "log.watch = function (locator) {" +
+            "if (!log.watched[locator]) {" +
+                // fails for locators selenium does not support, before they are watched
+                "find(locator);" +
+                "log.watched[locator] = { locator: locator, present: false, value: null, events: []," +
+                    "wait: null, since: 0 };" +
+                "log.order.push(locator);" +
+                "log.scan();" +
+            "}" +
+            "return log.watched[locator];" +
+        "};" +
+        "log.appeared = function (locator) {" +
+            "var entry = log.watch(locator);" +
+            "if (entry.present) { return true; }" +
+            "for (var k = 0; k < entry.events.length; k++) {" +
+                "if (entry.events[k].type == 'appeared') { return true; }" +
+            "}" +
+            "return false;" +
+        "};" +
+        "log.differs = function (locator, old, wait) {" +
+            "var entry = log.watch(locator);" +
+            // fails for missing elements, like polling getValue does
+            "if (get(locator) !== old) { return true; }" +
+            "var k;" +
+            "if (entry.wait !== wait) {" +
+                // the first poll of this wait, older events may predate the old value
+                "entry.wait = wait; entry.since = 0;" +
+                "for (k = 0; k < entry.events.length; k++) {" +
+                    "if (entry.events[k].value === old) { entry.since = k + 1; }" +
+                "}" +
+            "}" +
+            "for (k = entry.since; k < entry.events.length; k++) {" +
+                "if (entry.events[k].type != 'disappeared' && entry.events[k].value !== old) { return true; }" +
+            "}" +
+            "return false;" +
+        "};" +
+        "log.consume = function (locator) { var entry = log.watch(locator); entry.events = []; entry.wait = null; };" +
+        "log.dump = function (locator) {" +
+            "var entry = log.watch(locator), lines = [];" +
+            "for (var k = 0; k < entry.events.length; k++) {" +
+                "var event = entry.events[k];" +
+                "lines.push(event.t + ' ' + event.type + (event.value == null ? '' : ' ' + event.value));" +
+            "}" +
+            "return lines.join('\\n');" +
+        "};" +
+        "var M = w.MutationObserver || w.WebKitMutationObserver;" +
+        "if (M && d.documentElement) {" +
+            "new M(log.scan).observe(d.documentElement," +
+                "{ childList: true, subtree: true, attributes: true, characterData: true });" +
+        "} else if (d.addEventListener) {" +
+            "d.addEventListener('DOMSubtreeModified', log.scan, false);" +
+        "}" +
+        "if (d.addEventListener) {" +
+            "d.addEventListener('input', log.scan, true);" +
+            "d.addEventListener('change', log.scan, true);" +
+        "}" +
+        "return log;" +
+    "}";
+
+    private static final String CURRENT = "(" + LOG + ")(selenium.browserbot.getCurrentWindow(), " +
+        "function (locator) { return selenium.browserbot.findElementOrNull(locator); }, " +
+        "function (locator) { return selenium.getValue(locator); })";
+
+    private static final AtomicLong WAITS = new AtomicLong();
+
+    private MutationLog() {
+
+    }
+
+    /**
+     * Script for {@link com.thoughtworks.selenium.Selenium#getEval(String)} which starts
+     * watching the given locator in the current page.
+     *
+     * @param locator the locator to watch
+     * @return the script
+     */
+    static String watch(String locator) {
+        return CURRENT + ".watch(" + quote(locator) + ").present";
+    }
+
+    /**
+     * Condition for {@link com.thoughtworks.selenium.Selenium#waitForCondition(String, String)}
+     * which becomes true once the element is or was present.
+     *
+     * @param locator the element's locator
+     * @return the condition script
+     */
+    static String appeared(String locator) {
+        return "(function () { var log = " + CURRENT + "; log.scan();" +
+            "if (log.appeared(" + quote(locator) + ")) { log.consume(" + quote(locator) + "); return true; }" +
+            "return false; })()";
+    }
+
+    /**
+     * Condition for {@link com.thoughtworks.selenium.Selenium#waitForCondition(String, String)}
+     * which becomes true once the element's value is or was different from the old one.
+     *
+     * @param locator the element's locator
+     * @param oldValue the old value, may be null
+     * @return the condition script
+     */
+    static String differs(String locator, String oldValue) {
+        // identifies the wait, so its first poll can take the baseline
+        final long wait = WAITS.incrementAndGet();
+        return "(function () { var log = " + CURRENT + "; log.scan();" +
+            "if (log.differs(" + quote(locator) + ", " + (oldValue == null ? "null" : quote(oldValue)) +
+            ", " + wait + ")) {" +
+            "log.consume(" + quote(locator) + "); return true; }" +
+            "return false; })()";
+    }
+
+    /**
+     * Script for {@link com.thoughtworks.selenium.Selenium#getEval(String)} which returns the
+     * events of the given locator, one per line as "timestamp type [value]".
+     *
+     * @param locator the element's locator
+     * @return the script
+     */
+    static String dump(String locator) {
+        return CURRENT + ".dump(" + quote(locator) + ")";
+    }
+
+    /**
+     * Creates a javascript string literal.
+     *
+     * @param value the string's value
+     * @return the quoted and escaped value
+     */
+    static String quote(String value) {
+        final StringBuilder builder = new StringBuilder(value.length() + 2).append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\'':
+                    builder.append("\\'");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\u2028':
+                    builder.append("\\u2028");
+                    break;
+                case '\u2029':
+                    builder.append("\\u2029");
+                    break;
+                default:
+                    builder.append(c);
+                    break;
+            }
+        }
+        return builder.append('\'').toString();
+    }
+
+}
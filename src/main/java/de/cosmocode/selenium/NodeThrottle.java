@@ -0,0 +1,210 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Admission control for a selenium remote control node: caps the concurrent sessions
+ * and in-flight commands this jvm sends to the node. Waiting threads are admitted
+ * first come, first served.
+ *
+ * <p>
+ * The caps are configured by {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_NODE_SESSIONS} and
+ * {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_NODE_COMMANDS} and apply per jvm, so several
+ * builds sharing a node each stay within their own share.
+ * </p>
+ *
+ * <p>
+ * One instance exists per host and port and is registered as {@link NodeThrottleMXBean}.
+ * </p>
+ *
+ * @see ThrottleInterceptor
+ * @since 1.6
+ */
+public final class NodeThrottle implements NodeThrottleMXBean {
+
+    private static final Map<String, NodeThrottle> NODES = new HashMap<String, NodeThrottle>();
+
+    private final String host;
+    private final int port;
+
+    private final int maxSessions = Integer.parseInt(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_NODE_SESSIONS,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_NODE_SESSIONS_DEFAULT));
+    private final int maxCommands = Integer.parseInt(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_NODE_COMMANDS,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_NODE_COMMANDS_DEFAULT));
+    private final long maxWaitInMs = Long.parseLong(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_NODE_WAIT,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_NODE_WAIT_DEFAULT));
+
+    // fair, i.e. FIFO for waiting threads
+    private final Semaphore sessions = new Semaphore(maxSessions, true);
+    private final Semaphore commands = new Semaphore(maxCommands, true);
+
+    private long waits;
+    private long waitedInMs;
+    private long maxWaitedInMs;
+
+    private NodeThrottle(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Retrieves the throttle of the given node.
+     *
+     * @param server the node
+     * @return the throttle, shared by all sessions of the node
+     */
+    public static NodeThrottle of(SeleniumServer server) {
+        final String node = server.getHost() + ":" + server.getPort();
+        synchronized (NODES) {
+            NodeThrottle throttle = NODES.get(node);
+            if (throttle == null) {
+                throttle = new NodeThrottle(server.getHost(), server.getPort());
+                NODES.put(node, throttle);
+                throttle.register();
+            }
+            return throttle;
+        }
+    }
+
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(
+                "de.cosmocode.selenium:type=NodeThrottle,name=" + host + "_" + port));
+        } catch (JMException e) {
+            Reports.warn("unable to register throttle of " + getNode(), e);
+        }
+    }
+
+    /**
+     * Waits for a session slot. Every acquired slot has to be {@link #releaseSession() released}.
+     *
+     * @throws SeleniumException if no slot became free in time
+     */
+    public void acquireSession() {
+        if (maxSessions > 0) {
+            acquire(sessions, "session");
+        }
+    }
+
+    public void releaseSession() {
+        if (maxSessions > 0) {
+            sessions.release();
+        }
+    }
+
+    /**
+     * Waits for a command slot. Every acquired slot has to be {@link #releaseCommand() released}.
+     *
+     * @throws SeleniumException if no slot became free in time
+     */
+    public void acquireCommand() {
+        if (maxCommands > 0) {
+            acquire(commands, "command");
+        }
+    }
+
+    public void releaseCommand() {
+        if (maxCommands > 0) {
+            commands.release();
+        }
+    }
+
+    private void acquire(Semaphore slots, String kind) {
+        final long start = System.currentTimeMillis();
+        final boolean acquired;
+        try {
+            // unlike tryAcquire(), a timed try honors the fairness
+            if (slots.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            acquired = slots.tryAcquire(maxWaitInMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SeleniumException("interrupted while waiting for a " + kind + " slot on " + getNode(), e);
+        }
+        final long waited = System.currentTimeMillis() - start;
+        synchronized (this) {
+            waits++;
+            waitedInMs += waited;
+            maxWaitedInMs = Math.max(maxWaitedInMs, waited);
+        }
+        if (!acquired) {
+            throw new SeleniumException("no " + kind + " slot on " + getNode() +
+                " became free within " + waited + "ms");
+        }
+    }
+
+    @Override
+    public String getNode() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    @Override
+    public int getMaxCommands() {
+        return maxCommands;
+    }
+
+    @Override
+    public int getSessions() {
+        return maxSessions > 0 ? maxSessions - sessions.availablePermits() : 0;
+    }
+
+    @Override
+    public int getCommands() {
+        return maxCommands > 0 ? maxCommands - commands.availablePermits() : 0;
+    }
+
+    @Override
+    public int getQueued() {
+        return sessions.getQueueLength() + commands.getQueueLength();
+    }
+
+    @Override
+    public synchronized long getWaits() {
+        return waits;
+    }
+
+    @Override
+    public synchronized double getMeanWait() {
+        return waits == 0 ? 0 : (double) waitedInMs / waits;
+    }
+
+    @Override
+    public synchronized long getMaxWait() {
+        return maxWaitedInMs;
+    }
+
+}
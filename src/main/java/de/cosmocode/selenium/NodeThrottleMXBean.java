@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+/**
+ * Management interface of {@link NodeThrottle}, registered as
+ * "de.cosmocode.selenium:type=NodeThrottle,name=host_port".
+ *
+ * @since 1.6
+ */
+public interface NodeThrottleMXBean {
+
+    /**
+     * @return the node as "host:port"
+     */
+    String getNode();
+
+    /**
+     * @return the maximum number of concurrent sessions, 0 if unlimited
+     */
+    int getMaxSessions();
+
+    /**
+     * @return the maximum number of in-flight commands, 0 if unlimited
+     */
+    int getMaxCommands();
+
+    /**
+     * @return how many sessions are running
+     */
+    int getSessions();
+
+    /**
+     * @return how many commands are in flight
+     */
+    int getCommands();
+
+    /**
+     * @return how many threads are waiting for a session or command slot
+     */
+    int getQueued();
+
+    /**
+     * @return how often a thread had to wait for a slot
+     */
+    long getWaits();
+
+    /**
+     * @return the mean time threads waited for a slot in ms, only counting threads which had to wait
+     */
+    double getMeanWait();
+
+    /**
+     * @return the longest time a thread waited for a slot in ms
+     */
+    long getMaxWait();
+
+}
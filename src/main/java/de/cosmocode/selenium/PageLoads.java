@@ -0,0 +1,50 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the budget checked page loads of every url pattern in this jvm,
+ * to tell warm-up loads from the rest.
+ *
+ * @see PerformanceBudget#warmUp()
+ * @since 1.6
+ */
+final class PageLoads {
+
+    private static final Map<String, Integer> LOADS = new HashMap<String, Integer>();
+
+    private PageLoads() {
+
+    }
+
+    /**
+     * Counts one more load.
+     *
+     * @param pattern the url pattern
+     * @return the number of this load, starting with 1
+     */
+    static synchronized int count(String pattern) {
+        final Integer previous = LOADS.get(pattern);
+        final int loads = previous == null ? 1 : previous + 1;
+        LOADS.put(pattern, loads);
+        return loads;
+    }
+
+}
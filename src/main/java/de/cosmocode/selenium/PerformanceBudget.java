@@ -0,0 +1,83 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Fails a test method of a {@link CosmoCodeSeleniumTest} whose pages or commands are slower
+ * than budgeted. Page budgets are checked after every *AndWait method, command budgets after
+ * the test method. Can be put on a test method or on the test class, where the method's annotation wins.
+ *
+ * <p>
+ * A budget of 0 is not checked. Without this annotation, budgets can still be asserted
+ * explicitly, e.g. with {@link CosmoCodeSeleniumTest#assertPageLoadUnder(long)}.
+ * </p>
+ *
+ * @since 1.6
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface PerformanceBudget {
+
+    /**
+     * How long loading a page may take, measured by the browser's Navigation Timing
+     * or, if not available, around the *AndWait method.
+     *
+     * @return the budget in ms
+     */
+    long pageLoad() default 0;
+
+    /**
+     * How many bytes a page and its resources may transfer.
+     *
+     * @return the budget in bytes
+     */
+    long resourceBytes() default 0;
+
+    /**
+     * How long commands may take on average, e.g. {"click=200", "getText=50"}.
+     *
+     * @return the budgets as "command=ms"
+     */
+    String[] commandLatency() default { };
+
+    /**
+     * How much a measurement may exceed its budget, e.g. 0.1 for 10%.
+     * Negative uses {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_BUDGET_TOLERANCE}.
+     *
+     * @return the tolerance
+     */
+    double tolerance() default -1;
+
+    /**
+     * How many loads of each url pattern per jvm and invocations of each command per session
+     * are not checked, because of cold caches.
+     * Negative uses {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_BUDGET_WARM_UP}.
+     *
+     * @return the number of warm-up runs
+     */
+    int warmUp() default -1;
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Searches text in a stream with Knuth-Morris-Pratt, so only the search text
+ * and one buffer are held in memory.
+ *
+ * @since 1.6
+ */
+final class ReaderSearch {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ReaderSearch() {
+
+    }
+
+    /**
+     * Reads until the text was found or the stream ended. Does not close the reader.
+     *
+     * @param reader the stream
+     * @param text the text to search
+     * @return whether the stream contains the text
+     * @throws IOException if reading failed
+     */
+    static boolean contains(Reader reader, String text) throws IOException {
+        if (text.length() == 0) {
+            return true;
+        }
+
+        final int[] failure = failureTable(text);
+        final char[] buffer = new char[BUFFER_SIZE];
+        int matched = 0;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                while (matched > 0 && buffer[i] != text.charAt(matched)) {
+                    matched = failure[matched - 1];
+                }
+                if (buffer[i] == text.charAt(matched)) {
+                    matched++;
+                    if (matched == text.length()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int[] failureTable(String text) {
+        final int[] failure = new int[text.length()];
+        int prefix = 0;
+        for (int i = 1; i < text.length(); i++) {
+            while (prefix > 0 && text.charAt(i) != text.charAt(prefix)) {
+                prefix = failure[prefix - 1];
+            }
+            if (text.charAt(i) == text.charAt(prefix)) {
+                prefix++;
+            }
+            failure[i] = prefix;
+        }
+        return failure;
+    }
+
+}
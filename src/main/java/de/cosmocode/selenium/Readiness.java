@@ -0,0 +1,124 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+/**
+ * Javascript snippets which detect when a page became quiescent, i.e. has no
+ * outstanding XHRs, no pending short timers and no recent DOM mutations.
+ *
+ * <p>
+ * The tracker wraps {@code XMLHttpRequest.prototype.send}, {@code setTimeout} and
+ * {@code clearTimeout} and observes the document with a {@code MutationObserver}
+ * (falling back to {@code DOMSubtreeModified}). Timers with a delay above
+ * {@link #MAX_TRACKED_TIMER_IN_MS} are ignored, so long polling does not block readiness.
+ * </p>
+ *
+ * @since 1.6
+ */
+final class Readiness {
+
+    /**
+     * Timers with a bigger delay are not considered as pending work.
+     */
+    static final int MAX_TRACKED_TIMER_IN_MS = 1000;
+
+    /**
+     * Function which installs the tracker in the given window once and returns its state.
+     */
+    static final String TRACKER = "function (w) {" +
+        "if (w.__ccReadiness) { return w.__ccReadiness; }" +
+        "var r = { xhr: 0, timers: 0, pending: {}, last: new Date().getTime() };" +
+        "w.__ccReadiness = r;" +
+        "var touch = function () { r.last = new Date().getTime(); };" +
+        "var X = w.XMLHttpRequest;" +
+        "if (X && X.prototype && X.prototype.send) {" +
+            "var send = X.prototype.send;" +
+            "X.prototype.send = function () {" +
+                "var x = this, open = true;" +
+                "var finish = function () { if (open) { open = false; r.xhr--; touch(); } };" +
+                "var state = function () { if (x.readyState == 4) { finish(); } };" +
+                "r.xhr++; touch();" +
+                "if (x.addEventListener) {" +
+                    "x.addEventListener('readystatechange', state, false);" +
+                    "x.addEventListener('loadend', finish, false);" +
+                "} else {" +
+                    "var handler = x.onreadystatechange;" +
+                    "x.onreadystatechange = function () {" +
+                        "state(); if (handler) { return handler.apply(x, arguments); }" +
+                    "};" +
+                "}" +
+                "try { return send.apply(x, arguments); } catch (e) { finish(); throw e; }" +
+            "};" +
+        "}" +
+        "var setTimer = w.setTimeout, clearTimer = w.clearTimeout;" +
+        "w.setTimeout = function (fn, delay) {" +
+            "if ((delay || 0) > " + MAX_TRACKED_TIMER_IN_MS + ") { return setTimer(fn, delay); }" +
+            "var id, args = Array.prototype.slice.call(arguments, 2);" +
+            "id = setTimer(function () {" +
+                "if (r.pending[id]) { delete r.pending[id]; r.timers--; touch(); }" +
+                "return typeof fn == 'function' ? fn.apply(w, args) : w.eval(fn);" +
+            "}, delay);" +
+            "r.pending[id] = true; r.timers++;" +
+            "return id;" +
+        "};" +
+        "w.clearTimeout = function (id) {" +
+            "if (r.pending[id]) { delete r.pending[id]; r.timers--; }" +
+            "return clearTimer(id);" +
+        "};" +
+        "var M = w.MutationObserver || w.WebKitMutationObserver;" +
+        "var root = w.document.documentElement;" +
+        "if (M && root) {" +
+            "new M(touch).observe(root, { childList: true, subtree: true, attributes: true, characterData: true });" +
+        "} else if (w.document.addEventListener) {" +
+            "w.document.addEventListener('DOMSubtreeModified', touch, false);" +
+        "}" +
+        "return r;" +
+    "}";
+
+    private Readiness() {
+
+    }
+
+    /**
+     * Script for {@link com.thoughtworks.selenium.Selenium#runScript(String)} which installs
+     * the tracker in the current page as early as possible.
+     *
+     * @return the install script
+     */
+    static String install() {
+        return "(" + TRACKER + ")(window);";
+    }
+
+    /**
+     * Condition for {@link com.thoughtworks.selenium.Selenium#waitForCondition(String, String)}
+     * which installs the tracker lazily and becomes true once the page is quiescent.
+     *
+     * @param requireNewPage whether a new page must have been loaded since the last action
+     * @param quietPeriodInMs how long the page must be without any DOM mutation
+     * @return the condition script
+     */
+    static String condition(boolean requireNewPage, int quietPeriodInMs) {
+        return "(function () {" +
+            (requireNewPage ? "if (!selenium.browserbot.isNewPageLoaded()) { return false; }" : "") +
+            "var w = selenium.browserbot.getCurrentWindow();" +
+            "if (w.document.readyState && w.document.readyState != 'complete') { return false; }" +
+            "var r = (" + TRACKER + ")(w);" +
+            "return r.xhr <= 0 && r.timers <= 0 && new Date().getTime() - r.last >= " + quietPeriodInMs + ";" +
+        "})()";
+    }
+
+}
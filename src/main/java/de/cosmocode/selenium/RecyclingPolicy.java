@@ -0,0 +1,88 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+/**
+ * Decides when a long-lived session has aged enough to be replaced by a fresh browser.
+ * A threshold of 0 is never crossed.
+ *
+ * @see SessionAging
+ * @since 1.6
+ */
+public final class RecyclingPolicy {
+
+    public static final RecyclingPolicy NEVER = new RecyclingPolicy(0, 0, 0, 0);
+
+    private final long maxCommands;
+    private final long maxAge;
+    private final long maxMemoryGrowth;
+    private final double maxLatencyDrift;
+
+    /**
+     * Creates a policy.
+     *
+     * @param maxCommands the maximum number of commands
+     * @param maxAge the maximum age in ms
+     * @param maxMemoryGrowth the maximum heap growth in bytes
+     * @param maxLatencyDrift the maximum factor between the recent and the initial command latency
+     */
+    public RecyclingPolicy(long maxCommands, long maxAge, long maxMemoryGrowth, double maxLatencyDrift) {
+        this.maxCommands = maxCommands;
+        this.maxAge = maxAge;
+        this.maxMemoryGrowth = maxMemoryGrowth;
+        this.maxLatencyDrift = maxLatencyDrift;
+    }
+
+    public long getMaxCommands() {
+        return maxCommands;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public long getMaxMemoryGrowth() {
+        return maxMemoryGrowth;
+    }
+
+    public double getMaxLatencyDrift() {
+        return maxLatencyDrift;
+    }
+
+    /**
+     * Checks all thresholds.
+     *
+     * @param aging the session's aging
+     * @return the first crossed threshold, e.g. "latency drift 3.12 > 3.00", or null if the session is fine
+     */
+    public String check(SessionAging aging) {
+        if (maxCommands > 0 && aging.getCommands() > maxCommands) {
+            return "commands " + aging.getCommands() + " > " + maxCommands;
+        }
+        if (maxAge > 0 && aging.getAge() > maxAge) {
+            return "age " + aging.getAge() + "ms > " + maxAge + "ms";
+        }
+        if (maxMemoryGrowth > 0 && aging.getMemoryGrowth() > maxMemoryGrowth) {
+            return "heap growth " + aging.getMemoryGrowth() + " bytes > " + maxMemoryGrowth + " bytes";
+        }
+        if (maxLatencyDrift > 0 && aging.getLatencyDrift() > maxLatencyDrift) {
+            return String.format("latency drift %.2f > %.2f", aging.getLatencyDrift(), maxLatencyDrift);
+        }
+        return null;
+    }
+
+}
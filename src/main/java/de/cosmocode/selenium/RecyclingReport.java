@@ -0,0 +1,48 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.File;
+
+/**
+ * Appends every recycled session to the recycling report, one tab separated line per session:
+ * session, crossed threshold, commands, age in ms, baseline and recent latency in ms,
+ * latency drift, baseline and latest heap size in bytes.
+ *
+ * @since 1.6
+ */
+final class RecyclingReport {
+
+    private RecyclingReport() {
+
+    }
+
+    /**
+     * Writes one recycled session.
+     *
+     * @param file the report file
+     * @param session the session's name
+     * @param reason the crossed threshold
+     * @param aging the session's aging
+     */
+    static void write(File file, String session, String reason, SessionAging aging) {
+        Reports.append(file, String.format("%s\t%s\t%d\t%d\t%.2f\t%.2f\t%.2f\t%d\t%d\n",
+            session, reason, aging.getCommands(), aging.getAge(), aging.getBaselineLatency(),
+            aging.getRecentLatency(), aging.getLatencyDrift(), aging.getBaselineMemory(), aging.getMemory()));
+    }
+
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Utilities for the report files and console output of this library. All messages
+ * go through one {@link Reporter}, which prints to the console unless it is {@link #setReporter(Reporter) replaced},
+ * e.g. by one forwarding to the logging framework of the tested application.
+ *
+ * @since 1.6
+ */
+public final class Reports {
+
+    private static final Reporter CONSOLE = new Reporter() {
+
+        @Override
+        public void info(String message) {
+            System.out.println(message);
+        }
+
+        @Override
+        public void warn(String message, Throwable cause) {
+            System.err.println(cause == null ? message : message + ": " + cause);
+        }
+
+    };
+
+    private static volatile Reporter reporter = CONSOLE;
+
+    private Reports() {
+
+    }
+
+    /**
+     * Receives the messages of this library.
+     */
+    public interface Reporter {
+
+        /**
+         * Reports progress.
+         *
+         * @param message the message
+         */
+        void info(String message);
+
+        /**
+         * Reports a problem which did not fail a test.
+         *
+         * @param message the message
+         * @param cause the cause, may be null
+         */
+        void warn(String message, Throwable cause);
+
+    }
+
+    /**
+     * Replaces the reporter of this jvm.
+     *
+     * @param replacement the new reporter, null restores the console
+     */
+    public static void setReporter(Reporter replacement) {
+        reporter = replacement == null ? CONSOLE : replacement;
+    }
+
+    /**
+     * Reports progress.
+     *
+     * @param message the message
+     */
+    public static void info(String message) {
+        reporter.info(message);
+    }
+
+    /**
+     * Reports a problem which did not fail a test.
+     *
+     * @param message the message
+     * @param cause the cause, may be null
+     */
+    public static void warn(String message, Throwable cause) {
+        reporter.warn(message, cause);
+    }
+
+    /**
+     * A report which is written as a whole.
+     */
+    public interface Report {
+
+        /**
+         * Writes the report.
+         *
+         * @param file the report file
+         * @throws IOException if writing failed
+         */
+        void writeReport(File file) throws IOException;
+
+    }
+
+    /**
+     * Opens a report file for writing in UTF-8, creating missing parent directories.
+     *
+     * @param file the report file
+     * @param append whether to append to an existing file instead of overwriting it
+     * @return a new writer, has to be closed by the caller
+     * @throws IOException if the file could not be opened
+     */
+    public static PrintWriter open(File file, boolean append) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        return new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8"));
+    }
+
+    /**
+     * Appends to a report file which collects one entry per event. Failures are only reported,
+     * because a missing report line must not fail a test.
+     *
+     * @param file the report file
+     * @param lines the lines to append, each terminated by a line break
+     */
+    public static synchronized void append(File file, String lines) {
+        try {
+            final PrintWriter writer = open(file, true);
+            try {
+                writer.write(lines);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            warn("unable to write " + file, e);
+        }
+    }
+
+    /**
+     * Creates a target which writes the given report when the jvm shuts down.
+     *
+     * @param name the name of the shutdown hook's thread
+     * @param report the report
+     * @return a new target, nothing will be written until a file is {@link OnShutdown#writeTo(File) given}
+     */
+    public static OnShutdown onShutdown(String name, Report report) {
+        return new OnShutdown(name, report);
+    }
+
+    /**
+     * Writes a report when the jvm shuts down. The shutdown hook is registered with the first given
+     * file and only the last given file will be written.
+     */
+    public static final class OnShutdown {
+
+        private final String name;
+        private final Report report;
+
+        private File file;
+
+        private OnShutdown(String name, Report report) {
+            this.name = name;
+            this.report = report;
+        }
+
+        /**
+         * Sets the file to write the report to.
+         *
+         * @param target the report file
+         */
+        public synchronized void writeTo(File target) {
+            if (file == null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(name) {
+                    @Override
+                    public void run() {
+                        write();
+                    }
+                });
+            }
+            file = target;
+        }
+
+        private void write() {
+            final File target;
+            synchronized (this) {
+                target = file;
+            }
+            try {
+                report.writeReport(target);
+            } catch (IOException e) {
+                warn("unable to write " + target, e);
+            }
+        }
+
+    }
+
+}
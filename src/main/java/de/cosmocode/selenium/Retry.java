@@ -0,0 +1,57 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Reruns a failed test method of a {@link CosmoCodeSeleniumTest} on a fresh session.
+ * Can be put on a test method or on the test class, where the method's annotation wins.
+ * Without this annotation, the {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_RETRIES}
+ * system properties apply.
+ *
+ * @since 1.6
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Retry {
+
+    /**
+     * How often a failed test method will be rerun at most.
+     *
+     * @return the number of retries
+     */
+    int value() default 1;
+
+    /**
+     * Which exceptions are caused by flakiness. Subclasses and exceptions
+     * caused by one of these count as well.
+     *
+     * @return the retryable exception types
+     */
+    Class<? extends Throwable>[] on() default SeleniumException.class;
+
+}
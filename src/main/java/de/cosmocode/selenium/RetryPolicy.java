@@ -0,0 +1,117 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a failed test method will be rerun.
+ *
+ * <p>
+ * All policies share one budget per jvm, configured by
+ * {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_RETRY_BUDGET}, so a broken
+ * environment can not multiply the suite's duration.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class RetryPolicy {
+
+    public static final RetryPolicy NEVER = new RetryPolicy(0, Collections.<Class<? extends Throwable>>emptyList());
+
+    private static final AtomicInteger BUDGET = new AtomicInteger(Integer.parseInt(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_RETRY_BUDGET,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_RETRY_BUDGET_DEFAULT)));
+
+    private final int retries;
+    private final List<Class<? extends Throwable>> retryable;
+
+    public RetryPolicy(int retries, List<Class<? extends Throwable>> retryable) {
+        this.retries = retries;
+        this.retryable = Collections.unmodifiableList(retryable);
+    }
+
+    /**
+     * Creates a policy from an annotation.
+     *
+     * @param retry the annotation
+     * @return a new policy
+     */
+    public static RetryPolicy of(Retry retry) {
+        return new RetryPolicy(retry.value(), Arrays.asList(retry.on()));
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public List<Class<? extends Throwable>> getRetryable() {
+        return retryable;
+    }
+
+    /**
+     * Checks whether the given throwable, or one of its causes, is of a retryable type.
+     *
+     * @param throwable the failure
+     * @return true if the failure is retryable
+     */
+    public boolean isRetryable(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            for (Class<? extends Throwable> type : retryable) {
+                if (type.isInstance(cause)) {
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decides whether to rerun after a failed attempt and takes one retry from the budget if so.
+     *
+     * @param throwable the failure
+     * @param attempt the number of the failed attempt, starting with 1
+     * @return true if the test method should be rerun
+     */
+    public boolean shouldRetry(Throwable throwable, int attempt) {
+        if (attempt > retries || !isRetryable(throwable)) {
+            return false;
+        }
+        while (true) {
+            final int budget = BUDGET.get();
+            if (budget <= 0) {
+                return false;
+            } else if (BUDGET.compareAndSet(budget, budget - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return how many retries are left for this jvm
+     */
+    public static int getRemainingBudget() {
+        return BUDGET.get();
+    }
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Appends the attempts of every retried test method to the retry report, one tab
+ * separated line per attempt: test, attempt, duration in ms and the failure or "passed".
+ *
+ * @since 1.6
+ */
+final class RetryReport {
+
+    private RetryReport() {
+
+    }
+
+    /**
+     * Writes all attempts of one test method.
+     *
+     * @param file the report file
+     * @param test the test's name
+     * @param durations the duration of each attempt in ms
+     * @param failures the failure of each attempt, null if it passed
+     */
+    static void write(File file, String test, List<Long> durations, List<Throwable> failures) {
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < durations.size(); i++) {
+            final Throwable failure = failures.get(i);
+            lines.append(test).append('\t').append(i + 1).append('\t').append(durations.get(i)).append('\t');
+            lines.append(failure == null ? "passed" : failure.getClass().getName()).append('\n');
+        }
+        Reports.append(file, lines.toString());
+    }
+
+}
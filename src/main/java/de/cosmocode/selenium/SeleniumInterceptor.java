@@ -0,0 +1,38 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+/**
+ * Intercepts the commands sent through a session created by
+ * {@link CosmoCodeSeleniumTest#createSelenium()}.
+ *
+ * @see CosmoCodeSeleniumTest#createInterceptors()
+ * @since 1.6
+ */
+public interface SeleniumInterceptor {
+
+    /**
+     * Intercepts a command. Implementations call {@link SeleniumInvocation#proceed()}
+     * to pass the command on, or return a result without proceeding.
+     *
+     * @param invocation the command
+     * @return the command's result, null for void commands
+     * @throws Throwable the command's failure
+     */
+    Object intercept(SeleniumInvocation invocation) throws Throwable;
+
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * A single command passing through a chain of {@link SeleniumInterceptor}s.
+ *
+ * @since 1.6
+ */
+public final class SeleniumInvocation {
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final Selenium target;
+    private final List<SeleniumInterceptor> interceptors;
+    private final Method method;
+    private final Object[] arguments;
+    private final boolean streaming;
+    private int index;
+
+    SeleniumInvocation(Selenium target, List<SeleniumInterceptor> interceptors, Method method, Object[] arguments) {
+        this(target, interceptors, method, arguments, false);
+    }
+
+    SeleniumInvocation(Selenium target, List<SeleniumInterceptor> interceptors, Method method, Object[] arguments,
+        boolean streaming) {
+        this.target = target;
+        this.interceptors = interceptors;
+        this.method = method;
+        this.arguments = arguments == null ? NO_ARGUMENTS : arguments;
+        this.streaming = streaming;
+    }
+
+    /**
+     * Passes the command on to the next interceptor or finally to the session.
+     *
+     * @return the command's result
+     * @throws Throwable the command's failure
+     */
+    public Object proceed() throws Throwable {
+        if (index < interceptors.size()) {
+            final SeleniumInterceptor interceptor = interceptors.get(index++);
+            try {
+                return interceptor.intercept(this);
+            } finally {
+                index--;
+            }
+        }
+        if (streaming) {
+            final String[] args = new String[arguments.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = String.valueOf(arguments[i]);
+            }
+            return new StreamedString(((StreamingSelenium) target).openString(method.getName(), args));
+        }
+        try {
+            return method.invoke(target, arguments);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Whether the session streams the result of this string command. The command then returns
+     * a {@link StreamedString} instead of a {@link String} and lasts until that stream gets closed,
+     * so interceptors which measure a command or hold something for its duration have to
+     * wait for {@link StreamedString#onClose(Runnable)}.
+     *
+     * @return true if the command returns a {@link StreamedString}
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the command's name, e.g. "click"
+     */
+    public String getName() {
+        return method.getName();
+    }
+
+    /**
+     * @return the command's arguments, never null
+     */
+    public Object[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * The first argument, which is the locator for most commands.
+     *
+     * @return the first argument or null if there is none
+     */
+    public String getFirstArgument() {
+        return arguments.length == 0 || arguments[0] == null ? null : arguments[0].toString();
+    }
+
+    /**
+     * @return the session without any interceptors
+     */
+    public Selenium getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + Arrays.toString(arguments);
+    }
+
+}
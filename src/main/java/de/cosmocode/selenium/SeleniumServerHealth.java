@@ -0,0 +1,300 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Health of a selenium remote control node with a circuit breaker.
+ *
+ * <p>
+ * Latency and errors of the latest requests, session starts as well as the commands
+ * seen by {@link HealthInterceptor}, are tracked in a rolling window.
+ * Too many consecutive failures, a too high error rate or a failed probe open the
+ * circuit, which stops new sessions from being sent to the node. After a cool-down
+ * the next session request probes the node again and closes the circuit on success.
+ * While closed, the node is probed again once the probe interval has passed.
+ * </p>
+ *
+ * <p>
+ * One instance exists per host and port and is registered as {@link SeleniumServerHealthMXBean}.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class SeleniumServerHealth implements SeleniumServerHealthMXBean {
+
+    /**
+     * The states of the circuit breaker.
+     */
+    public enum State {
+
+        /**
+         * The node is healthy and gets new sessions.
+         */
+        CLOSED,
+
+        /**
+         * The node is unhealthy and gets no new sessions until the cool-down passed.
+         */
+        OPEN,
+
+        /**
+         * The node is being probed after the cool-down.
+         */
+        HALF_OPEN
+
+    }
+
+    private static final int WINDOW = 20;
+    private static final int MIN_SAMPLES = 5;
+    private static final int PROBE_TIMEOUT_IN_MS = 2000;
+
+    private static final Map<String, SeleniumServerHealth> NODES = new HashMap<String, SeleniumServerHealth>();
+
+    private final String host;
+    private final int port;
+
+    private final int failureThreshold = Integer.parseInt(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_FAILURES,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_FAILURES_DEFAULT));
+    private final double maxErrorRate = Double.parseDouble(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_ERROR_RATE,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_ERROR_RATE_DEFAULT));
+    private final long coolDownInMs = Long.parseLong(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_COOLDOWN,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_COOLDOWN_DEFAULT));
+    private final long probeIntervalInMs = Long.parseLong(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_PROBE_INTERVAL,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_PROBE_INTERVAL_DEFAULT));
+
+    private final long[] latencies = new long[WINDOW];
+    private final boolean[] failures = new boolean[WINDOW];
+    private int index;
+    private int samples;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long lastProbe;
+    private long trips;
+
+    private SeleniumServerHealth(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Retrieves the health of the given node.
+     *
+     * @param server the node
+     * @return the health, shared by all sessions of the node
+     */
+    public static SeleniumServerHealth of(SeleniumServer server) {
+        final String node = server.getHost() + ":" + server.getPort();
+        synchronized (NODES) {
+            SeleniumServerHealth health = NODES.get(node);
+            if (health == null) {
+                health = new SeleniumServerHealth(server.getHost(), server.getPort());
+                NODES.put(node, health);
+                health.register();
+            }
+            return health;
+        }
+    }
+
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(
+                "de.cosmocode.selenium:type=SeleniumServerHealth,name=" + host + "_" + port));
+        } catch (JMException e) {
+            Reports.warn("unable to register health of " + getNode(), e);
+        }
+    }
+
+    /**
+     * Decides whether a new session may be started on this node, probing it if necessary.
+     *
+     * @return false if the circuit is open
+     */
+    public boolean allowSession() {
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            switch (state) {
+                case OPEN:
+                    if (now - openedAt < coolDownInMs) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    break;
+                case HALF_OPEN:
+                    // another session is probing right now
+                    return false;
+                default:
+                    if (now - lastProbe < probeIntervalInMs) {
+                        return true;
+                    }
+                    break;
+            }
+            lastProbe = now;
+        }
+
+        final boolean healthy = probe();
+        synchronized (this) {
+            if (healthy) {
+                if (state == State.HALF_OPEN) {
+                    close();
+                }
+            } else {
+                open();
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * Checks whether the node answers http requests in time.
+     *
+     * @return true if the node is reachable
+     */
+    public boolean probe() {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection)
+                new URL("http", host, port, "/selenium-server/").openConnection();
+            connection.setConnectTimeout(PROBE_TIMEOUT_IN_MS);
+            connection.setReadTimeout(PROBE_TIMEOUT_IN_MS);
+            try {
+                final int code = connection.getResponseCode();
+                return code > 0 && code < HttpURLConnection.HTTP_INTERNAL_ERROR;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records a successful request.
+     *
+     * @param latencyInMs how long the request took
+     */
+    public synchronized void recordSuccess(long latencyInMs) {
+        record(latencyInMs, false);
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Records a failed request and opens the circuit if the node seems to be unhealthy.
+     *
+     * @param latencyInMs how long the request took until it failed
+     */
+    public synchronized void recordFailure(long latencyInMs) {
+        record(latencyInMs, true);
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold || (samples >= MIN_SAMPLES && getErrorRate() >= maxErrorRate)) {
+            open();
+        }
+    }
+
+    private void record(long latencyInMs, boolean failure) {
+        latencies[index] = latencyInMs;
+        failures[index] = failure;
+        index = (index + 1) % WINDOW;
+        samples = Math.min(samples + 1, WINDOW);
+    }
+
+    private void open() {
+        if (state != State.OPEN) {
+            trips++;
+        }
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        samples = 0;
+        index = 0;
+    }
+
+    public synchronized State getCircuitState() {
+        return state;
+    }
+
+    @Override
+    public String getNode() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public synchronized String getState() {
+        return state.name();
+    }
+
+    @Override
+    public synchronized double getErrorRate() {
+        if (samples == 0) {
+            return 0;
+        }
+        int failed = 0;
+        for (int i = 0; i < samples; i++) {
+            if (failures[i]) {
+                failed++;
+            }
+        }
+        return (double) failed / samples;
+    }
+
+    @Override
+    public synchronized long getMeanLatency() {
+        long sum = 0;
+        int count = 0;
+        for (int i = 0; i < samples; i++) {
+            if (!failures[i]) {
+                sum += latencies[i];
+                count++;
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    @Override
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    @Override
+    public synchronized long getTrips() {
+        return trips;
+    }
+
+    @Override
+    public String toString() {
+        return getNode() + " " + getState();
+    }
+
+}
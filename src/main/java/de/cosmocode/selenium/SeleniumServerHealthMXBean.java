@@ -0,0 +1,57 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+/**
+ * Management interface of {@link SeleniumServerHealth}, registered as
+ * "de.cosmocode.selenium:type=SeleniumServerHealth,name=host_port".
+ *
+ * @since 1.6
+ */
+public interface SeleniumServerHealthMXBean {
+
+    /**
+     * @return the node as "host:port"
+     */
+    String getNode();
+
+    /**
+     * @return CLOSED, OPEN or HALF_OPEN
+     */
+    String getState();
+
+    /**
+     * @return the ratio of failed requests within the rolling window
+     */
+    double getErrorRate();
+
+    /**
+     * @return the mean latency of successful requests within the rolling window in ms
+     */
+    long getMeanLatency();
+
+    /**
+     * @return how many requests failed in a row
+     */
+    int getConsecutiveFailures();
+
+    /**
+     * @return how often the circuit was opened
+     */
+    long getTrips();
+
+}
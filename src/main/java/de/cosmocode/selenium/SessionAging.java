@@ -0,0 +1,204 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * Tracks how much a session has aged: its commands, its age, the drift of its command
+ * latency and the growth of the browser's javascript heap.
+ *
+ * <p>
+ * The latency baseline is the mean of the first commands, page loads and waits excluded.
+ * The heap is sampled at {@link #checkpoint(Selenium) checkpoints} via {@link Selenium#getEval(String)},
+ * which only works in browsers exposing {@code performance.memory}. The heap's size depends
+ * on the page shown, so checkpoints have to be taken where the session always shows the same page,
+ * e.g. after a shared session was reset between two test methods.
+ * </p>
+ *
+ * @see RecyclingPolicy
+ * @since 1.6
+ */
+public final class SessionAging implements SeleniumInterceptor {
+
+    private static final int BASELINE_COMMANDS = 50;
+    private static final double RECENT_WEIGHT = 0.05;
+
+    private static final String MEMORY_SCRIPT = "(function () {" +
+            "var p = selenium.browserbot.getCurrentWindow().performance || window.performance;" +
+            "return p && p.memory ? p.memory.usedJSHeapSize : -1;" +
+        "})()";
+
+    private final int sampleInterval;
+    private final long created = System.currentTimeMillis();
+
+    private long commands;
+    private long checkpoints;
+    private int timed;
+    private double baselineLatency;
+    private double recentLatency;
+    private long baselineMemory = -1;
+    private long memory = -1;
+
+    /**
+     * Creates a tracker.
+     *
+     * @param sampleInterval the number of checkpoints between two heap samples, 0 to never sample
+     */
+    public SessionAging(int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    @Override
+    public Object intercept(final SeleniumInvocation invocation) throws Throwable {
+        final long start = System.nanoTime();
+        final Object result = invocation.proceed();
+        if (invocation.isStreaming()) {
+            ((StreamedString) result).onClose(new Runnable() {
+                @Override
+                public void run() {
+                    record(invocation, start);
+                }
+            });
+        } else {
+            record(invocation, start);
+        }
+        return result;
+    }
+
+    private void record(SeleniumInvocation invocation, long start) {
+        final String name = invocation.getName();
+        final double millis = (System.nanoTime() - start) / 1e6;
+
+        synchronized (this) {
+            commands++;
+            if (isComparable(name)) {
+                timed++;
+                if (timed <= BASELINE_COMMANDS) {
+                    baselineLatency += (millis - baselineLatency) / timed;
+                    recentLatency = baselineLatency;
+                } else {
+                    recentLatency = RECENT_WEIGHT * millis + (1 - RECENT_WEIGHT) * recentLatency;
+                }
+            }
+        }
+    }
+
+    /**
+     * Page loads, waits and session management take arbitrarily long and would hide the drift.
+     */
+    private static boolean isComparable(String name) {
+        return !name.startsWith("waitFor") && !name.startsWith("open") && !name.equals("start") &&
+            !name.equals("stop") && !name.equals("captureScreenshot") && !name.equals("captureEntirePageScreenshot");
+    }
+
+    /**
+     * Marks a point at which the session shows the same page as at the first checkpoint
+     * and samples the heap every few checkpoints. The first sample is the baseline.
+     *
+     * @param target the session without interceptors, so sampling is no command of its own
+     */
+    public void checkpoint(Selenium target) {
+        synchronized (this) {
+            if (sampleInterval <= 0 || checkpoints++ % sampleInterval != 0) {
+                return;
+            }
+        }
+        long used;
+        try {
+            used = Long.parseLong(target.getEval(MEMORY_SCRIPT).trim());
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            // e.g. no page loaded or not a number, sampling must not break the test
+            used = -1;
+        }
+        if (used < 0) {
+            return;
+        }
+        synchronized (this) {
+            if (baselineMemory < 0) {
+                baselineMemory = used;
+            }
+            memory = used;
+        }
+    }
+
+    /**
+     * @return the number of commands sent through this session
+     */
+    public synchronized long getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return the session's age in ms
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - created;
+    }
+
+    /**
+     * @return the mean latency of the first commands in ms
+     */
+    public synchronized double getBaselineLatency() {
+        return baselineLatency;
+    }
+
+    /**
+     * @return the smoothed latency of the latest commands in ms
+     */
+    public synchronized double getRecentLatency() {
+        return recentLatency;
+    }
+
+    /**
+     * @return the recent latency relative to the baseline, 0 while the baseline is incomplete
+     */
+    public synchronized double getLatencyDrift() {
+        return timed <= BASELINE_COMMANDS || baselineLatency <= 0 ? 0 : recentLatency / baselineLatency;
+    }
+
+    /**
+     * @return the heap size sampled at the first checkpoint in bytes, -1 if unknown
+     */
+    public synchronized long getBaselineMemory() {
+        return baselineMemory;
+    }
+
+    /**
+     * @return the latest sampled heap size in bytes, -1 if unknown
+     */
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    /**
+     * @return how many bytes the heap grew between the first and the latest sample, 0 if unknown
+     */
+    public synchronized long getMemoryGrowth() {
+        return baselineMemory < 0 ? 0 : memory - baselineMemory;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d commands, %ds old, latency %.1fms -> %.1fms (x%.2f), heap %s -> %s",
+            commands, getAge() / 1000, baselineLatency, recentLatency, getLatencyDrift(),
+            baselineMemory < 0 ? "?" : (baselineMemory >> 20) + "MB", memory < 0 ? "?" : (memory >> 20) + "MB");
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link CosmoCodeSeleniumTest} to share one selenium session between all
+ * of its test methods.
+ *
+ * <p>
+ * The session is started before the first test method of the class, followed by
+ * {@link CosmoCodeSeleniumTest#setUpClassWebsite()}. Every further test method
+ * only triggers {@link CosmoCodeSeleniumTest#resetWebsite()}. After the last test
+ * method {@link CosmoCodeSeleniumTest#tearDownClassWebsite()} is called and the
+ * session is stopped. If only some of the test methods run, e.g. a single one started
+ * from the IDE, this happens as soon as the thread starts a test of another class or
+ * runs out of tests, see {@link CosmoCodeSeleniumTest#finishSharedSession()}.
+ * </p>
+ *
+ * <p>
+ * If the session crosses a threshold of {@link CosmoCodeSeleniumTest#getRecyclingPolicy()}, it is
+ * replaced between two test methods: {@link CosmoCodeSeleniumTest#tearDownClassWebsite()} runs on
+ * the old session and {@link CosmoCodeSeleniumTest#setUpClassWebsite()} on the fresh one.
+ * </p>
+ *
+ * @since 1.6
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SharedSession {
+
+    /**
+     * Whether the location and cookies have to be the same before every test
+     * method as they were after {@link CosmoCodeSeleniumTest#setUpClassWebsite()}.
+     *
+     * @return true if isolation will be checked, defaults to true
+     */
+    boolean verifyIsolation() default true;
+
+}
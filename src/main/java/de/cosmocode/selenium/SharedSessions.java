@@ -0,0 +1,230 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * Registry of the sessions used by {@link SharedSession} annotated test classes.
+ *
+ * <p>
+ * A session is finished after as many test methods as its class declares. Runs which only
+ * schedule some of them, e.g. a single method started by an IDE, are covered by a second rule:
+ * runners and suites run the test methods of one class on one thread, one after another, so a
+ * session is finished as soon as its thread starts a test of another class or browser,
+ * or runs out of tests.
+ * </p>
+ *
+ * @since 1.6
+ */
+final class SharedSessions {
+
+    private static final Map<String, Entry> SESSIONS = new HashMap<String, Entry>();
+    private static final Map<String, Integer> REMAINING = new HashMap<String, Integer>();
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<String>();
+
+    static {
+        // stops sessions of classes which did not run all of their test methods
+        Runtime.getRuntime().addShutdownHook(new Thread("shared-selenium-sessions") {
+            @Override
+            public void run() {
+                stopAll();
+            }
+        });
+    }
+
+    private SharedSessions() {
+
+    }
+
+    /**
+     * Retrieves the active session of the given class.
+     *
+     * @param testClass the test class
+     * @param key the session's key, unique per test class and browser
+     * @param count whether to count one more test method as started, false for retries
+     * @return the session entry or null if there is no active session
+     */
+    static synchronized Entry acquire(Class<?> testClass, String key, boolean count) {
+        CURRENT.set(key);
+        if (count) {
+            final Integer remaining = REMAINING.get(key);
+            REMAINING.put(key, (remaining == null ? countTestMethods(testClass) : remaining) - 1);
+        }
+        return SESSIONS.get(key);
+    }
+
+    /**
+     * Registers a freshly started session.
+     *
+     * @param key the session's key
+     * @param owner the test which started the session
+     * @param selenium the started session
+     * @param location the location after the class fixture was set up
+     * @param cookies the cookies after the class fixture was set up
+     * @return the new entry
+     */
+    static synchronized Entry register(String key, CosmoCodeSeleniumTest owner, Selenium selenium,
+        String location, String cookies) {
+        final Entry entry = new Entry(owner, selenium, location, cookies);
+        SESSIONS.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Removes the session if all test methods of its class were started.
+     *
+     * @param key the session's key
+     * @return the removed entry or null if there are still test methods left
+     */
+    static synchronized Entry release(String key) {
+        final Integer remaining = REMAINING.get(key);
+        if (remaining != null && remaining > 0) {
+            return null;
+        }
+        REMAINING.remove(key);
+        if (key.equals(CURRENT.get())) {
+            CURRENT.remove();
+        }
+        return SESSIONS.remove(key);
+    }
+
+    /**
+     * Hands the current thread over to another session or to a test without shared session.
+     *
+     * @param key the next session's key or null if the next test does not share its session
+     * @return the removed entry of the session the thread used before, which has to be finished
+     *         by the caller, or null if there is none
+     */
+    static synchronized Entry takeOver(String key) {
+        final String previous = CURRENT.get();
+        if (previous == null || previous.equals(key)) {
+            return null;
+        }
+        CURRENT.remove();
+        REMAINING.remove(previous);
+        return SESSIONS.remove(previous);
+    }
+
+    /**
+     * Removes the session regardless of the remaining test methods,
+     * so the next test method starts a fresh one.
+     *
+     * @param key the session's key
+     * @return the removed entry or null if there was no active session
+     */
+    static synchronized Entry discard(String key) {
+        return SESSIONS.remove(key);
+    }
+
+    private static void stopAll() {
+        final Entry[] entries;
+        synchronized (SharedSessions.class) {
+            entries = SESSIONS.values().toArray(new Entry[SESSIONS.size()]);
+            SESSIONS.clear();
+        }
+        for (Entry entry : entries) {
+            try {
+                entry.finish();
+            /* CHECKSTYLE:OFF */
+            } catch (RuntimeException e) {
+            /* CHECKSTYLE:ON */
+                // the jvm is going down, nothing left to do
+            }
+        }
+    }
+
+    /**
+     * Counts the test methods the same way {@link junit.framework.TestSuite} finds them.
+     */
+    private static int countTestMethods(Class<?> testClass) {
+        final Set<String> names = new HashSet<String>();
+        Class<?> type = testClass;
+        while (type != null && TestCase.class.isAssignableFrom(type)) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (Modifier.isPublic(method.getModifiers()) &&
+                        method.getParameterTypes().length == 0 &&
+                        method.getName().startsWith("test") &&
+                        method.getReturnType().equals(Void.TYPE)) {
+                    names.add(method.getName());
+                }
+            }
+            type = type.getSuperclass();
+        }
+        return names.size();
+    }
+
+    /**
+     * A session shared by all test methods of one class.
+     */
+    static final class Entry {
+
+        private final Selenium selenium;
+        private final String location;
+        private final String cookies;
+
+        private volatile CosmoCodeSeleniumTest owner;
+
+        private Entry(CosmoCodeSeleniumTest owner, Selenium selenium, String location, String cookies) {
+            this.owner = owner;
+            this.selenium = selenium;
+            this.location = location;
+            this.cookies = cookies;
+        }
+
+        /**
+         * @param test the test which uses the session now
+         */
+        public void setOwner(CosmoCodeSeleniumTest test) {
+            this.owner = test;
+        }
+
+        /**
+         * Tears down the class fixture on the test which used the session last and stops the session.
+         */
+        public void finish() {
+            try {
+                owner.tearDownClassWebsite();
+            } finally {
+                selenium.stop();
+            }
+        }
+
+        public Selenium getSelenium() {
+            return selenium;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public String getCookies() {
+            return cookies;
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The UTF-8 encoded result of a streaming command, see {@link SeleniumInvocation#isStreaming()}.
+ * The command lasts until the stream gets closed.
+ *
+ * @since 1.6
+ */
+public final class StreamedString extends FilterInputStream {
+
+    private final List<Runnable> closeListeners = new ArrayList<Runnable>();
+    private long count;
+    private boolean closed;
+
+    StreamedString(InputStream stream) {
+        super(stream);
+    }
+
+    /**
+     * Registers a listener which runs once the stream got closed. Listeners run
+     * in reverse order, so the one registered by the outermost interceptor runs last.
+     *
+     * @param listener the listener
+     */
+    public synchronized void onClose(Runnable listener) {
+        closeListeners.add(listener);
+    }
+
+    /**
+     * @return the number of bytes read so far
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0) {
+            counted(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int read = super.read(b, off, len);
+        if (read > 0) {
+            counted(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final long skipped = super.skip(n);
+        counted(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private synchronized void counted(long bytes) {
+        count += bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            super.close();
+        } finally {
+            runListeners(closeListeners.size() - 1);
+        }
+    }
+
+    private void runListeners(int index) {
+        if (index < 0) {
+            return;
+        }
+        try {
+            closeListeners.get(index).run();
+        } finally {
+            runListeners(index - 1);
+        }
+    }
+
+}
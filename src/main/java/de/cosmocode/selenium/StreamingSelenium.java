@@ -0,0 +1,225 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.thoughtworks.selenium.DefaultSelenium;
+import com.thoughtworks.selenium.HttpCommandProcessor;
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * A {@link DefaultSelenium} which can stream the results of string commands like
+ * {@link #getHtmlSource()} instead of holding them in memory as a whole.
+ *
+ * @since 1.6
+ */
+public class StreamingSelenium extends DefaultSelenium {
+
+    private static final String ENCODING = "UTF-8";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Processor processor;
+
+    public StreamingSelenium(String serverHost, int serverPort, String browserStartCommand, String browserURL) {
+        this(new Processor(serverHost, serverPort, browserStartCommand, browserURL));
+    }
+
+    private StreamingSelenium(Processor processor) {
+        super(processor);
+        this.processor = processor;
+    }
+
+    /**
+     * Sends a command which returns a string and streams its result.
+     * The caller has to close the returned stream.
+     *
+     * @param command the command, e.g. "getHtmlSource"
+     * @param args the command's arguments
+     * @return the UTF-8 encoded result
+     * @throws SeleniumException if the session is not started or the command failed
+     */
+    public InputStream openString(String command, String... args) {
+        try {
+            return processor.open(command, args);
+        } catch (IOException e) {
+            throw new SeleniumException("unable to stream " + command, e);
+        }
+    }
+
+    /**
+     * Sends a command which returns a string and writes its result to the given channel.
+     *
+     * @param command the command, e.g. "getBodyText"
+     * @param target the channel receiving the UTF-8 encoded result, stays open
+     * @param args the command's arguments
+     * @return the number of bytes written
+     * @throws SeleniumException if the session is not started or the command failed
+     */
+    public long writeString(String command, WritableByteChannel target, String... args) {
+        final InputStream stream = openString(command, args);
+        try {
+            try {
+                return copy(Channels.newChannel(stream), target);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new SeleniumException("unable to stream " + command, e);
+        }
+    }
+
+    /**
+     * Copies until the source is exhausted.
+     *
+     * @param source the source channel
+     * @param target the target channel
+     * @return the number of bytes copied
+     * @throws IOException if reading or writing failed
+     */
+    static long copy(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long total = 0;
+        while (source.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                total += target.write(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /**
+     * Remembers the session id, so commands can be sent without the client driver.
+     */
+    private static final class Processor extends HttpCommandProcessor {
+
+        private final String driverUrl;
+
+        private volatile String sessionId;
+
+        private Processor(String serverHost, int serverPort, String browserStartCommand, String browserURL) {
+            super(serverHost, serverPort, browserStartCommand, browserURL);
+            this.driverUrl = "http://" + serverHost + ":" + serverPort + "/selenium-server/driver/";
+        }
+
+        @Override
+        public String getString(String command, String[] args) {
+            final String result = super.getString(command, args);
+            if ("getNewBrowserSession".equals(command)) {
+                sessionId = result;
+            }
+            return result;
+        }
+
+        @Override
+        public void stop() {
+            super.stop();
+            sessionId = null;
+        }
+
+        private InputStream open(String command, String[] args) throws IOException {
+            final String session = sessionId;
+            if (session == null) {
+                throw new SeleniumException("session is not started");
+            }
+
+            final StringBuilder body = new StringBuilder("cmd=").append(encode(command));
+            for (int i = 0; i < args.length; i++) {
+                body.append('&').append(i + 1).append('=').append(encode(args[i]));
+            }
+            body.append("&sessionId=").append(encode(session));
+
+            final HttpURLConnection connection = (HttpURLConnection) new URL(driverUrl).openConnection();
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=utf-8");
+            final OutputStream output = connection.getOutputStream();
+            try {
+                output.write(body.toString().getBytes(ENCODING));
+            } finally {
+                output.close();
+            }
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new SeleniumException(connection.getResponseMessage() + " URL: " + driverUrl);
+            }
+
+            final InputStream stream = new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE);
+            final byte[] prefix = new byte[3];
+            int read = 0;
+            while (read < prefix.length) {
+                final int count = stream.read(prefix, read, prefix.length - read);
+                if (count == -1) {
+                    break;
+                }
+                read += count;
+            }
+
+            if (read == 2 && prefix[0] == 'O' && prefix[1] == 'K') {
+                // empty result
+                return stream;
+            } else if (read == 3 && prefix[0] == 'O' && prefix[1] == 'K' && prefix[2] == ',') {
+                return new FilterInputStream(stream) {
+
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        connection.disconnect();
+                    }
+
+                };
+            }
+
+            // errors are short
+            final ByteArrayOutputStream message = new ByteArrayOutputStream();
+            message.write(prefix, 0, read);
+            try {
+                int next;
+                while ((next = stream.read()) != -1) {
+                    message.write(next);
+                }
+            } finally {
+                stream.close();
+            }
+            throw new SeleniumException(message.toString(ENCODING));
+        }
+
+        private static String encode(String value) {
+            try {
+                return URLEncoder.encode(value, ENCODING);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+/**
+ * Sends every command of one session through the {@link NodeThrottle} of its node and
+ * gives back the session's slot when it is stopped.
+ *
+ * <p>
+ * Waits like {@code waitForPageToLoad} only poll inside the browser and hold no command slot,
+ * otherwise a few long waits could starve all other sessions.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class ThrottleInterceptor implements SeleniumInterceptor {
+
+    private final NodeThrottle throttle;
+    private boolean holdsSession;
+
+    public ThrottleInterceptor(NodeThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Waits for a session slot before the session gets started.
+     */
+    public void acquireSession() {
+        synchronized (this) {
+            if (holdsSession) {
+                return;
+            }
+        }
+        throttle.acquireSession();
+        synchronized (this) {
+            holdsSession = true;
+        }
+    }
+
+    /**
+     * Gives back the session slot, e.g. after the session failed to start. Does nothing if no slot is held.
+     */
+    public void releaseSession() {
+        synchronized (this) {
+            if (!holdsSession) {
+                return;
+            }
+            holdsSession = false;
+        }
+        throttle.releaseSession();
+    }
+
+    @Override
+    public Object intercept(SeleniumInvocation invocation) throws Throwable {
+        final String name = invocation.getName();
+        if ("stop".equals(name)) {
+            try {
+                return invocation.proceed();
+            } finally {
+                releaseSession();
+            }
+        } else if (name.startsWith("waitFor")) {
+            return invocation.proceed();
+        }
+
+        throttle.acquireCommand();
+        if (invocation.isStreaming()) {
+            final StreamedString stream;
+            try {
+                stream = (StreamedString) invocation.proceed();
+            /* CHECKSTYLE:OFF */
+            } catch (Throwable throwable) {
+            /* CHECKSTYLE:ON */
+                throttle.releaseCommand();
+                throw throwable;
+            }
+            // the command keeps the server busy until its result is read
+            stream.onClose(new Runnable() {
+                @Override
+                public void run() {
+                    throttle.releaseCommand();
+                }
+            });
+            return stream;
+        }
+        try {
+            return invocation.proceed();
+        } finally {
+            throttle.releaseCommand();
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+/**
+ * A single command sent to the remote control server.
+ *
+ * @since 1.6
+ */
+public final class CommandEvent {
+
+    private final String command;
+    private final String locator;
+    private final long startTime;
+    private final long durationInNanos;
+    private final int resultSize;
+    private final Throwable failure;
+
+    public CommandEvent(String command, String locator, long startTime, long durationInNanos,
+            int resultSize, Throwable failure) {
+        this.command = command;
+        this.locator = locator;
+        this.startTime = startTime;
+        this.durationInNanos = durationInNanos;
+        this.resultSize = resultSize;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the command's name, e.g. "click"
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the command's first argument, usually a locator, null if there is none
+     */
+    public String getLocator() {
+        return locator;
+    }
+
+    /**
+     * @return when the command started, in ms since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDurationInNanos() {
+        return durationInNanos;
+    }
+
+    /**
+     * @return the result's length in characters, the sum of all elements for arrays, 0 for void commands
+     */
+    public int getResultSize() {
+        return resultSize;
+    }
+
+    /**
+     * @return the command's failure or null if it succeeded
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return command + "(" + (locator == null ? "" : locator) + ") " + durationInNanos / 1000000 + "ms" +
+            (failure == null ? "" : " failed: " + failure);
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+import de.cosmocode.selenium.SeleniumInterceptor;
+import de.cosmocode.selenium.SeleniumInvocation;
+import de.cosmocode.selenium.StreamedString;
+
+/**
+ * Fires a {@link CommandEvent} for every command while {@link SeleniumEvents} has listeners.
+ *
+ * @since 1.6
+ */
+public final class EventInterceptor implements SeleniumInterceptor {
+
+    @Override
+    public Object intercept(final SeleniumInvocation invocation) throws Throwable {
+        if (!SeleniumEvents.isEnabled()) {
+            return invocation.proceed();
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        if (invocation.isStreaming()) {
+            return stream(invocation, startTime, start);
+        }
+        Object result = null;
+        Throwable failure = null;
+        try {
+            result = invocation.proceed();
+            return result;
+        /* CHECKSTYLE:OFF */
+        } catch (Throwable throwable) {
+        /* CHECKSTYLE:ON */
+            failure = throwable;
+            throw throwable;
+        } finally {
+            SeleniumEvents.fire(new CommandEvent(invocation.getName(), invocation.getFirstArgument(),
+                startTime, System.nanoTime() - start, sizeOf(result), failure));
+        }
+    }
+
+    private static Object stream(final SeleniumInvocation invocation, final long startTime, final long start)
+        throws Throwable {
+        final StreamedString stream;
+        try {
+            stream = (StreamedString) invocation.proceed();
+        /* CHECKSTYLE:OFF */
+        } catch (Throwable throwable) {
+        /* CHECKSTYLE:ON */
+            SeleniumEvents.fire(new CommandEvent(invocation.getName(), invocation.getFirstArgument(),
+                startTime, System.nanoTime() - start, 0, throwable));
+            throw throwable;
+        }
+        stream.onClose(new Runnable() {
+            @Override
+            public void run() {
+                SeleniumEvents.fire(new CommandEvent(invocation.getName(), invocation.getFirstArgument(),
+                    startTime, System.nanoTime() - start, (int) Math.min(stream.getCount(), Integer.MAX_VALUE), null));
+            }
+        });
+        return stream;
+    }
+
+    private static int sizeOf(Object result) {
+        if (result instanceof String) {
+            return ((String) result).length();
+        } else if (result instanceof String[]) {
+            int size = 0;
+            for (String element : (String[]) result) {
+                size += element == null ? 0 : element.length();
+            }
+            return size;
+        } else {
+            return result == null ? 0 : 1;
+        }
+    }
+
+}
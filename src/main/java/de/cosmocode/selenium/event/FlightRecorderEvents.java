@@ -0,0 +1,188 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.cosmocode.selenium.Reports;
+
+/**
+ * Forwards {@link SeleniumEvents} to JDK Flight Recorder as the events
+ * de.cosmocode.selenium.Command, de.cosmocode.selenium.Wait and de.cosmocode.selenium.PageLoad.
+ *
+ * <p>
+ * This module compiles for Java 6, so the event types are defined at runtime with
+ * jdk.jfr.EventFactory, which is looked up reflectively. On a JDK without it,
+ * {@link #install()} does nothing. The events are committed when the selenium event
+ * arrives; the command's own start and duration are the fields "started" and "elapsed".
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class FlightRecorderEvents implements SeleniumEventListener {
+
+    private static final String JFR = "jdk.jfr.";
+
+    private static FlightRecorderEvents instance;
+
+    private final Type commands;
+    private final Type waits;
+    private final Type pageLoads;
+
+    private FlightRecorderEvents() throws Exception {
+        final Method set = Class.forName(JFR + "Event").getMethod("set", int.class, Object.class);
+        commands = new Type(set, "Command", "Selenium Command", "A command sent to the remote control server",
+            field(String.class, "command", "Command"),
+            field(String.class, "locator", "Locator"),
+            field(long.class, "started", "Started", timestamp()),
+            field(long.class, "elapsed", "Elapsed", timespan("NANOSECONDS")),
+            field(int.class, "resultSize", "Result Size"),
+            field(String.class, "failure", "Failure"));
+        waits = new Type(set, "Wait", "Selenium Wait", "A client side poll loop",
+            field(String.class, "method", "Method"),
+            field(String.class, "locator", "Locator"),
+            field(long.class, "started", "Started", timestamp()),
+            field(long.class, "elapsed", "Elapsed", timespan("MILLISECONDS")),
+            field(int.class, "iterations", "Iterations"),
+            field(long.class, "slept", "Slept", timespan("MILLISECONDS")),
+            field(boolean.class, "successful", "Successful"));
+        pageLoads = new Type(set, "PageLoad", "Selenium Page Load", "A page load of an *AndWait method",
+            field(String.class, "trigger", "Trigger"),
+            field(String.class, "target", "Target"),
+            field(long.class, "started", "Started", timestamp()),
+            field(long.class, "elapsed", "Elapsed", timespan("MILLISECONDS")),
+            field(long.class, "waited", "Waited", timespan("MILLISECONDS")),
+            field(boolean.class, "successful", "Successful"));
+    }
+
+    /**
+     * Registers the forwarder as listener on first call, if the running JDK provides
+     * JDK Flight Recorder. Events are recorded only while a recording enables them.
+     *
+     * @return whether the events are forwarded
+     */
+    public static synchronized boolean install() {
+        if (instance == null) {
+            try {
+                Class.forName(JFR + "EventFactory");
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+            try {
+                instance = new FlightRecorderEvents();
+            } catch (Exception e) {
+                Reports.warn("unable to define the flight recorder events", e);
+                return false;
+            }
+            SeleniumEvents.addListener(instance);
+        }
+        return true;
+    }
+
+    @Override
+    public void onCommand(CommandEvent event) {
+        final Throwable failure = event.getFailure();
+        commands.commit(event.getCommand(), event.getLocator(), event.getStartTime(), event.getDurationInNanos(),
+            event.getResultSize(), failure == null ? null : failure.toString());
+    }
+
+    @Override
+    public void onWait(WaitEvent event) {
+        waits.commit(event.getMethod(), event.getLocator(), event.getStartTime(), event.getDurationInMs(),
+            event.getIterations(), event.getSleptInMs(), event.isSuccessful());
+    }
+
+    @Override
+    public void onPageLoad(PageLoadEvent event) {
+        pageLoads.commit(event.getTrigger(), event.getTarget(), event.getStartTime(), event.getDurationInMs(),
+            event.getWaitInMs(), event.isSuccessful());
+    }
+
+    private static Object annotation(String type, Object value) throws Exception {
+        final Class<?> annotation = Class.forName(JFR + type);
+        final Class<?> element = Class.forName(JFR + "AnnotationElement");
+        final Constructor<?> constructor = element.getConstructor(Class.class, Object.class);
+        return constructor.newInstance(annotation.asSubclass(Annotation.class), value);
+    }
+
+    private static Object timestamp() throws Exception {
+        return annotation("Timestamp", "MILLISECONDS_SINCE_EPOCH");
+    }
+
+    private static Object timespan(String unit) throws Exception {
+        return annotation("Timespan", unit);
+    }
+
+    private static Object field(Class<?> type, String name, String label, Object... annotations) throws Exception {
+        final List<Object> all = new ArrayList<Object>(Arrays.asList(annotations));
+        all.add(annotation("Label", label));
+        final Class<?> descriptor = Class.forName(JFR + "ValueDescriptor");
+        return descriptor.getConstructor(Class.class, String.class, List.class).newInstance(type, name, all);
+    }
+
+    /**
+     * An event type defined by jdk.jfr.EventFactory.
+     */
+    private static final class Type {
+
+        private final Object factory;
+        private final Method newEvent;
+        private final Method shouldCommit;
+        private final Method set;
+        private final Method commit;
+
+        Type(Method set, String name, String label, String description, Object... fields) throws Exception {
+            final List<Object> annotations = new ArrayList<Object>();
+            annotations.add(annotation("Name", "de.cosmocode.selenium." + name));
+            annotations.add(annotation("Label", label));
+            annotations.add(annotation("Description", description));
+            annotations.add(annotation("Category", new String[] {"Selenium"}));
+            final Class<?> factoryClass = Class.forName(JFR + "EventFactory");
+            this.factory = factoryClass.getMethod("create", List.class, List.class).invoke(null,
+                annotations, Arrays.asList(fields));
+            this.newEvent = factoryClass.getMethod("newEvent");
+            this.shouldCommit = set.getDeclaringClass().getMethod("shouldCommit");
+            this.set = set;
+            this.commit = set.getDeclaringClass().getMethod("commit");
+        }
+
+        void commit(Object... values) {
+            try {
+                final Object event = newEvent.invoke(factory);
+                if (!((Boolean) shouldCommit.invoke(event)).booleanValue()) {
+                    return;
+                }
+                for (int i = 0; i < values.length; i++) {
+                    set.invoke(event, i, values[i]);
+                }
+                commit.invoke(event);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+    }
+
+}
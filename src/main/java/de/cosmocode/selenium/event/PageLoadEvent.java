@@ -0,0 +1,88 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+/**
+ * A page load triggered by one of the *AndWait methods.
+ *
+ * @since 1.6
+ */
+public final class PageLoadEvent {
+
+    private final String trigger;
+    private final String target;
+    private final long startTime;
+    private final long durationInMs;
+    private final long waitInMs;
+    private final boolean successful;
+
+    public PageLoadEvent(String trigger, String target, long startTime, long durationInMs,
+            long waitInMs, boolean successful) {
+        this.trigger = trigger;
+        this.target = target;
+        this.startTime = startTime;
+        this.durationInMs = durationInMs;
+        this.waitInMs = waitInMs;
+        this.successful = successful;
+    }
+
+    /**
+     * @return the triggering command, e.g. "click"
+     */
+    public String getTrigger() {
+        return trigger;
+    }
+
+    /**
+     * @return the url or locator the trigger was sent with
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return when the trigger was sent, in ms since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return how long trigger and wait took together
+     */
+    public long getDurationInMs() {
+        return durationInMs;
+    }
+
+    /**
+     * @return how long was waited for the page after the trigger returned
+     */
+    public long getWaitInMs() {
+        return waitInMs;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    @Override
+    public String toString() {
+        return trigger + "(" + target + ") " + durationInMs + "ms, waited " + waitInMs + "ms" +
+            (successful ? "" : ", failed");
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+/**
+ * Receives events of all sessions. Listeners get called on the thread which sent
+ * the command and must be thread-safe.
+ *
+ * @see SeleniumEvents#addListener(SeleniumEventListener)
+ * @since 1.6
+ */
+public interface SeleniumEventListener {
+
+    /**
+     * Called after every command sent to the remote control server.
+     *
+     * @param event the event
+     */
+    void onCommand(CommandEvent event);
+
+    /**
+     * Called after every client side poll loop.
+     *
+     * @param event the event
+     */
+    void onWait(WaitEvent event);
+
+    /**
+     * Called after every page load of the *AndWait methods.
+     *
+     * @param event the event
+     */
+    void onPageLoad(PageLoadEvent event);
+
+}
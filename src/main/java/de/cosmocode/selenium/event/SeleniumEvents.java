@@ -0,0 +1,78 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of {@link SeleniumEventListener}s.
+ *
+ * <p>
+ * Events are only created if at least one listener is registered, so
+ * {@link #isEnabled()} is the only cost while nobody listens. {@link FlightRecorderEvents}
+ * forwards the events to JDK Flight Recorder on a JDK which provides it.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class SeleniumEvents {
+
+    private static final List<SeleniumEventListener> LISTENERS = new CopyOnWriteArrayList<SeleniumEventListener>();
+
+    private static volatile boolean enabled;
+
+    private SeleniumEvents() {
+
+    }
+
+    public static synchronized void addListener(SeleniumEventListener listener) {
+        LISTENERS.add(listener);
+        enabled = true;
+    }
+
+    public static synchronized void removeListener(SeleniumEventListener listener) {
+        LISTENERS.remove(listener);
+        enabled = !LISTENERS.isEmpty();
+    }
+
+    /**
+     * @return whether at least one listener is registered
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void fire(CommandEvent event) {
+        for (SeleniumEventListener listener : LISTENERS) {
+            listener.onCommand(event);
+        }
+    }
+
+    public static void fire(WaitEvent event) {
+        for (SeleniumEventListener listener : LISTENERS) {
+            listener.onWait(event);
+        }
+    }
+
+    public static void fire(PageLoadEvent event) {
+        for (SeleniumEventListener listener : LISTENERS) {
+            listener.onPageLoad(event);
+        }
+    }
+
+}
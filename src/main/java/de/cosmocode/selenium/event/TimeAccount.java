@@ -0,0 +1,123 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time of a test split into the time spent in remote control commands, waiting in the
+ * browser, sleeping on the client and everything else, which is mostly test code.
+ *
+ * @since 1.6
+ */
+public final class TimeAccount {
+
+    private final String name;
+
+    private long wallNanos;
+    private long commandNanos;
+    private long browserWaitNanos;
+    private long sleepNanos;
+    private long cpuNanos;
+
+    public TimeAccount(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    synchronized void addWall(long nanos) {
+        wallNanos += nanos;
+    }
+
+    synchronized void addCommand(long nanos) {
+        commandNanos += nanos;
+    }
+
+    synchronized void addBrowserWait(long nanos) {
+        browserWaitNanos += nanos;
+    }
+
+    synchronized void addSleep(long nanos) {
+        sleepNanos += nanos;
+    }
+
+    synchronized void addCpu(long nanos) {
+        cpuNanos += nanos;
+    }
+
+    synchronized void add(TimeAccount other) {
+        wallNanos += other.getWallNanos();
+        commandNanos += other.getCommandNanos();
+        browserWaitNanos += other.getBrowserWaitNanos();
+        sleepNanos += other.getSleepNanos();
+        cpuNanos += other.getCpuNanos();
+    }
+
+    public synchronized long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return time spent in remote control commands, except the browser side waits
+     */
+    public synchronized long getCommandNanos() {
+        return commandNanos;
+    }
+
+    /**
+     * @return time spent in waitFor* commands like waitForPageToLoad or waitForCondition
+     */
+    public synchronized long getBrowserWaitNanos() {
+        return browserWaitNanos;
+    }
+
+    /**
+     * @return time the test thread slept between polls
+     */
+    public synchronized long getSleepNanos() {
+        return sleepNanos;
+    }
+
+    /**
+     * @return cpu time of the test thread, if supported by the jvm
+     */
+    public synchronized long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * @return wall time not spent in commands, browser waits or sleeping
+     */
+    public synchronized long getOtherNanos() {
+        return Math.max(0, wallNanos - commandNanos - browserWaitNanos - sleepNanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: wall %dms, commands %dms, browser waits %dms, sleeping %dms, other %dms (cpu %dms)",
+            name, millis(wallNanos), millis(commandNanos), millis(browserWaitNanos), millis(sleepNanos),
+            millis(getOtherNanos()), millis(cpuNanos));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.cosmocode.selenium.Reports;
+
+/**
+ * Sorts the wall time of every test into {@link TimeAccount}s and ranks the places
+ * which made tests wait the longest.
+ *
+ * <p>
+ * Commands and waits are attributed to the test running on the thread which issued them,
+ * so commands of {@link de.cosmocode.selenium.AsyncSession}s are not accounted.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class TimeAccounting extends SeleniumEventAdapter implements Reports.Report {
+
+    private static TimeAccounting instance;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final ThreadLocal<Current> current = new ThreadLocal<Current>();
+    private final TimeAccount total = new TimeAccount("total");
+    private final List<TimeAccount> tests = Collections.synchronizedList(new ArrayList<TimeAccount>());
+    private final Map<String, Long> waits = new HashMap<String, Long>();
+
+    private final Reports.OnShutdown onShutdown = Reports.onShutdown("selenium-time-accounting", this);
+
+    private TimeAccounting() {
+
+    }
+
+    /**
+     * Retrieves the accounting of this jvm and registers it as listener on first access.
+     *
+     * @return the accounting
+     */
+    public static synchronized TimeAccounting get() {
+        if (instance == null) {
+            instance = new TimeAccounting();
+            SeleniumEvents.addListener(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Starts accounting a test on the current thread.
+     *
+     * @param test the test's name
+     */
+    public void begin(String test) {
+        current.set(new Current(new TimeAccount(test), System.nanoTime(), cpuTime()));
+    }
+
+    /**
+     * Stops accounting the test of the current thread and adds it to the run.
+     *
+     * @return the test's account or null if no test was begun
+     */
+    public TimeAccount end() {
+        final Current test = current.get();
+        if (test == null) {
+            return null;
+        }
+        current.remove();
+        test.account.addWall(System.nanoTime() - test.start);
+        if (test.cpuStart >= 0) {
+            test.account.addCpu(cpuTime() - test.cpuStart);
+        }
+        tests.add(test.account);
+        total.add(test.account);
+        return test.account;
+    }
+
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    @Override
+    public void onCommand(CommandEvent event) {
+        final Current test = current.get();
+        if (test == null) {
+            return;
+        }
+        if (event.getCommand().startsWith("waitFor")) {
+            test.account.addBrowserWait(event.getDurationInNanos());
+        } else {
+            test.account.addCommand(event.getDurationInNanos());
+        }
+    }
+
+    @Override
+    public void onWait(WaitEvent event) {
+        final Current test = current.get();
+        if (test == null) {
+            return;
+        }
+        test.account.addSleep(TimeUnit.MILLISECONDS.toNanos(event.getSleptInMs()));
+        addWait(event.getMethod() + "(" + event.getLocator() + ")", event.getDurationInMs());
+    }
+
+    @Override
+    public void onPageLoad(PageLoadEvent event) {
+        if (current.get() != null) {
+            addWait(event.getTrigger() + "AndWait(" + event.getTarget() + ")", event.getWaitInMs());
+        }
+    }
+
+    private void addWait(String site, long millis) {
+        synchronized (waits) {
+            final Long previous = waits.get(site);
+            waits.put(site, previous == null ? millis : previous + millis);
+        }
+    }
+
+    /**
+     * @return the sum of all finished tests
+     */
+    public TimeAccount getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the accounts of all finished tests
+     */
+    public List<TimeAccount> getTests() {
+        synchronized (tests) {
+            return new ArrayList<TimeAccount>(tests);
+        }
+    }
+
+    /**
+     * Ranks the waits, i.e. poll loops and page loads, by their accumulated time.
+     *
+     * @return every wait mapped to its accumulated time in ms, longest first
+     */
+    public Map<String, Long> getWaits() {
+        final List<Map.Entry<String, Long>> entries;
+        synchronized (waits) {
+            entries = new ArrayList<Map.Entry<String, Long>>(waits.entrySet());
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> left, Map.Entry<String, Long> right) {
+                return right.getValue().compareTo(left.getValue());
+            }
+        });
+        final Map<String, Long> ranked = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries) {
+            ranked.put(entry.getKey(), entry.getValue());
+        }
+        return ranked;
+    }
+
+    /**
+     * Writes the run's total, every test and the ranked waits to the given file.
+     *
+     * @param file the report file
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void writeReport(File file) throws IOException {
+        final PrintWriter writer = Reports.open(file, false);
+        try {
+            writer.println(total);
+            writer.println();
+            writer.println("tests:");
+            for (TimeAccount test : getTests()) {
+                writer.println(test);
+            }
+            writer.println();
+            writer.println("waits, longest first:");
+            for (Map.Entry<String, Long> wait : getWaits().entrySet()) {
+                writer.println(wait.getValue() + "ms\t" + wait.getKey());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the {@link #writeReport(File) report} when the jvm shuts down.
+     *
+     * @param file the report file
+     * @see Reports.OnShutdown
+     */
+    public void writeReportOnShutdown(File file) {
+        onShutdown.writeTo(file);
+    }
+
+    /**
+     * The test running on a thread.
+     */
+    private static final class Current {
+
+        private final TimeAccount account;
+        private final long start;
+        private final long cpuStart;
+
+        private Current(TimeAccount account, long start, long cpuStart) {
+            this.account = account;
+            this.start = start;
+            this.cpuStart = cpuStart;
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+/**
+ * A client side poll loop, e.g. {@code waitForElementPresent}.
+ *
+ * @since 1.6
+ */
+public final class WaitEvent {
+
+    private final String method;
+    private final String locator;
+    private final long startTime;
+    private final long durationInMs;
+    private final int iterations;
+    private final long sleptInMs;
+    private final boolean successful;
+
+    public WaitEvent(String method, String locator, long startTime, long durationInMs,
+            int iterations, long sleptInMs, boolean successful) {
+        this.method = method;
+        this.locator = locator;
+        this.startTime = startTime;
+        this.durationInMs = durationInMs;
+        this.iterations = iterations;
+        this.sleptInMs = sleptInMs;
+        this.successful = successful;
+    }
+
+    /**
+     * @return the waiting method, e.g. "waitForValueChange"
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public String getLocator() {
+        return locator;
+    }
+
+    /**
+     * @return when the wait started, in ms since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDurationInMs() {
+        return durationInMs;
+    }
+
+    /**
+     * @return how often the condition was checked
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return how long the client slept between checks
+     */
+    public long getSleptInMs() {
+        return sleptInMs;
+    }
+
+    /**
+     * @return false if the wait timed out
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    @Override
+    public String toString() {
+        return method + "(" + locator + ") " + durationInMs + "ms, " + iterations + " iterations, " +
+            sleptInMs + "ms slept" + (successful ? "" : ", timed out");
+    }
+
+}
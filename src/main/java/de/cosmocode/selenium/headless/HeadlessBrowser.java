@@ -0,0 +1,719 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.headless;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpCookie;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * The commands of {@link HeadlessSelenium}. Every public method implements the
+ * {@link com.thoughtworks.selenium.Selenium} method with the same signature.
+ *
+ * <p>
+ * Pages are fetched with {@link HttpURLConnection}, redirects are followed and cookies
+ * are kept per session regardless of their domain and path. There is no javascript,
+ * no css and no layout: every present element which is not hidden by an inline style
+ * or a hidden input counts as visible.
+ * </p>
+ *
+ * @since 1.6
+ */
+final class HeadlessBrowser {
+
+    private static final int MAX_REDIRECTS = 10;
+    private static final Pattern CHARSET = Pattern.compile("charset=[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HIDDEN = Pattern.compile("display\\s*:\\s*none|visibility\\s*:\\s*hidden",
+        Pattern.CASE_INSENSITIVE);
+
+    private final URL browserUrl;
+    private final Map<String, String> cookies = new LinkedHashMap<String, String>();
+    private final LinkedList<URL> history = new LinkedList<URL>();
+
+    private int timeout = 30000;
+    private URL location;
+    private String source = "";
+    private Document document = HtmlDocuments.parse("");
+
+    HeadlessBrowser(String browserUrl) {
+        try {
+            this.browserUrl = new URL(browserUrl);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("invalid browser url " + browserUrl, e);
+        }
+    }
+
+    /* SESSION */
+
+    public void start() {
+        // nothing to launch
+    }
+
+    public void start(String optionsString) {
+        start();
+    }
+
+    public void start(Object optionsObject) {
+        start();
+    }
+
+    public void stop() {
+        cookies.clear();
+        history.clear();
+        location = null;
+        source = "";
+        document = HtmlDocuments.parse("");
+    }
+
+    public void setTimeout(String timeoutInMs) {
+        this.timeout = Integer.parseInt(timeoutInMs);
+    }
+
+    public void setSpeed(String value) {
+        // commands run as fast as possible
+    }
+
+    public String getSpeed() {
+        return "0";
+    }
+
+    public void setContext(String context) {
+        // there is no remote log
+    }
+
+    public void windowFocus() {
+        // there is only one window
+    }
+
+    public void windowMaximize() {
+        // there is no window
+    }
+
+    /* NAVIGATION */
+
+    public void open(String url) {
+        // like selenium, relative to the browser url rather than the current page
+        final int status = navigate(resolve(browserUrl, url), "GET", null);
+        if (status >= 400) {
+            throw new SeleniumException("XHR ERROR: URL = " + location + " Response_Code = " + status);
+        }
+    }
+
+    public void refresh() {
+        if (location != null) {
+            load(location, "GET", null);
+        }
+    }
+
+    public void goBack() {
+        if (!history.isEmpty()) {
+            load(history.pop(), "GET", null);
+        }
+    }
+
+    public void waitForPageToLoad(String timeoutInMs) {
+        // pages load synchronously
+    }
+
+    /* INTERACTION */
+
+    public void click(String locator) {
+        final Element element = Locators.require(document, locator);
+        final String tag = element.getNodeName();
+        final String type = element.getAttribute("type").toLowerCase();
+
+        if ("a".equals(tag) && element.hasAttribute("href")) {
+            final String href = element.getAttribute("href").trim();
+            if (href.startsWith("javascript:")) {
+                throw new UnsupportedOperationException("the headless browser does not run javascript: " + href);
+            } else if (!href.startsWith("#")) {
+                navigate(resolve(href), "GET", null);
+            }
+        } else if ("input".equals(tag) && ("submit".equals(type) || "image".equals(type)) ||
+                "button".equals(tag) && ("submit".equals(type) || type.length() == 0)) {
+            final Element form = formOf(element);
+            if (form != null) {
+                submit(form, element);
+            }
+        } else if ("input".equals(tag) && "checkbox".equals(type)) {
+            setChecked(element, !element.hasAttribute("checked"));
+        } else if ("input".equals(tag) && "radio".equals(type)) {
+            setChecked(element, true);
+        } else if ("option".equals(tag)) {
+            Node select = element.getParentNode();
+            while (select instanceof Element && !"select".equals(select.getNodeName())) {
+                select = select.getParentNode();
+            }
+            if (select instanceof Element) {
+                selectOption((Element) select, element);
+            }
+        }
+    }
+
+    public void submit(String formLocator) {
+        submit(Locators.require(document, formLocator), null);
+    }
+
+    public void type(String locator, String value) {
+        final Element element = Locators.require(document, locator);
+        if ("textarea".equals(element.getNodeName())) {
+            while (element.getFirstChild() != null) {
+                element.removeChild(element.getFirstChild());
+            }
+            element.appendChild(document.createTextNode(value));
+        } else {
+            element.setAttribute("value", value);
+        }
+    }
+
+    public void typeKeys(String locator, String value) {
+        type(locator, getValue(locator) + value);
+    }
+
+    public void check(String locator) {
+        setChecked(Locators.require(document, locator), true);
+    }
+
+    public void uncheck(String locator) {
+        setChecked(Locators.require(document, locator), false);
+    }
+
+    public void select(String selectLocator, String optionLocator) {
+        final Element select = Locators.require(document, selectLocator);
+        final Element option = findOption(select, optionLocator);
+        if (option == null) {
+            throw new SeleniumException("ERROR: Option with " + optionLocator + " not found");
+        }
+        selectOption(select, option);
+    }
+
+    /* QUERIES */
+
+    public String getLocation() {
+        return location == null ? "" : location.toString();
+    }
+
+    public String getTitle() {
+        final Element title = Locators.find(document, "//title");
+        return title == null ? "" : Locators.textOf(title);
+    }
+
+    public String getHtmlSource() {
+        return source;
+    }
+
+    public String getBodyText() {
+        final Element body = Locators.find(document, "//body");
+        return body == null ? "" : Locators.textOf(body);
+    }
+
+    public boolean isTextPresent(String pattern) {
+        return TextPatterns.contains(pattern, getBodyText());
+    }
+
+    public boolean isElementPresent(String locator) {
+        return Locators.find(document, locator) != null;
+    }
+
+    public boolean isVisible(String locator) {
+        Node node = Locators.require(document, locator);
+        if ("hidden".equalsIgnoreCase(((Element) node).getAttribute("type"))) {
+            return false;
+        }
+        while (node instanceof Element) {
+            if (HIDDEN.matcher(((Element) node).getAttribute("style")).find()) {
+                return false;
+            }
+            node = node.getParentNode();
+        }
+        return true;
+    }
+
+    public boolean isEditable(String locator) {
+        final Element element = Locators.require(document, locator);
+        final String tag = element.getNodeName();
+        if (!"input".equals(tag) && !"textarea".equals(tag) && !"select".equals(tag)) {
+            throw new SeleniumException("ERROR: Element " + locator + " is not an input.");
+        }
+        return !element.hasAttribute("disabled") && !element.hasAttribute("readonly");
+    }
+
+    public String getText(String locator) {
+        return Locators.textOf(Locators.require(document, locator));
+    }
+
+    public String getValue(String locator) {
+        return valueOf(Locators.require(document, locator));
+    }
+
+    public boolean isChecked(String locator) {
+        final Element element = Locators.require(document, locator);
+        final String type = element.getAttribute("type").toLowerCase();
+        if (!"checkbox".equals(type) && !"radio".equals(type)) {
+            throw new SeleniumException("ERROR: Element " + locator + " is not a toggle-button.");
+        }
+        return element.hasAttribute("checked");
+    }
+
+    public String getAttribute(String attributeLocator) {
+        final int split = attributeLocator.lastIndexOf('@');
+        if (split < 0) {
+            throw new SeleniumException("ERROR: Invalid attribute locator " + attributeLocator);
+        }
+        final Element element = Locators.require(document, attributeLocator.substring(0, split));
+        final String name = attributeLocator.substring(split + 1).toLowerCase();
+        if (!element.hasAttribute(name)) {
+            throw new SeleniumException("ERROR: Could not find element attribute: " + attributeLocator);
+        }
+        return element.getAttribute(name);
+    }
+
+    public Number getXpathCount(String xpath) {
+        return Locators.findAll(document, xpath.startsWith("xpath=") ? xpath : "xpath=" + xpath).size();
+    }
+
+    public boolean isSomethingSelected(String selectLocator) {
+        return !selectedOptions(Locators.require(document, selectLocator)).isEmpty();
+    }
+
+    public String getSelectedLabel(String selectLocator) {
+        return Locators.textOf(firstSelected(selectLocator));
+    }
+
+    public String getSelectedValue(String selectLocator) {
+        return optionValue(firstSelected(selectLocator));
+    }
+
+    public String getSelectedId(String selectLocator) {
+        return firstSelected(selectLocator).getAttribute("id");
+    }
+
+    public String[] getSelectedLabels(String selectLocator) {
+        final List<String> labels = new ArrayList<String>();
+        for (Element option : selectedOptions(Locators.require(document, selectLocator))) {
+            labels.add(Locators.textOf(option));
+        }
+        return labels.toArray(new String[labels.size()]);
+    }
+
+    public String[] getSelectedValues(String selectLocator) {
+        final List<String> values = new ArrayList<String>();
+        for (Element option : selectedOptions(Locators.require(document, selectLocator))) {
+            values.add(optionValue(option));
+        }
+        return values.toArray(new String[values.size()]);
+    }
+
+    public String[] getSelectOptions(String selectLocator) {
+        final List<String> labels = new ArrayList<String>();
+        for (Element option : optionsOf(Locators.require(document, selectLocator))) {
+            labels.add(Locators.textOf(option));
+        }
+        return labels.toArray(new String[labels.size()]);
+    }
+
+    public String[] getAllLinks() {
+        return idsOf("a");
+    }
+
+    public String[] getAllButtons() {
+        // like selenium, neither image inputs nor button elements
+        return idsOf("input", "button", "submit", "reset");
+    }
+
+    public String[] getAllFields() {
+        return idsOf("input", "text");
+    }
+
+    /* COOKIES */
+
+    public String getCookie() {
+        final StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append("; ");
+            }
+            builder.append(cookie.getKey()).append('=').append(cookie.getValue());
+        }
+        return builder.toString();
+    }
+
+    public String getCookieByName(String name) {
+        return cookies.get(name);
+    }
+
+    public boolean isCookiePresent(String name) {
+        return cookies.containsKey(name);
+    }
+
+    public void createCookie(String nameValuePair, String optionsString) {
+        final int split = nameValuePair.indexOf('=');
+        if (split <= 0) {
+            throw new SeleniumException("ERROR: Invalid parameter " + nameValuePair);
+        }
+        cookies.put(nameValuePair.substring(0, split).trim(), nameValuePair.substring(split + 1).trim());
+    }
+
+    public void deleteCookie(String name, String optionsString) {
+        cookies.remove(name);
+    }
+
+    public void deleteAllVisibleCookies() {
+        cookies.clear();
+    }
+
+    /* INTERNALS */
+
+    private URL resolve(String url) {
+        return resolve(location == null ? browserUrl : location, url);
+    }
+
+    private static URL resolve(URL base, String url) {
+        try {
+            return new URL(base, url);
+        } catch (MalformedURLException e) {
+            throw new SeleniumException("ERROR: Invalid url " + url, e);
+        }
+    }
+
+    private int navigate(URL url, String method, String body) {
+        final URL previous = location;
+        final int status = load(url, method, body);
+        if (previous != null) {
+            history.push(previous);
+        }
+        return status;
+    }
+
+    private int load(URL url, String method, String body) {
+        URL current = url;
+        String currentMethod = method;
+        String currentBody = body;
+        try {
+            for (int redirects = 0;; redirects++) {
+                final HttpURLConnection connection = (HttpURLConnection) current.openConnection();
+                connection.setInstanceFollowRedirects(false);
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+                connection.setRequestMethod(currentMethod);
+                if (!cookies.isEmpty()) {
+                    connection.setRequestProperty("Cookie", getCookie());
+                }
+                if (currentBody != null) {
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+                    final OutputStream stream = connection.getOutputStream();
+                    try {
+                        stream.write(currentBody.getBytes("UTF-8"));
+                    } finally {
+                        stream.close();
+                    }
+                }
+
+                final int status = connection.getResponseCode();
+                storeCookies(connection);
+
+                final String redirect = connection.getHeaderField("Location");
+                if (status >= 300 && status < 400 && redirect != null && redirects < MAX_REDIRECTS) {
+                    connection.disconnect();
+                    current = new URL(current, redirect);
+                    if (status != 307) {
+                        currentMethod = "GET";
+                        currentBody = null;
+                    }
+                    continue;
+                }
+
+                source = read(connection, status);
+                document = HtmlDocuments.parse(source);
+                location = current;
+                return status;
+            }
+        } catch (IOException e) {
+            throw new SeleniumException("ERROR: unable to load " + current, e);
+        }
+    }
+
+    private void storeCookies(HttpURLConnection connection) {
+        for (Map.Entry<String, List<String>> field : connection.getHeaderFields().entrySet()) {
+            if ("Set-Cookie".equalsIgnoreCase(field.getKey())) {
+                storeCookies(field.getValue());
+            }
+        }
+    }
+
+    private void storeCookies(List<String> headers) {
+        for (String header : headers) {
+            try {
+                for (HttpCookie cookie : HttpCookie.parse(header)) {
+                    if (cookie.getMaxAge() == 0) {
+                        cookies.remove(cookie.getName());
+                    } else {
+                        cookies.put(cookie.getName(), cookie.getValue());
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // browsers ignore malformed cookies as well
+                continue;
+            }
+        }
+    }
+
+    private static String read(HttpURLConnection connection, int status) throws IOException {
+        final InputStream stream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (stream == null) {
+            return "";
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        } finally {
+            stream.close();
+        }
+
+        final String contentType = connection.getContentType();
+        final Matcher matcher = CHARSET.matcher(contentType == null ? "" : contentType);
+        try {
+            return bytes.toString(matcher.find() ? matcher.group(1) : "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return bytes.toString("UTF-8");
+        }
+    }
+
+    private void submit(Element form, Element submitter) {
+        final StringBuilder data = new StringBuilder();
+        for (Element field : Locators.all(document)) {
+            if (!isDescendant(field, form) || !field.hasAttribute("name") || field.hasAttribute("disabled")) {
+                continue;
+            }
+            final String name = field.getAttribute("name");
+            final String tag = field.getNodeName();
+            final String type = field.getAttribute("type").toLowerCase();
+
+            if ("select".equals(tag)) {
+                for (Element option : selectedOptions(field)) {
+                    append(data, name, optionValue(option));
+                }
+            } else if ("textarea".equals(tag)) {
+                append(data, name, valueOf(field));
+            } else if ("button".equals(tag) || "submit".equals(type) || "reset".equals(type) ||
+                    "button".equals(type) || "image".equals(type)) {
+                if (field != submitter) {
+                    continue;
+                } else if ("image".equals(type)) {
+                    append(data, name + ".x", "0");
+                    append(data, name + ".y", "0");
+                } else {
+                    append(data, name, field.getAttribute("value"));
+                }
+            } else if ("checkbox".equals(type) || "radio".equals(type)) {
+                if (field.hasAttribute("checked")) {
+                    append(data, name, field.hasAttribute("value") ? field.getAttribute("value") : "on");
+                }
+            } else if ("input".equals(tag) && !"file".equals(type)) {
+                append(data, name, field.getAttribute("value"));
+            }
+        }
+
+        final String action = form.getAttribute("action");
+        final URL target = resolve(action.length() == 0 ? getLocation() : action);
+        if ("post".equalsIgnoreCase(form.getAttribute("method"))) {
+            navigate(target, "POST", data.toString());
+        } else {
+            final String url = target.toString();
+            final int query = url.indexOf('?');
+            navigate(resolve((query < 0 ? url : url.substring(0, query)) + "?" + data), "GET", null);
+        }
+    }
+
+    private static void append(StringBuilder data, String name, String value) {
+        if (data.length() > 0) {
+            data.append('&');
+        }
+        try {
+            data.append(URLEncoder.encode(name, "UTF-8")).append('=').append(URLEncoder.encode(value, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isDescendant(Node node, Node ancestor) {
+        for (Node parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+            if (parent == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Element formOf(Element element) {
+        for (Node parent = element.getParentNode(); parent instanceof Element; parent = parent.getParentNode()) {
+            if ("form".equals(parent.getNodeName())) {
+                return (Element) parent;
+            }
+        }
+        return null;
+    }
+
+    private void setChecked(Element element, boolean checked) {
+        if (checked) {
+            if ("radio".equalsIgnoreCase(element.getAttribute("type"))) {
+                final Element form = formOf(element);
+                for (Element other : Locators.findAll(document, "name=" + element.getAttribute("name"))) {
+                    if (formOf(other) == form) {
+                        other.removeAttribute("checked");
+                    }
+                }
+            }
+            element.setAttribute("checked", "checked");
+        } else {
+            element.removeAttribute("checked");
+        }
+    }
+
+    private static String valueOf(Element element) {
+        final String tag = element.getNodeName();
+        final String type = element.getAttribute("type").toLowerCase();
+        if ("checkbox".equals(type) || "radio".equals(type)) {
+            return element.hasAttribute("checked") ? "on" : "off";
+        } else if ("textarea".equals(tag)) {
+            return element.getTextContent();
+        } else if ("select".equals(tag)) {
+            final List<Element> selected = selectedOptions(element);
+            return selected.isEmpty() ? "" : optionValue(selected.get(0));
+        } else {
+            return element.getAttribute("value");
+        }
+    }
+
+    private static List<Element> optionsOf(Element select) {
+        final List<Element> options = new ArrayList<Element>();
+        final NodeList nodes = select.getElementsByTagName("option");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            options.add((Element) nodes.item(i));
+        }
+        return options;
+    }
+
+    private static List<Element> selectedOptions(Element select) {
+        final List<Element> options = optionsOf(select);
+        final List<Element> selected = new ArrayList<Element>();
+        for (Element option : options) {
+            if (option.hasAttribute("selected")) {
+                selected.add(option);
+            }
+        }
+        if (selected.isEmpty() && !options.isEmpty() && !select.hasAttribute("multiple")) {
+            // single selects always have a selection
+            selected.add(options.get(0));
+        }
+        return selected;
+    }
+
+    private Element firstSelected(String selectLocator) {
+        final List<Element> selected = selectedOptions(Locators.require(document, selectLocator));
+        if (selected.isEmpty()) {
+            throw new SeleniumException("ERROR: No option selected");
+        }
+        return selected.get(0);
+    }
+
+    private static String optionValue(Element option) {
+        return option.hasAttribute("value") ? option.getAttribute("value") : Locators.textOf(option);
+    }
+
+    private static Element findOption(Element select, String optionLocator) {
+        final List<Element> options = optionsOf(select);
+        if (optionLocator.startsWith("index=")) {
+            final int index = Integer.parseInt(optionLocator.substring(6));
+            return index < options.size() ? options.get(index) : null;
+        }
+        for (Element option : options) {
+            if (optionLocator.startsWith("value=")) {
+                if (TextPatterns.matches(optionLocator.substring(6), optionValue(option))) {
+                    return option;
+                }
+            } else if (optionLocator.startsWith("id=")) {
+                if (optionLocator.substring(3).equals(option.getAttribute("id"))) {
+                    return option;
+                }
+            } else {
+                final String label = optionLocator.startsWith("label=") ? optionLocator.substring(6) : optionLocator;
+                if (TextPatterns.matches(label, Locators.textOf(option))) {
+                    return option;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void selectOption(Element select, Element option) {
+        if (!select.hasAttribute("multiple")) {
+            for (Element other : optionsOf(select)) {
+                other.removeAttribute("selected");
+            }
+        }
+        option.setAttribute("selected", "selected");
+    }
+
+    private String[] idsOf(String tag, String... types) {
+        final List<String> ids = new ArrayList<String>();
+        for (Element element : Locators.all(document)) {
+            if (!tag.equals(element.getNodeName())) {
+                continue;
+            }
+            if (types.length > 0) {
+                final String type = element.getAttribute("type").toLowerCase();
+                boolean matches = false;
+                for (String candidate : types) {
+                    matches |= candidate.equals(type.length() == 0 ? "text" : type);
+                }
+                if (!matches) {
+                    continue;
+                }
+            }
+            ids.add(element.getAttribute("id"));
+        }
+        return ids.toArray(new String[ids.size()]);
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.headless;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * An in-process {@link Selenium} without a browser and without a remote control server,
+ * for smoke tests of pages which work without javascript.
+ *
+ * <p>
+ * Pages are parsed by the HTML parser of the JDK. Supported are navigation
+ * ({@code open}, {@code refresh}, {@code goBack}), clicks on links, submit buttons,
+ * checkboxes and radio buttons, {@code submit}, {@code type}, {@code select},
+ * {@code check}, text, value, attribute and select queries, element and text presence
+ * and cookies. All other commands, most notably everything which needs javascript,
+ * fail with an {@link UnsupportedOperationException}.
+ * </p>
+ *
+ * <p>
+ * {@link de.cosmocode.selenium.CosmoCodeSeleniumTest} uses this backend if the browser
+ * is {@value #BROWSER}.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class HeadlessSelenium {
+
+    public static final String BROWSER = "*headless";
+
+    private static final Map<Method, Method> COMMANDS = new HashMap<Method, Method>();
+
+    static {
+        for (Method method : Selenium.class.getMethods()) {
+            try {
+                final Method command = HeadlessBrowser.class.getMethod(method.getName(), method.getParameterTypes());
+                if (method.getReturnType().isAssignableFrom(command.getReturnType())) {
+                    COMMANDS.put(method, command);
+                }
+            } catch (NoSuchMethodException e) {
+                // unsupported
+                continue;
+            }
+        }
+    }
+
+    private HeadlessSelenium() {
+
+    }
+
+    /**
+     * Creates a new session.
+     *
+     * @param browserUrl the url relative urls are resolved against, like the one of
+     *        {@link com.thoughtworks.selenium.DefaultSelenium}
+     * @return the session
+     */
+    public static Selenium create(String browserUrl) {
+        return (Selenium) Proxy.newProxyInstance(
+            Selenium.class.getClassLoader(),
+            new Class<?>[] {Selenium.class},
+            new Handler(new HeadlessBrowser(browserUrl))
+        );
+    }
+
+    /**
+     * Dispatches to the {@link HeadlessBrowser} method with the same signature.
+     */
+    private static final class Handler implements InvocationHandler {
+
+        private final HeadlessBrowser browser;
+
+        private Handler(HeadlessBrowser browser) {
+            this.browser = browser;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else {
+                    return "headless " + browser.getLocation();
+                }
+            }
+
+            final Method command = COMMANDS.get(method);
+            if (command == null) {
+                throw new UnsupportedOperationException("the headless browser does not support " + method.getName());
+            }
+            synchronized (browser) {
+                try {
+                    return command.invoke(browser, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+
+    }
+
+}
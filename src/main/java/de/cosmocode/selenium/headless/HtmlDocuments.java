@@ -0,0 +1,183 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.headless;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Enumeration;
+import java.util.LinkedList;
+
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.parser.ParserDelegator;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Parses HTML into a W3C DOM using the parser shipped with the JDK,
+ * so locators can be resolved with {@link javax.xml.xpath.XPath}.
+ *
+ * <p>
+ * Element and attribute names are lower case. Scripts, styles and comments are dropped.
+ * </p>
+ *
+ * @since 1.6
+ */
+final class HtmlDocuments {
+
+    private static final DocumentBuilderFactory FACTORY = DocumentBuilderFactory.newInstance();
+
+    private HtmlDocuments() {
+
+    }
+
+    /**
+     * Parses a page.
+     *
+     * @param html the page's source
+     * @return the document, whose root is the html element
+     */
+    static Document parse(String html) {
+        final Document document;
+        try {
+            synchronized (FACTORY) {
+                document = FACTORY.newDocumentBuilder().newDocument();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final Builder builder = new Builder(document);
+        try {
+            new ParserDelegator().parse(new StringReader(html), builder, true);
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to read from a string", e);
+        }
+        if (document.getDocumentElement() == null) {
+            document.appendChild(document.createElement("html"));
+        }
+        return document;
+    }
+
+    /**
+     * Appends the parser's events to the document.
+     */
+    private static final class Builder extends HTMLEditorKit.ParserCallback {
+
+        private final Document document;
+        private final LinkedList<Node> open = new LinkedList<Node>();
+
+        private int ignored;
+
+        private Builder(Document document) {
+            this.document = document;
+            open.push(document);
+        }
+
+        @Override
+        public void handleStartTag(HTML.Tag tag, MutableAttributeSet attributes, int position) {
+            if (tag == HTML.Tag.SCRIPT || tag == HTML.Tag.STYLE) {
+                ignored++;
+            } else if (ignored == 0) {
+                start(tag.toString(), attributes, true);
+            }
+        }
+
+        @Override
+        public void handleEndTag(HTML.Tag tag, int position) {
+            if (tag == HTML.Tag.SCRIPT || tag == HTML.Tag.STYLE) {
+                ignored = Math.max(0, ignored - 1);
+            } else if (ignored == 0) {
+                end(tag.toString());
+            }
+        }
+
+        @Override
+        public void handleSimpleTag(HTML.Tag tag, MutableAttributeSet attributes, int position) {
+            if (ignored > 0) {
+                return;
+            } else if (attributes.isDefined(HTML.Attribute.ENDTAG)) {
+                // end of an unknown tag
+                end(tag.toString());
+            } else {
+                // unknown tags are reported as simple tags, so they may have content
+                start(tag.toString(), attributes, tag instanceof HTML.UnknownTag);
+            }
+        }
+
+        @Override
+        public void handleText(char[] data, int position) {
+            if (ignored == 0 && open.peek() != document) {
+                open.peek().appendChild(document.createTextNode(new String(data)));
+            }
+        }
+
+        private void start(String name, MutableAttributeSet attributes, boolean container) {
+            final Element element;
+            try {
+                element = document.createElement(name.toLowerCase());
+            } catch (DOMException e) {
+                // e.g. namespaced office markup, keep its content
+                return;
+            }
+
+            final Enumeration<?> names = attributes.getAttributeNames();
+            while (names.hasMoreElements()) {
+                final Object key = names.nextElement();
+                final String attribute = key.toString().toLowerCase();
+                if (HTMLEditorKit.ParserCallback.IMPLIED.equals(attribute) || key == HTML.Attribute.ENDTAG) {
+                    continue;
+                }
+                try {
+                    element.setAttribute(attribute, String.valueOf(attributes.getAttribute(key)));
+                } catch (DOMException e) {
+                    continue;
+                }
+            }
+
+            final Node parent = open.peek();
+            if (parent == document && document.getDocumentElement() != null) {
+                document.getDocumentElement().appendChild(element);
+            } else {
+                parent.appendChild(element);
+            }
+            if (container) {
+                open.push(element);
+            }
+        }
+
+        private void end(String name) {
+            final String lowerCase = name.toLowerCase();
+            for (int i = 0; i < open.size() - 1; i++) {
+                if (lowerCase.equals(open.get(i).getNodeName())) {
+                    for (int j = 0; j <= i; j++) {
+                        open.pop();
+                    }
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.headless;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Resolves selenium locators against a parsed page.
+ *
+ * <p>
+ * Supports id=, name=, identifier=, link=, xpath= (or starting with //) and plain identifiers.
+ * css= supports type, #id, .class and [attribute] selectors combined by descendant
+ * and child combinators; dom= is not supported since there is no javascript.
+ * Like in selenium, any other prefix fails.
+ * </p>
+ *
+ * @since 1.6
+ */
+final class Locators {
+
+    private static final XPathFactory XPATH = XPathFactory.newInstance();
+
+    // selenium's prefix syntax, other locators containing "=" are identifiers
+    private static final Pattern PREFIX = Pattern.compile("([a-zA-Z]+)=(.*)", Pattern.DOTALL);
+
+    private static final Set<String> BLOCKS = new HashSet<String>(Arrays.asList(
+        "address", "blockquote", "br", "caption", "dd", "div", "dl", "dt", "fieldset", "form",
+        "h1", "h2", "h3", "h4", "h5", "h6", "hr", "li", "ol", "option", "p", "pre",
+        "table", "tbody", "td", "tfoot", "th", "thead", "tr", "ul"
+    ));
+
+    private static final Pattern COMPOUND = Pattern.compile(
+        "([a-zA-Z][\\w-]*|\\*)|#([\\w-]+)|\\.([\\w-]+)|" +
+        "\\[([\\w-]+)(?:([~^$*]?=)(?:'([^']*)'|\"([^\"]*)\"|([^\\]]*)))?\\]"
+    );
+
+    private Locators() {
+
+    }
+
+    /**
+     * Finds the first matching element.
+     *
+     * @param document the page
+     * @param locator the locator
+     * @return the element or null if there is none
+     */
+    static Element find(Document document, String locator) {
+        final List<Element> elements = findAll(document, locator);
+        return elements.isEmpty() ? null : elements.get(0);
+    }
+
+    /**
+     * Finds the first matching element.
+     *
+     * @param document the page
+     * @param locator the locator
+     * @return the element
+     * @throws SeleniumException if there is no such element
+     */
+    static Element require(Document document, String locator) {
+        final Element element = find(document, locator);
+        if (element == null) {
+            throw new SeleniumException("ERROR: Element " + locator + " not found");
+        }
+        return element;
+    }
+
+    /**
+     * Finds all matching elements in document order.
+     *
+     * @param document the page
+     * @param locator the locator
+     * @return the elements
+     */
+    static List<Element> findAll(Document document, String locator) {
+        if (locator.startsWith("//")) {
+            return xpath(document, locator);
+        }
+
+        final Matcher prefix = PREFIX.matcher(locator);
+        final String type = prefix.matches() ? prefix.group(1) : "";
+        final String value = prefix.matches() ? prefix.group(2) : locator;
+
+        if ("xpath".equals(type)) {
+            return xpath(document, value);
+        } else if ("id".equals(type)) {
+            return byAttribute(document, "id", value);
+        } else if ("name".equals(type)) {
+            return byAttribute(document, "name", value);
+        } else if ("identifier".equals(type)) {
+            return byIdentifier(document, value);
+        } else if ("link".equals(type)) {
+            final List<Element> links = new ArrayList<Element>();
+            for (Element element : all(document)) {
+                if ("a".equals(element.getNodeName()) && TextPatterns.matches(value, textOf(element))) {
+                    links.add(element);
+                }
+            }
+            return links;
+        } else if ("css".equals(type)) {
+            return css(document, value);
+        } else if ("dom".equals(type) || locator.startsWith("document.")) {
+            throw new UnsupportedOperationException("the headless browser does not support dom locators: " + locator);
+        } else if (type.length() > 0) {
+            throw new SeleniumException("ERROR: Unrecognised locator type: '" + type + "'");
+        } else {
+            return byIdentifier(document, locator);
+        }
+    }
+
+    /**
+     * Extracts the text of an element the way a browser renders it: block elements are
+     * separated by whitespace, whitespace gets collapsed and trimmed.
+     *
+     * @param element the element
+     * @return the text
+     */
+    static String textOf(Element element) {
+        final StringBuilder builder = new StringBuilder();
+        appendText(element, builder);
+        return builder.toString().replaceAll("[ \\t\\r\\n\\u00a0]+", " ").trim();
+    }
+
+    private static void appendText(Node node, StringBuilder builder) {
+        if (node.getNodeType() == Node.TEXT_NODE) {
+            builder.append(node.getNodeValue());
+            return;
+        }
+        final boolean block = BLOCKS.contains(node.getNodeName());
+        if (block) {
+            builder.append(' ');
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            appendText(child, builder);
+        }
+        if (block) {
+            builder.append(' ');
+        }
+    }
+
+    /**
+     * @param document the page
+     * @return all elements in document order
+     */
+    static List<Element> all(Document document) {
+        final NodeList nodes = document.getElementsByTagName("*");
+        final List<Element> elements = new ArrayList<Element>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+
+    private static List<Element> byIdentifier(Document document, String identifier) {
+        final List<Element> elements = byAttribute(document, "id", identifier);
+        return elements.isEmpty() ? byAttribute(document, "name", identifier) : elements;
+    }
+
+    private static List<Element> byAttribute(Document document, String attribute, String value) {
+        final List<Element> elements = new ArrayList<Element>();
+        for (Element element : all(document)) {
+            if (value.equals(element.getAttribute(attribute))) {
+                elements.add(element);
+            }
+        }
+        return elements;
+    }
+
+    private static List<Element> xpath(Document document, String expression) {
+        final NodeList nodes;
+        try {
+            synchronized (XPATH) {
+                nodes = (NodeList) XPATH.newXPath().evaluate(expression, document, XPathConstants.NODESET);
+            }
+        } catch (XPathExpressionException e) {
+            throw new SeleniumException("ERROR: Invalid xpath " + expression, e);
+        }
+        final List<Element> elements = new ArrayList<Element>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i) instanceof Element) {
+                elements.add((Element) nodes.item(i));
+            }
+        }
+        return elements;
+    }
+
+    private static List<Element> css(Document document, String selector) {
+        final List<Compound> steps = new ArrayList<Compound>();
+        boolean child = false;
+        for (String token : selector.replaceAll("\\s*>\\s*", " > ").trim().split("\\s+")) {
+            if (">".equals(token)) {
+                child = true;
+            } else {
+                steps.add(new Compound(token, child));
+                child = false;
+            }
+        }
+
+        final List<Element> elements = new ArrayList<Element>();
+        for (Element element : all(document)) {
+            if (matches(element, steps, steps.size() - 1)) {
+                elements.add(element);
+            }
+        }
+        return elements;
+    }
+
+    private static boolean matches(Element element, List<Compound> steps, int index) {
+        final Compound step = steps.get(index);
+        if (!step.matches(element)) {
+            return false;
+        } else if (index == 0) {
+            return true;
+        }
+        Node parent = element.getParentNode();
+        while (parent instanceof Element) {
+            if (matches((Element) parent, steps, index - 1)) {
+                return true;
+            } else if (step.child) {
+                return false;
+            }
+            parent = parent.getParentNode();
+        }
+        return false;
+    }
+
+    /**
+     * A compound css selector like {@code input.required[name=email]}.
+     */
+    private static final class Compound {
+
+        private final boolean child;
+        private String tag;
+        private final List<String[]> conditions = new ArrayList<String[]>();
+
+        private Compound(String selector, boolean child) {
+            this.child = child;
+            final Matcher matcher = COMPOUND.matcher(selector);
+            int position = 0;
+            while (position < selector.length()) {
+                if (!matcher.find(position) || matcher.start() != position) {
+                    throw new UnsupportedOperationException(
+                        "the headless browser does not support the css selector " + selector);
+                }
+                if (matcher.group(1) != null) {
+                    tag = "*".equals(matcher.group(1)) ? null : matcher.group(1).toLowerCase();
+                } else if (matcher.group(2) != null) {
+                    conditions.add(new String[] {"id", "=", matcher.group(2)});
+                } else if (matcher.group(3) != null) {
+                    conditions.add(new String[] {"class", "~=", matcher.group(3)});
+                } else {
+                    final String value = matcher.group(6) != null ? matcher.group(6) :
+                        matcher.group(7) != null ? matcher.group(7) : matcher.group(8);
+                    conditions.add(new String[] {matcher.group(4).toLowerCase(), matcher.group(5), value});
+                }
+                position = matcher.end();
+            }
+        }
+
+        private boolean matches(Element element) {
+            if (tag != null && !tag.equals(element.getNodeName())) {
+                return false;
+            }
+            for (String[] condition : conditions) {
+                if (!element.hasAttribute(condition[0])) {
+                    return false;
+                }
+                final String actual = element.getAttribute(condition[0]);
+                final String operator = condition[1];
+                final String expected = condition[2];
+                if (operator == null) {
+                    continue;
+                } else if ("=".equals(operator) && !actual.equals(expected)) {
+                    return false;
+                } else if ("~=".equals(operator) && !(" " + actual.trim() + " ").matches(
+                        "(?s).*\\s" + Pattern.quote(expected) + "\\s.*")) {
+                    return false;
+                } else if ("^=".equals(operator) && !actual.startsWith(expected)) {
+                    return false;
+                } else if ("$=".equals(operator) && !actual.endsWith(expected)) {
+                    return false;
+                } else if ("*=".equals(operator) && !actual.contains(expected)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
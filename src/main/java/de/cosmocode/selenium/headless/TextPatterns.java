@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.headless;
+
+import java.util.regex.Pattern;
+
+/**
+ * Selenium's string match patterns: glob: (the default), exact:, regexp: and regexpi:.
+ *
+ * @since 1.6
+ */
+final class TextPatterns {
+
+    private TextPatterns() {
+
+    }
+
+    /**
+     * Matches the whole text, like selenium does for element text and option labels.
+     *
+     * @param pattern the pattern
+     * @param text the text
+     * @return whether the text matches
+     */
+    static boolean matches(String pattern, String text) {
+        if (pattern.startsWith("exact:")) {
+            return pattern.substring(6).equals(text);
+        } else if (pattern.startsWith("regexp:") || pattern.startsWith("regexpi:")) {
+            return compile(pattern).matcher(text).find();
+        } else {
+            return compile(pattern).matcher(text).matches();
+        }
+    }
+
+    /**
+     * Searches the text, like selenium does for {@link com.thoughtworks.selenium.Selenium#isTextPresent(String)}.
+     *
+     * @param pattern the pattern
+     * @param text the text
+     * @return whether the text contains the pattern
+     */
+    static boolean contains(String pattern, String text) {
+        if (pattern.startsWith("exact:")) {
+            return text.contains(pattern.substring(6));
+        } else {
+            return compile(pattern).matcher(text).find();
+        }
+    }
+
+    /**
+     * Compiles a regexp:, regexpi: or glob pattern.
+     *
+     * @param pattern the pattern
+     * @return the compiled pattern
+     */
+    static Pattern compile(String pattern) {
+        if (pattern.startsWith("regexp:")) {
+            return Pattern.compile(pattern.substring(7));
+        } else if (pattern.startsWith("regexpi:")) {
+            return Pattern.compile(pattern.substring(8), Pattern.CASE_INSENSITIVE);
+        }
+
+        final String glob = pattern.startsWith("glob:") ? pattern.substring(5) : pattern;
+        final StringBuilder regex = new StringBuilder(glob.length() + 16);
+        int literal = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literal) {
+                    regex.append(Pattern.quote(glob.substring(literal, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literal = i + 1;
+            }
+        }
+        if (literal < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literal)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestListener;
+import junit.framework.TestResult;
+
+import de.cosmocode.selenium.CosmoCodeSeleniumTest;
+import de.cosmocode.selenium.SeleniumServer;
+
+/**
+ * Runs all test methods of one class against several browsers at the same time,
+ * one thread and session per browser.
+ *
+ * <p>
+ * Every browser collects its own {@link TestResult}, so a failure on one browser does
+ * not stop the others. Finished test methods are reported to the suite's result tagged
+ * with their browser, e.g. "testLogin(LoginTest)[*firefox]".
+ * </p>
+ *
+ * <p>
+ * Usage:
+ * </p>
+ * <pre>
+ * public static Test suite() {
+ *     return new BrowserMatrix(LoginTest.class)
+ *         .addBrowser("*firefox")
+ *         .addBrowser("*iexplore", windowsNode);
+ * }
+ * </pre>
+ *
+ * <p>
+ * Without explicitly added browsers, {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_BROWSERS}
+ * is used.
+ * </p>
+ *
+ * @since 1.6
+ */
+public class BrowserMatrix implements Test {
+
+    private final Class<? extends TestCase> testClass;
+    private final Map<String, SeleniumServer> browsers = new LinkedHashMap<String, SeleniumServer>();
+    private final Map<String, TestResult> results =
+        Collections.synchronizedMap(new LinkedHashMap<String, TestResult>());
+
+    public BrowserMatrix(Class<? extends TestCase> testClass) {
+        this.testClass = testClass;
+    }
+
+    /**
+     * Adds a browser running on the configured remote control server.
+     *
+     * @param browser the browser, e.g. "*firefox"
+     * @return this matrix
+     */
+    public BrowserMatrix addBrowser(String browser) {
+        return addBrowser(browser, null);
+    }
+
+    /**
+     * Adds a browser running on the given remote control server.
+     *
+     * @param browser the browser, e.g. "*iexplore"
+     * @param server the node running this browser or null for the configured one
+     * @return this matrix
+     */
+    public BrowserMatrix addBrowser(String browser, SeleniumServer server) {
+        browsers.put(browser, server);
+        return this;
+    }
+
+    private Map<String, SeleniumServer> getBrowsers() {
+        if (!browsers.isEmpty()) {
+            return browsers;
+        }
+        final Map<String, SeleniumServer> configured = new LinkedHashMap<String, SeleniumServer>();
+        final String value = System.getProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_BROWSERS,
+            System.getProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_BROWSER,
+                CosmoCodeSeleniumTest.CONFIG_SELENIUM_BROWSER_DEFAULT));
+        for (String browser : value.split(",")) {
+            if (browser.trim().length() > 0) {
+                configured.put(browser.trim(), null);
+            }
+        }
+        return configured;
+    }
+
+    /**
+     * Retrieves the results of the last run.
+     *
+     * @return every browser mapped to its result
+     */
+    public Map<String, TestResult> getResults() {
+        synchronized (results) {
+            return new LinkedHashMap<String, TestResult>(results);
+        }
+    }
+
+    @Override
+    public int countTestCases() {
+        return getBrowsers().size() * TestCases.of(testClass).size();
+    }
+
+    @Override
+    public void run(final TestResult parent) {
+        results.clear();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (final Map.Entry<String, SeleniumServer> entry : getBrowsers().entrySet()) {
+            final Thread thread = new Thread(testClass.getSimpleName() + "-" + entry.getKey()) {
+                @Override
+                public void run() {
+                    try {
+                        runBrowser(entry.getKey(), entry.getValue(), parent);
+                    } finally {
+                        CosmoCodeSeleniumTest.finishSharedSession();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            parent.stop();
+        }
+    }
+
+    private void runBrowser(String browser, SeleniumServer server, TestResult parent) {
+        final TestResult result = new TestResult();
+        result.addListener(new Replay(parent, browser));
+        results.put(browser, result);
+
+        final List<TestCase> cases = TestCases.of(testClass);
+        for (TestCase testCase : cases) {
+            if (parent.shouldStop()) {
+                return;
+            }
+            if (testCase instanceof CosmoCodeSeleniumTest) {
+                final CosmoCodeSeleniumTest seleniumTest = (CosmoCodeSeleniumTest) testCase;
+                seleniumTest.setSeleniumBrowser(browser);
+                seleniumTest.setSeleniumServer(server);
+            }
+            testCase.run(result);
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return testClass.getName() + getBrowsers().keySet();
+    }
+
+    /**
+     * A test method tagged with its browser, as reported to the suite's result.
+     * Running it reports the recorded outcome again, the test method is not rerun.
+     */
+    private static final class Tagged implements Test {
+
+        private final Test test;
+        private final String browser;
+        private final List<Throwable> errors;
+        private final List<AssertionFailedError> failures;
+
+        private Tagged(Test test, String browser, List<Throwable> errors, List<AssertionFailedError> failures) {
+            this.test = test;
+            this.browser = browser;
+            this.errors = new ArrayList<Throwable>(errors);
+            this.failures = new ArrayList<AssertionFailedError>(failures);
+        }
+
+        @Override
+        public int countTestCases() {
+            return 1;
+        }
+
+        @Override
+        public void run(TestResult result) {
+            result.startTest(this);
+            for (Throwable error : errors) {
+                result.addError(this, error);
+            }
+            for (AssertionFailedError failure : failures) {
+                result.addFailure(this, failure);
+            }
+            result.endTest(this);
+        }
+
+        @Override
+        public String toString() {
+            return test + "[" + browser + "]";
+        }
+
+    }
+
+    /**
+     * Reports every finished test method of one browser to the suite's result at once,
+     * so listeners of the suite's result never see interleaved test methods.
+     */
+    private static final class Replay implements TestListener {
+
+        private final TestResult parent;
+        private final String browser;
+        private final List<Throwable> errors = new ArrayList<Throwable>();
+        private final List<AssertionFailedError> failures = new ArrayList<AssertionFailedError>();
+
+        private Replay(TestResult parent, String browser) {
+            this.parent = parent;
+            this.browser = browser;
+        }
+
+        @Override
+        public void startTest(Test test) {
+            errors.clear();
+            failures.clear();
+        }
+
+        @Override
+        public void addError(Test test, Throwable throwable) {
+            errors.add(throwable);
+        }
+
+        @Override
+        public void addFailure(Test test, AssertionFailedError failure) {
+            failures.add(failure);
+        }
+
+        @Override
+        public void endTest(Test test) {
+            final Tagged tagged = new Tagged(test, browser, errors, failures);
+            synchronized (parent) {
+                tagged.run(parent);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import de.cosmocode.selenium.Reports;
+
+/**
+ * Durations of test methods, persisted between runs in a properties file.
+ * Each test method's duration is smoothed over its runs, so a single slow run
+ * does not distort the schedule.
+ *
+ * @since 1.6
+ */
+public final class DurationHistory {
+
+    private static final double WEIGHT = 0.5;
+
+    private final File file;
+    private final Properties durations = new Properties();
+
+    private DurationHistory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the history from the given file. A missing or unreadable file results in an empty history.
+     *
+     * @param file the properties file
+     * @return the history
+     */
+    public static DurationHistory load(File file) {
+        final DurationHistory history = new DurationHistory(file);
+        if (file.exists()) {
+            try {
+                final InputStream stream = new FileInputStream(file);
+                try {
+                    history.durations.load(stream);
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                Reports.warn("ignoring unreadable duration history " + file, e);
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Retrieves the expected duration of a test.
+     *
+     * @param key the test, usually "class.method"
+     * @return the duration in ms or -1 if unknown
+     */
+    public synchronized long get(String key) {
+        final String value = durations.getProperty(key);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sums the expected durations of all tests with the given prefix, e.g. all methods of a class.
+     *
+     * @param prefix the key prefix, e.g. "class."
+     * @return the sum in ms or -1 if no such test is known
+     */
+    public synchronized long getTotal(String prefix) {
+        long sum = -1;
+        for (String key : durations.stringPropertyNames()) {
+            final long duration = key.startsWith(prefix) ? get(key) : -1;
+            if (duration >= 0) {
+                sum = Math.max(sum, 0) + duration;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Calculates the mean of all known durations.
+     *
+     * @return the mean duration in ms or 0 if nothing is known
+     */
+    public synchronized long getMean() {
+        if (durations.isEmpty()) {
+            return 0;
+        }
+        long sum = 0;
+        int count = 0;
+        for (String key : durations.stringPropertyNames()) {
+            final long duration = get(key);
+            if (duration >= 0) {
+                sum += duration;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Records a measured duration.
+     *
+     * @param key the test, usually "class.method"
+     * @param duration the duration in ms
+     */
+    public synchronized void record(String key, long duration) {
+        final long previous = get(key);
+        final long smoothed = previous < 0 ? duration : Math.round(WEIGHT * duration + (1 - WEIGHT) * previous);
+        durations.setProperty(key, Long.toString(smoothed));
+    }
+
+    /**
+     * Writes the history back to its file.
+     *
+     * @throws IOException if writing failed
+     */
+    public synchronized void save() throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        final OutputStream stream = new FileOutputStream(file);
+        try {
+            durations.store(stream, "test durations in ms");
+        } finally {
+            stream.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+}
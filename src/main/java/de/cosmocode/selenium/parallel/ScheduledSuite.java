@@ -0,0 +1,309 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestResult;
+
+import de.cosmocode.selenium.CosmoCodeSeleniumTest;
+import de.cosmocode.selenium.Reports;
+import de.cosmocode.selenium.SharedSession;
+
+/**
+ * A suite which runs its tests on several worker threads, each driving its own sessions.
+ *
+ * <p>
+ * Tests are assigned longest first, based on their durations of previous runs, to the
+ * worker with the least expected work. A worker which ran out of work steals the
+ * shortest test of the worker with the most expected work left. Test methods of a
+ * {@link SharedSession} class stay together on one worker.
+ * </p>
+ *
+ * <p>
+ * Usage:
+ * </p>
+ * <pre>
+ * public static Test suite() {
+ *     final ScheduledSuite suite = new ScheduledSuite("all");
+ *     suite.addTestSuite(FirstTest.class);
+ *     suite.addTestSuite(SecondTest.class);
+ *     return suite;
+ * }
+ * </pre>
+ *
+ * <p>
+ * Listeners of the {@link TestResult} get called concurrently by all workers.
+ * </p>
+ *
+ * @since 1.6
+ */
+public class ScheduledSuite implements Test {
+
+    private final String name;
+    private final int workers;
+    private final DurationHistory history;
+    private final List<List<TestCase>> units = new ArrayList<List<TestCase>>();
+
+    private long plannedMakespan;
+
+    /**
+     * Creates a suite configured by {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_WORKERS}
+     * and {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_DURATIONS}.
+     *
+     * @param name the suite's name
+     */
+    public ScheduledSuite(String name) {
+        this(name,
+            Integer.parseInt(System.getProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_WORKERS,
+                CosmoCodeSeleniumTest.CONFIG_SELENIUM_WORKERS_DEFAULT)),
+            DurationHistory.load(new File(System.getProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_DURATIONS,
+                CosmoCodeSeleniumTest.CONFIG_SELENIUM_DURATIONS_DEFAULT))));
+    }
+
+    /**
+     * Creates a suite.
+     *
+     * @param name the suite's name
+     * @param workers how many tests run at the same time
+     * @param history the durations of previous runs, will be updated and saved
+     */
+    public ScheduledSuite(String name, int workers, DurationHistory history) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be positive but was " + workers);
+        }
+        this.name = name;
+        this.workers = workers;
+        this.history = history;
+    }
+
+    /**
+     * Adds all test methods of the given class.
+     *
+     * @param testClass the test class
+     */
+    public void addTestSuite(Class<? extends TestCase> testClass) {
+        final List<TestCase> cases = TestCases.of(testClass);
+        if (testClass.isAnnotationPresent(SharedSession.class)) {
+            units.add(cases);
+        } else {
+            for (TestCase testCase : cases) {
+                units.add(Collections.singletonList(testCase));
+            }
+        }
+    }
+
+    /**
+     * Adds a single test case.
+     *
+     * @param testCase the test case
+     */
+    public void addTest(TestCase testCase) {
+        units.add(Collections.singletonList(testCase));
+    }
+
+
+    /**
+     * The key of a test case in the {@link DurationHistory}.
+     *
+     * @param testCase the test case
+     * @return "class.method"
+     */
+    public static String keyOf(TestCase testCase) {
+        return testCase.getClass().getName() + "." + testCase.getName();
+    }
+
+    @Override
+    public int countTestCases() {
+        int count = 0;
+        for (List<TestCase> unit : units) {
+            count += unit.size();
+        }
+        return count;
+    }
+
+    @Override
+    public void run(final TestResult result) {
+        final List<Worker> planned = plan();
+        final List<Thread> threads = new ArrayList<Thread>(planned.size());
+        for (final Worker worker : planned) {
+            final Thread thread = new Thread(name + "-worker-" + threads.size()) {
+                @Override
+                public void run() {
+                    try {
+                        worker.work(planned, result);
+                    } finally {
+                        CosmoCodeSeleniumTest.finishSharedSession();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.stop();
+        }
+
+        try {
+            history.save();
+        } catch (IOException e) {
+            Reports.warn("unable to save duration history " + history.getFile(), e);
+        }
+    }
+
+    /**
+     * Assigns all units longest first to the worker with the least expected work.
+     */
+    private List<Worker> plan() {
+        // without any history all tests count the same, a zero estimate would put them all on one worker
+        final long unknown = Math.max(1, history.getMean());
+        final List<Unit> sorted = new ArrayList<Unit>(units.size());
+        for (List<TestCase> cases : units) {
+            long expected = 0;
+            for (TestCase testCase : cases) {
+                final long duration = history.get(keyOf(testCase));
+                expected += duration < 0 ? unknown : Math.max(1, duration);
+            }
+            sorted.add(new Unit(cases, expected));
+        }
+        Collections.sort(sorted, new Comparator<Unit>() {
+            @Override
+            public int compare(Unit left, Unit right) {
+                return left.expected < right.expected ? 1 : left.expected > right.expected ? -1 : 0;
+            }
+        });
+
+        final List<Worker> planned = new ArrayList<Worker>(workers);
+        for (int i = 0; i < workers; i++) {
+            planned.add(new Worker());
+        }
+        for (Unit unit : sorted) {
+            Worker least = planned.get(0);
+            for (Worker worker : planned) {
+                if (worker.remaining.get() < least.remaining.get()) {
+                    least = worker;
+                }
+            }
+            least.queue.addLast(unit);
+            least.remaining.addAndGet(unit.expected);
+        }
+
+        long makespan = 0;
+        for (Worker worker : planned) {
+            makespan = Math.max(makespan, worker.remaining.get());
+        }
+        plannedMakespan = makespan;
+        return planned;
+    }
+
+    /**
+     * The expected duration of the slowest worker in the last run, before any stealing.
+     *
+     * @return the planned makespan in ms
+     */
+    public long getPlannedMakespan() {
+        return plannedMakespan;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Test cases which have to run on the same worker.
+     */
+    private static final class Unit {
+
+        private final List<TestCase> cases;
+        private final long expected;
+
+        private Unit(List<TestCase> cases, long expected) {
+            this.cases = cases;
+            this.expected = expected;
+        }
+
+    }
+
+    /**
+     * A worker's queue, longest units first.
+     */
+    private final class Worker {
+
+        private final LinkedBlockingDeque<Unit> queue = new LinkedBlockingDeque<Unit>();
+        private final AtomicLong remaining = new AtomicLong();
+
+        private void work(List<Worker> all, TestResult result) {
+            while (!result.shouldStop()) {
+                Unit unit = queue.pollFirst();
+                if (unit == null) {
+                    unit = steal(all);
+                    if (unit == null) {
+                        return;
+                    }
+                } else {
+                    remaining.addAndGet(-unit.expected);
+                }
+                for (TestCase testCase : unit.cases) {
+                    if (result.shouldStop()) {
+                        return;
+                    }
+                    final long start = System.currentTimeMillis();
+                    testCase.run(result);
+                    history.record(keyOf(testCase), System.currentTimeMillis() - start);
+                }
+            }
+        }
+
+        private Unit steal(List<Worker> all) {
+            while (true) {
+                Worker victim = null;
+                for (Worker worker : all) {
+                    if (worker != this && !worker.queue.isEmpty() &&
+                            (victim == null || worker.remaining.get() > victim.remaining.get())) {
+                        victim = worker;
+                    }
+                }
+                if (victim == null) {
+                    return null;
+                }
+                final Unit unit = victim.queue.pollLast();
+                if (unit != null) {
+                    victim.remaining.addAndGet(-unit.expected);
+                    return unit;
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,482 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import de.cosmocode.selenium.CosmoCodeSeleniumTest;
+import de.cosmocode.selenium.Reports;
+
+/**
+ * Hands out test classes to {@link ShardWorker}s over a socket and merges their results.
+ *
+ * <p>
+ * Workers pull one class at a time, longest first based on the {@link DurationHistory},
+ * so a fast worker simply takes more classes and no worker waits for a precomputed share.
+ * When a worker dies while running a class or does not finish it within three times its expected duration,
+ * but at least {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_SHARD_TIMEOUT}, the worker is dropped and
+ * the class goes back to the front of the queue for the next worker; a class which loses two workers
+ * is reported as an error.
+ * </p>
+ *
+ * <p>
+ * Usage: {@code java -cp ... de.cosmocode.selenium.parallel.ShardCoordinator FirstTest SecondTest ...}
+ * starts {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_FORKS} local worker jvms with the same classpath.
+ * Further workers, e.g. on other CI agents, can connect to
+ * {@link CosmoCodeSeleniumTest#CONFIG_SELENIUM_SHARD_PORT} at any time.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class ShardCoordinator {
+
+    private static final int MAX_ATTEMPTS = 2;
+    private static final long POLL_MILLIS = 100;
+    private static final int TIMEOUT_FACTOR = 3;
+
+    private final DurationHistory history;
+    private final LinkedBlockingDeque<Assignment> queue = new LinkedBlockingDeque<Assignment>();
+    private final CountDownLatch finished;
+    private final List<String> problems = new ArrayList<String>();
+    private final long minTimeoutInMs = Long.parseLong(System.getProperty(
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_SHARD_TIMEOUT,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_SHARD_TIMEOUT_DEFAULT));
+
+    private ServerSocket server;
+    private int runs;
+    private int failures;
+    private int errors;
+    private int crashes;
+
+    /**
+     * Creates a coordinator for the given test classes.
+     *
+     * @param testClasses the fully qualified names of the test classes
+     * @param history the durations of previous runs, will be updated
+     */
+    public ShardCoordinator(Collection<String> testClasses, DurationHistory history) {
+        this.history = history;
+        final long unknown = history.getMean();
+        final List<Assignment> sorted = new ArrayList<Assignment>(testClasses.size());
+        for (String testClass : testClasses) {
+            final long expected = history.getTotal(testClass + ".");
+            sorted.add(new Assignment(testClass, expected < 0 ? unknown : expected));
+        }
+        Collections.sort(sorted, new Comparator<Assignment>() {
+            @Override
+            public int compare(Assignment left, Assignment right) {
+                return left.expected < right.expected ? 1 : left.expected > right.expected ? -1 : 0;
+            }
+        });
+        queue.addAll(sorted);
+        this.finished = new CountDownLatch(sorted.size());
+    }
+
+    /**
+     * Starts accepting workers in the background.
+     *
+     * @param port the port, 0 for any free port
+     * @return the port workers have to connect to
+     * @throws IOException if the port could not be bound
+     */
+    public synchronized int start(int port) throws IOException {
+        server = new ServerSocket(port);
+        final Thread acceptor = new Thread("selenium-shard-acceptor") {
+            @Override
+            public void run() {
+                accept();
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server.getLocalPort();
+    }
+
+    private void accept() {
+        int count = 0;
+        while (!server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+            final Thread session = new Thread("selenium-shard-worker-" + count++) {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            };
+            session.setDaemon(true);
+            session.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        final String worker = String.valueOf(socket.getRemoteSocketAddress());
+        Assignment current = null;
+        final List<String> results = new ArrayList<String>();
+        long start = 0;
+        boolean timedOut = false;
+        try {
+            socket.setKeepAlive(true);
+            final BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), ShardProtocol.ENCODING));
+            final PrintWriter out = new PrintWriter(
+                new OutputStreamWriter(socket.getOutputStream(), ShardProtocol.ENCODING));
+            while (true) {
+                if (current == null) {
+                    // an idle worker holds no class
+                    socket.setSoTimeout(0);
+                } else {
+                    final long left = start + timeoutOf(current) - System.currentTimeMillis();
+                    if (left <= 0) {
+                        throw new SocketTimeoutException(current.testClass + " took longer than " +
+                            timeoutOf(current) + "ms");
+                    }
+                    socket.setSoTimeout((int) Math.min(left, Integer.MAX_VALUE));
+                }
+                final String line = in.readLine();
+                if (line == null) {
+                    break;
+                } else if (ShardProtocol.NEXT.equals(line) && current == null) {
+                    current = take();
+                    if (current == null) {
+                        out.print(ShardProtocol.DONE + "\n");
+                        out.flush();
+                        return;
+                    }
+                    current.attempts++;
+                    start = System.currentTimeMillis();
+                    out.print(ShardProtocol.RUN + current.testClass + "\n");
+                    out.flush();
+                } else if (line.startsWith(ShardProtocol.TEST) && current != null) {
+                    results.add(line.substring(ShardProtocol.TEST.length()));
+                } else if (line.startsWith(ShardProtocol.FINISHED) && current != null) {
+                    merge(current, results, System.currentTimeMillis() - start);
+                    results.clear();
+                    current = null;
+                } else {
+                    throw new IOException("unexpected message: " + line);
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            timedOut = true;
+            Reports.warn("dropping shard worker " + worker, e);
+        } catch (IOException e) {
+            Reports.warn("lost shard worker " + worker, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Reports.warn("unable to close connection to " + worker, e);
+            }
+            if (current != null) {
+                crashed(current, worker, timedOut ? "timed out" : "died");
+            }
+        }
+    }
+
+    /**
+     * Waits for the next class. Idle workers keep waiting while other workers are still
+     * running classes, because a crash puts a class back into the queue.
+     */
+    private Assignment take() throws InterruptedException {
+        while (finished.getCount() > 0) {
+            final Assignment next = queue.pollFirst(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (next != null) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private void merge(Assignment assignment, List<String> results, long millis) {
+        synchronized (this) {
+            for (String result : results) {
+                final String[] fields = result.split("\t", 4);
+                final String test = assignment.testClass + "." + fields[0];
+                runs++;
+                if (ShardProtocol.FAILURE.equals(fields[2])) {
+                    failures++;
+                    problems.add("FAILURE " + test + "\n" + ShardProtocol.unescape(fields[3]));
+                } else if (ShardProtocol.ERROR.equals(fields[2])) {
+                    errors++;
+                    problems.add("ERROR " + test + "\n" + ShardProtocol.unescape(fields[3]));
+                }
+                history.record(test, Long.parseLong(fields[1]));
+            }
+        }
+        Reports.info("finished " + assignment.testClass + " in " + millis + "ms");
+        finished.countDown();
+    }
+
+    /**
+     * The time a worker may spend on one class before the class is taken away:
+     * {@link #TIMEOUT_FACTOR} times the expected duration, but at least the configured minimum.
+     */
+    private long timeoutOf(Assignment assignment) {
+        return Math.max(minTimeoutInMs, assignment.expected * TIMEOUT_FACTOR);
+    }
+
+    private void crashed(Assignment assignment, String worker, String reason) {
+        synchronized (this) {
+            crashes++;
+            if (assignment.attempts >= MAX_ATTEMPTS) {
+                runs++;
+                errors++;
+                problems.add("ERROR " + assignment.testClass + "\n" + assignment.attempts +
+                    " workers died or timed out while running it, the last one " + reason + ": " + worker);
+            }
+        }
+        if (assignment.attempts >= MAX_ATTEMPTS) {
+            finished.countDown();
+        } else {
+            Reports.warn("reassigning " + assignment.testClass + " of worker " + worker + ", which " + reason, null);
+            queue.addFirst(assignment);
+        }
+    }
+
+    /**
+     * Waits until all classes are finished.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of timeout
+     * @return true if all classes are finished, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    /**
+     * Reports all classes which were not handed out yet as errors, e.g. because no worker is left.
+     *
+     * @param reason the reason
+     */
+    public void abort(String reason) {
+        Assignment assignment;
+        while ((assignment = queue.pollFirst()) != null) {
+            synchronized (this) {
+                runs++;
+                errors++;
+                problems.add("ERROR " + assignment.testClass + "\n" + reason);
+            }
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Stops accepting workers and saves the duration history.
+     */
+    public synchronized void close() {
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                Reports.warn("unable to close shard coordinator", e);
+            }
+        }
+        try {
+            history.save();
+        } catch (IOException e) {
+            Reports.warn("unable to save duration history " + history.getFile(), e);
+        }
+    }
+
+    public synchronized int getRuns() {
+        return runs;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    public synchronized int getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return how often a worker died while running a class
+     */
+    public synchronized int getCrashes() {
+        return crashes;
+    }
+
+    /**
+     * @return whether all tests passed
+     */
+    public synchronized boolean wasSuccessful() {
+        return failures == 0 && errors == 0;
+    }
+
+    /**
+     * Writes a summary line followed by all failures and errors.
+     *
+     * @param file the report file
+     * @throws IOException if writing failed
+     */
+    public synchronized void writeReport(File file) throws IOException {
+        final PrintWriter writer = Reports.open(file, false);
+        try {
+            writer.println(getSummary());
+            for (String problem : problems) {
+                writer.println();
+                writer.println(problem);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private synchronized String getSummary() {
+        return String.format("Tests run: %d, Failures: %d, Errors: %d, Worker crashes: %d",
+            runs, failures, errors, crashes);
+    }
+
+    /**
+     * Runs the given test classes on local worker jvms and any remote worker which connects.
+     * Exits with 1 if a test did not pass.
+     *
+     * @param args the fully qualified names of the test classes
+     * @throws IOException if the port could not be bound
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int forks = Integer.parseInt(System.getProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_FORKS,
+            CosmoCodeSeleniumTest.CONFIG_SELENIUM_FORKS_DEFAULT));
+        final int port = Integer.parseInt(System.getProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_SHARD_PORT,
+            CosmoCodeSeleniumTest.CONFIG_SELENIUM_SHARD_PORT_DEFAULT));
+        final DurationHistory history = DurationHistory.load(new File(System.getProperty(
+            CosmoCodeSeleniumTest.CONFIG_SELENIUM_DURATIONS, CosmoCodeSeleniumTest.CONFIG_SELENIUM_DURATIONS_DEFAULT)));
+        final File report = new File(System.getProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_SHARD_REPORT,
+            CosmoCodeSeleniumTest.CONFIG_SELENIUM_SHARD_REPORT_DEFAULT));
+
+        final ShardCoordinator coordinator = new ShardCoordinator(Arrays.asList(args), history);
+        final int bound = coordinator.start(port);
+        Reports.info("shard coordinator listening on port " + bound);
+
+        final List<Process> processes = new ArrayList<Process>(forks);
+        for (int i = 0; i < forks; i++) {
+            processes.add(fork(i, bound));
+        }
+
+        try {
+            while (!coordinator.await(1, TimeUnit.SECONDS)) {
+                if (forks > 0 && !isAnyAlive(processes)) {
+                    // remote workers may still hold classes, but nobody will take the queued ones
+                    coordinator.abort("no worker left");
+                }
+            }
+        } finally {
+            coordinator.close();
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+
+        coordinator.writeReport(report);
+        Reports.info(coordinator.getSummary());
+        System.exit(coordinator.wasSuccessful() ? 0 : 1);
+    }
+
+    private static Process fork(int index, int port) throws IOException {
+        final List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("selenium.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add(ShardWorker.class.getName());
+        command.add("localhost");
+        command.add(Integer.toString(port));
+
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        process.getOutputStream().close();
+        final String prefix = "[fork-" + index + "] ";
+        final Thread pump = new Thread("selenium-shard-fork-" + index) {
+            @Override
+            public void run() {
+                try {
+                    final InputStream stream = process.getInputStream();
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        Reports.info(prefix + line);
+                    }
+                } catch (IOException e) {
+                    Reports.warn(prefix + "output lost", e);
+                }
+            }
+        };
+        pump.setDaemon(true);
+        pump.start();
+        return process;
+    }
+
+    private static boolean isAnyAlive(List<Process> processes) {
+        for (Process process : processes) {
+            try {
+                process.exitValue();
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A test class waiting for or running on a worker.
+     */
+    private static final class Assignment {
+
+        private final String testClass;
+        private final long expected;
+        private int attempts;
+
+        private Assignment(String testClass, long expected) {
+            this.testClass = testClass;
+            this.expected = expected;
+        }
+
+    }
+
+}
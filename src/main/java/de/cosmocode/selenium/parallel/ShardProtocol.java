@@ -0,0 +1,102 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+/**
+ * The line based protocol between {@link ShardCoordinator} and {@link ShardWorker}.
+ *
+ * <pre>
+ * worker:      NEXT
+ * coordinator: RUN &lt;class&gt;  or  DONE
+ * worker:      TEST &lt;method&gt;\t&lt;ms&gt;\t&lt;ok|failure|error&gt;\t&lt;message&gt;  (once per test method)
+ * worker:      FINISHED &lt;class&gt;
+ * </pre>
+ *
+ * @since 1.6
+ */
+final class ShardProtocol {
+
+    static final String ENCODING = "UTF-8";
+
+    static final String NEXT = "NEXT";
+    static final String RUN = "RUN ";
+    static final String DONE = "DONE";
+    static final String TEST = "TEST ";
+    static final String FINISHED = "FINISHED ";
+
+    static final String OK = "ok";
+    static final String FAILURE = "failure";
+    static final String ERROR = "error";
+
+    private ShardProtocol() {
+
+    }
+
+    /**
+     * Escapes backslashes, tabs and line breaks, so the value fits into one field.
+     *
+     * @param value the value, may be null
+     * @return the escaped value
+     */
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Reverts {@link #escape(String)}.
+     *
+     * @param value the escaped value
+     * @return the original value
+     */
+    static String unescape(String value) {
+        final StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                unescaped.append(c);
+                continue;
+            }
+            final char next = value.charAt(++i);
+            unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+        }
+        return unescaped.toString();
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.Socket;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestListener;
+import junit.framework.TestResult;
+
+import de.cosmocode.selenium.Reports;
+
+/**
+ * Pulls test classes from a {@link ShardCoordinator}, one at a time, runs them
+ * and reports the results until the coordinator has no work left.
+ *
+ * <p>
+ * Usage: {@code java -cp ... de.cosmocode.selenium.parallel.ShardWorker <host> <port>}
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class ShardWorker {
+
+    private final String host;
+    private final int port;
+
+    public ShardWorker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Connects to the coordinator and runs test classes until it answers with DONE.
+     *
+     * @return how many test classes this worker ran
+     * @throws IOException if the connection failed
+     */
+    public int run() throws IOException {
+        final Socket socket = new Socket(host, port);
+        try {
+            socket.setKeepAlive(true);
+            final BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), ShardProtocol.ENCODING));
+            final PrintWriter out = new PrintWriter(
+                new OutputStreamWriter(socket.getOutputStream(), ShardProtocol.ENCODING));
+            int classes = 0;
+            while (true) {
+                out.print(ShardProtocol.NEXT + "\n");
+                out.flush();
+                final String line = in.readLine();
+                if (line == null || ShardProtocol.DONE.equals(line)) {
+                    return classes;
+                } else if (!line.startsWith(ShardProtocol.RUN)) {
+                    throw new IOException("unexpected answer: " + line);
+                }
+                final String className = line.substring(ShardProtocol.RUN.length());
+                runClass(className, out);
+                out.print(ShardProtocol.FINISHED + className + "\n");
+                out.flush();
+                classes++;
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    private void runClass(String className, final PrintWriter out) {
+        final Class<? extends TestCase> testClass;
+        try {
+            testClass = Class.forName(className).asSubclass(TestCase.class);
+        /* CHECKSTYLE:OFF */
+        } catch (Exception e) {
+        /* CHECKSTYLE:ON */
+            report(out, "class", 0, ShardProtocol.ERROR, e);
+            return;
+        }
+
+        for (TestCase testCase : TestCases.of(testClass)) {
+            final String[] status = {ShardProtocol.OK};
+            final Throwable[] cause = {null};
+            final TestResult result = new TestResult();
+            result.addListener(new TestListener() {
+
+                @Override
+                public void addError(Test test, Throwable t) {
+                    status[0] = ShardProtocol.ERROR;
+                    cause[0] = t;
+                }
+
+                @Override
+                public void addFailure(Test test, AssertionFailedError t) {
+                    if (cause[0] == null) {
+                        status[0] = ShardProtocol.FAILURE;
+                        cause[0] = t;
+                    }
+                }
+
+                @Override
+                public void startTest(Test test) {
+
+                }
+
+                @Override
+                public void endTest(Test test) {
+
+                }
+
+            });
+            final long start = System.currentTimeMillis();
+            testCase.run(result);
+            report(out, testCase.getName(), System.currentTimeMillis() - start, status[0], cause[0]);
+        }
+    }
+
+    private void report(PrintWriter out, String method, long millis, String status, Throwable cause) {
+        final String message;
+        if (cause == null) {
+            message = "";
+        } else {
+            final StringWriter trace = new StringWriter();
+            cause.printStackTrace(new PrintWriter(trace));
+            message = trace.toString();
+        }
+        out.print(ShardProtocol.TEST + method + "\t" + millis + "\t" + status + "\t" +
+            ShardProtocol.escape(message) + "\n");
+        out.flush();
+    }
+
+    /**
+     * Runs a worker.
+     *
+     * @param args the coordinator's host and port
+     * @throws IOException if the connection failed
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            Reports.warn("usage: ShardWorker <host> <port>", null);
+            System.exit(2);
+        }
+        final int classes = new ShardWorker(args[0], Integer.parseInt(args[1])).run();
+        Reports.info("shard worker ran " + classes + " test classes");
+        // sessions of the last class may still hold non-daemon threads
+        System.exit(0);
+    }
+
+}
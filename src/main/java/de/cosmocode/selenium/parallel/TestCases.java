@@ -0,0 +1,63 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Utilities for flattening junit suites.
+ *
+ * @since 1.6
+ */
+final class TestCases {
+
+    private TestCases() {
+
+    }
+
+    /**
+     * Collects all test cases of the given class, in the order {@link TestSuite} creates them.
+     *
+     * @param testClass the test class
+     * @return new instances of all test cases
+     */
+    static List<TestCase> of(Class<? extends TestCase> testClass) {
+        final List<TestCase> cases = new ArrayList<TestCase>();
+        collect(new TestSuite(testClass), cases);
+        return cases;
+    }
+
+    private static void collect(Test test, List<TestCase> cases) {
+        if (test instanceof TestCase) {
+            cases.add((TestCase) test);
+        } else if (test instanceof TestSuite) {
+            final Enumeration<Test> tests = ((TestSuite) test).tests();
+            while (tests.hasMoreElements()) {
+                collect(tests.nextElement(), cases);
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported test: " + test);
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Decodes base64, e.g. screenshots returned by
+ * {@link com.thoughtworks.selenium.Selenium#captureEntirePageScreenshotToString(String)},
+ * straight into a buffer or a memory-mapped file, without intermediate byte arrays
+ * of the encoded or decoded data.
+ *
+ * <p>
+ * Like commons-codec, characters outside the base64 alphabet, e.g. line breaks, are skipped
+ * and both the standard and the url safe alphabet are accepted.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class Base64Decoder {
+
+    private static final int CHUNK = 3 * 1024;
+
+    private static final byte[] VALUES = new byte[128];
+
+    // the largest buffer kept per thread, larger data gets a heap buffer of its own
+    private static final int MAX_REUSED = 16 << 20;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>();
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 26; i++) {
+            VALUES['A' + i] = (byte) i;
+            VALUES['a' + i] = (byte) (26 + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            VALUES['0' + i] = (byte) (52 + i);
+        }
+        VALUES['+'] = 62;
+        VALUES['-'] = 62;
+        VALUES['/'] = 63;
+        VALUES['_'] = 63;
+    }
+
+    private Base64Decoder() {
+
+    }
+
+    /**
+     * Calculates the exact decoded length without decoding.
+     *
+     * @param base64 the encoded data
+     * @return the number of decoded bytes
+     */
+    public static int decodedLength(CharSequence base64) {
+        long chars = 0;
+        final int length = base64.length();
+        for (int i = 0; i < length; i++) {
+            final char c = base64.charAt(i);
+            if (c == '=') {
+                break;
+            } else if (c < VALUES.length && VALUES[c] >= 0) {
+                chars++;
+            }
+        }
+        return (int) (chars * 6 / 8);
+    }
+
+    /**
+     * Decodes into the given buffer, starting at its position.
+     *
+     * @param base64 the encoded data
+     * @param target the buffer, needs at least {@link #decodedLength(CharSequence)} bytes remaining
+     * @return the number of decoded bytes
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public static int decode(CharSequence base64, ByteBuffer target) {
+        // bulk puts of a small chunk are much faster than single puts into direct or mapped buffers
+        final byte[] chunk = new byte[CHUNK];
+        int filled = 0;
+        int written = 0;
+        int bits = 0;
+        int count = 0;
+        final int length = base64.length();
+        for (int i = 0; i < length; i++) {
+            final char c = base64.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            final int value = c < VALUES.length ? VALUES[c] : -1;
+            if (value < 0) {
+                continue;
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                chunk[filled++] = (byte) (bits >> 16);
+                chunk[filled++] = (byte) (bits >> 8);
+                chunk[filled++] = (byte) bits;
+                bits = 0;
+                count = 0;
+                if (filled == CHUNK) {
+                    target.put(chunk, 0, filled);
+                    written += filled;
+                    filled = 0;
+                }
+            }
+        }
+        // 2 or 3 characters of a last incomplete group carry 1 or 2 bytes, a single one carries none
+        if (count == 3) {
+            chunk[filled++] = (byte) (bits >> 10);
+            chunk[filled++] = (byte) (bits >> 2);
+        } else if (count == 2) {
+            chunk[filled++] = (byte) (bits >> 4);
+        }
+        target.put(chunk, 0, filled);
+        return written + filled;
+    }
+
+    /**
+     * Decodes into a file, which is memory-mapped at exactly the decoded length,
+     * so the bytes go straight into the page cache. An existing file is overwritten.
+     *
+     * @param base64 the encoded data
+     * @param file the target file
+     * @return the number of decoded bytes
+     * @throws IOException if the file could not be mapped
+     */
+    public static int decodeTo(CharSequence base64, File file) throws IOException {
+        final int length = decodedLength(base64);
+        final RandomAccessFile output = new RandomAccessFile(file, "rw");
+        try {
+            output.setLength(length);
+            final MappedByteBuffer region = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            return decode(base64, region);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Decodes into a direct buffer which is reused by the current thread and grows to the largest
+     * data decoded so far, up to 16 MB. Larger data is decoded into a new heap buffer.
+     * The returned buffer is only valid until the next call on the same thread.
+     *
+     * @param base64 the encoded data
+     * @return the buffer, positioned at 0 and limited to the decoded bytes
+     */
+    static ByteBuffer decodeToBuffer(CharSequence base64) {
+        final int length = decodedLength(base64);
+        ByteBuffer buffer = BUFFERS.get();
+        if (length > MAX_REUSED) {
+            buffer = ByteBuffer.allocate(length);
+        } else if (buffer == null || buffer.capacity() < length) {
+            final int doubled = buffer == null ? 0 : (int) Math.min(MAX_REUSED, buffer.capacity() * 2L);
+            buffer = ByteBuffer.allocateDirect(Math.max(length, doubled));
+            BUFFERS.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        decode(base64, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a {@link ScreenshotDiff}.
+ *
+ * @since 1.6
+ */
+public final class DiffResult {
+
+    private final long differentPixels;
+    private final long totalPixels;
+    private final double maxDifferentRatio;
+    private final boolean sameSize;
+    private final List<Rectangle> changedTiles;
+
+    DiffResult(long differentPixels, long totalPixels, double maxDifferentRatio,
+            boolean sameSize, List<Rectangle> changedTiles) {
+        this.differentPixels = differentPixels;
+        this.totalPixels = totalPixels;
+        this.maxDifferentRatio = maxDifferentRatio;
+        this.sameSize = sameSize;
+        this.changedTiles = Collections.unmodifiableList(changedTiles);
+    }
+
+    /**
+     * Pixels which differ beyond the tolerance, including pixels which only exist in one of both images.
+     *
+     * @return the number of different pixels
+     */
+    public long getDifferentPixels() {
+        return differentPixels;
+    }
+
+    /**
+     * @return the number of pixels covered by at least one of both images
+     */
+    public long getTotalPixels() {
+        return totalPixels;
+    }
+
+    /**
+     * @return different pixels divided by total pixels
+     */
+    public double getDifferentRatio() {
+        return totalPixels == 0 ? 0 : (double) differentPixels / totalPixels;
+    }
+
+    /**
+     * @return whether both images had the same dimensions
+     */
+    public boolean isSameSize() {
+        return sameSize;
+    }
+
+    /**
+     * The tiles, in coordinates of the actual image, which contain different pixels.
+     *
+     * @return an unmodifiable list of changed tiles, ordered top to bottom
+     */
+    public List<Rectangle> getChangedTiles() {
+        return changedTiles;
+    }
+
+    /**
+     * @return whether the different ratio is within the configured threshold
+     */
+    public boolean isMatch() {
+        return getDifferentRatio() <= maxDifferentRatio;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d pixels differ (%.4f%%) in %d tiles%s",
+            differentPixels, totalPixels, getDifferentRatio() * 100, changedTiles.size(),
+            sameSize ? "" : ", sizes differ");
+    }
+
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares screenshots tile by tile.
+ *
+ * <p>
+ * Both images get hashed per tile first; tiles with equal hashes are skipped without
+ * looking at their pixels again. The remaining tiles are compared pixel by pixel where
+ * two pixels are equal if none of their color channels differs by more than the
+ * channel tolerance. Pixels inside masked regions are ignored. Hashing and comparing
+ * runs in parallel, one task per row of tiles.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class ScreenshotDiff {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "screenshot-diff-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+
+    private final int channelTolerance;
+    private final double maxDifferentRatio;
+    private final ExecutorService executor;
+    private final List<Rectangle> masks = new CopyOnWriteArrayList<Rectangle>();
+
+    /**
+     * Creates a diff which runs on a shared daemon thread pool.
+     *
+     * @param channelTolerance how much a single color channel (0-255) may differ
+     * @param maxDifferentRatio which ratio (0-1) of different pixels is still a match
+     */
+    public ScreenshotDiff(int channelTolerance, double maxDifferentRatio) {
+        this(channelTolerance, maxDifferentRatio, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Creates a diff which runs on the given executor.
+     *
+     * @param channelTolerance how much a single color channel (0-255) may differ
+     * @param maxDifferentRatio which ratio (0-1) of different pixels is still a match
+     * @param executor the executor running hash and compare tasks
+     */
+    public ScreenshotDiff(int channelTolerance, double maxDifferentRatio, ExecutorService executor) {
+        if (channelTolerance < 0 || channelTolerance > 255) {
+            throw new IllegalArgumentException("channelTolerance must be within 0 and 255 but was " + channelTolerance);
+        }
+        if (!(maxDifferentRatio >= 0 && maxDifferentRatio <= 1)) {
+            throw new IllegalArgumentException("maxDifferentRatio must be within 0 and 1 but was " + maxDifferentRatio);
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.channelTolerance = channelTolerance;
+        this.maxDifferentRatio = maxDifferentRatio;
+        this.executor = executor;
+    }
+
+    /**
+     * Excludes the given region, e.g. a clock or an advertisement, from all comparisons.
+     *
+     * @param region the region to ignore
+     * @return this diff
+     */
+    public ScreenshotDiff mask(Rectangle region) {
+        masks.add(new Rectangle(region));
+        return this;
+    }
+
+    /**
+     * Compares both images.
+     *
+     * @param expected the baseline
+     * @param actual the new screenshot
+     * @return the result
+     * @throws IllegalArgumentException if both images use different tile sizes
+     */
+    public DiffResult compare(final TiledImage expected, final TiledImage actual) {
+        if (expected.getTileSize() != actual.getTileSize()) {
+            throw new IllegalArgumentException("tile sizes differ: " +
+                expected.getTileSize() + " != " + actual.getTileSize());
+        }
+
+        hash(expected, actual);
+
+        final boolean sameSize = expected.getWidth() == actual.getWidth() &&
+            expected.getHeight() == actual.getHeight();
+        final int width = Math.min(expected.getWidth(), actual.getWidth());
+        final int height = Math.min(expected.getHeight(), actual.getHeight());
+        final int tileSize = actual.getTileSize();
+        final int rows = (height + tileSize - 1) / tileSize;
+
+        final List<Callable<RowResult>> tasks = new ArrayList<Callable<RowResult>>(rows);
+        for (int row = 0; row < rows; row++) {
+            final int current = row;
+            tasks.add(new Callable<RowResult>() {
+                @Override
+                public RowResult call() {
+                    return compareRow(expected, actual, sameSize, width, height, current);
+                }
+            });
+        }
+
+        long different = 0;
+        final List<Rectangle> changed = new ArrayList<Rectangle>();
+        for (RowResult result : run(tasks)) {
+            different += result.different;
+            changed.addAll(result.changed);
+        }
+
+        final long overlap = (long) width * height;
+        final long expectedArea = (long) expected.getWidth() * expected.getHeight();
+        final long actualArea = (long) actual.getWidth() * actual.getHeight();
+        different += expectedArea + actualArea - 2 * overlap;
+        final long total = expectedArea + actualArea - overlap;
+
+        return new DiffResult(different, total, maxDifferentRatio, sameSize, changed);
+    }
+
+    private void hash(TiledImage... images) {
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        final List<Runnable> publish = new ArrayList<Runnable>();
+        for (final TiledImage image : images) {
+            if (image.hasHashes()) {
+                continue;
+            }
+            final long[] hashes = image.newHashes();
+            for (int row = 0; row < image.getRows(); row++) {
+                final int current = row;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        image.hashRow(hashes, current);
+                        return null;
+                    }
+                });
+            }
+            publish.add(new Runnable() {
+                @Override
+                public void run() {
+                    image.setHashes(hashes);
+                }
+            });
+        }
+        run(tasks);
+        for (Runnable runnable : publish) {
+            runnable.run();
+        }
+    }
+
+    private RowResult compareRow(TiledImage expected, TiledImage actual, boolean sameSize,
+            int width, int height, int row) {
+        final RowResult result = new RowResult();
+        final int tileSize = actual.getTileSize();
+        final int top = row * tileSize;
+        final int bottom = Math.min(top + tileSize, height);
+        final int columns = (width + tileSize - 1) / tileSize;
+
+        for (int column = 0; column < columns; column++) {
+            final int left = column * tileSize;
+            final int right = Math.min(left + tileSize, width);
+
+            // edge tiles of differently sized images cover different pixels
+            final boolean hashable = sameSize ||
+                (right - left == tileSize && bottom - top == tileSize);
+            if (hashable && expected.getHash(column, row) == actual.getHash(column, row)) {
+                continue;
+            }
+
+            final Rectangle tile = new Rectangle(left, top, right - left, bottom - top);
+            final List<Rectangle> tileMasks = masksOf(tile);
+            if (tileMasks == null) {
+                // completely masked
+                continue;
+            }
+
+            long different = 0;
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) {
+                    if (!tileMasks.isEmpty() && isMasked(tileMasks, x, y)) {
+                        continue;
+                    }
+                    if (!isSimilar(expected.getPixel(x, y), actual.getPixel(x, y))) {
+                        different++;
+                    }
+                }
+            }
+            if (different > 0) {
+                result.different += different;
+                result.changed.add(tile);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds all masks intersecting the given tile.
+     *
+     * @return the intersecting masks or null if the tile is completely masked
+     */
+    private List<Rectangle> masksOf(Rectangle tile) {
+        final List<Rectangle> intersecting = new ArrayList<Rectangle>(0);
+        for (Rectangle mask : masks) {
+            if (mask.contains(tile)) {
+                return null;
+            } else if (mask.intersects(tile)) {
+                intersecting.add(mask);
+            }
+        }
+        return intersecting;
+    }
+
+    private static boolean isMasked(List<Rectangle> masks, int x, int y) {
+        for (Rectangle mask : masks) {
+            if (mask.contains(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSimilar(int expected, int actual) {
+        if (expected == actual) {
+            return true;
+        }
+        for (int shift = 0; shift < 32; shift += 8) {
+            final int delta = ((expected >>> shift) & 0xff) - ((actual >>> shift) & 0xff);
+            if (delta > channelTolerance || -delta > channelTolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private <T> List<T> run(List<Callable<T>> tasks) {
+        final List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while comparing screenshots", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Partial result of one row of tiles.
+     */
+    private static final class RowResult {
+
+        private long different;
+        private final List<Rectangle> changed = new ArrayList<Rectangle>();
+
+    }
+
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Content addressed storage for screenshots.
+ *
+ * <p>
+ * Every image is stored once as {@code <directory>/<first two hash characters>/<sha256>.png}.
+ * The index file {@code index.txt} maps each test and step to the hash of its image,
+ * one tab separated line per screenshot.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class ScreenshotStore {
+
+    public static final String INDEX = "index.txt";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final Map<File, ScreenshotStore> STORES = new HashMap<File, ScreenshotStore>();
+
+    private final File directory;
+    // hashes whose files are complete
+    private final Set<String> known = new HashSet<String>();
+    // hashes whose files are being written right now
+    private final Set<String> writing = new HashSet<String>();
+
+    private long stored;
+    private long deduplicated;
+
+    private ScreenshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Retrieves the store for the given directory. All callers share one instance per
+     * directory, so parallel tests append to the same index safely.
+     *
+     * @param directory the store's root directory
+     * @return the store
+     */
+    public static ScreenshotStore open(File directory) {
+        final File key = directory.getAbsoluteFile();
+        synchronized (STORES) {
+            ScreenshotStore store = STORES.get(key);
+            if (store == null) {
+                store = new ScreenshotStore(key);
+                STORES.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Stores a base64 encoded PNG as returned by
+     * {@link com.thoughtworks.selenium.Selenium#captureScreenshotToString()}.
+     * The image is decoded into a direct buffer of the current thread, which is
+     * hashed and written from there.
+     *
+     * @param test the test, e.g. class and method name
+     * @param step the step within the test
+     * @param base64 the encoded image
+     * @return the hash of the image
+     * @throws IOException if writing failed
+     */
+    public String store(String test, String step, String base64) throws IOException {
+        return store(test, step, Base64Decoder.decodeToBuffer(base64));
+    }
+
+    /**
+     * Stores an image.
+     *
+     * @param test the test, e.g. class and method name
+     * @param step the step within the test
+     * @param image the image's bytes
+     * @return the hash of the image
+     * @throws IOException if writing failed
+     */
+    public String store(String test, String step, byte[] image) throws IOException {
+        return store(test, step, ByteBuffer.wrap(image));
+    }
+
+    private String store(String test, String step, ByteBuffer image) throws IOException {
+        final String hash = sha256Hex(image.duplicate());
+        final File file = fileOf(hash);
+
+        final boolean write;
+        synchronized (this) {
+            // the same image taken by another thread, wait until it is on disk or its write failed
+            while (writing.contains(hash)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for " + file);
+                }
+            }
+            if (known.contains(hash) || file.exists()) {
+                known.add(hash);
+                write = false;
+            } else {
+                writing.add(hash);
+                write = true;
+            }
+        }
+
+        if (write) {
+            boolean written = false;
+            try {
+                write(image, file, hash);
+                written = true;
+            } finally {
+                synchronized (this) {
+                    writing.remove(hash);
+                    if (written) {
+                        known.add(hash);
+                    }
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (write) {
+                stored++;
+            } else {
+                deduplicated++;
+            }
+            appendIndex(test, step, hash);
+        }
+        return hash;
+    }
+
+    private static void write(ByteBuffer image, File file, String hash) throws IOException {
+        file.getParentFile().mkdirs();
+        final File temp = new File(file.getParentFile(), hash + ".tmp" + Thread.currentThread().getId());
+        final FileChannel channel = new FileOutputStream(temp).getChannel();
+        try {
+            while (image.hasRemaining()) {
+                channel.write(image);
+            }
+        } finally {
+            channel.close();
+        }
+        if (!temp.renameTo(file) && !file.exists()) {
+            temp.delete();
+            throw new IOException("unable to move " + temp + " to " + file);
+        }
+        temp.delete();
+    }
+
+    private static String sha256Hex(ByteBuffer image) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(image);
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
+    /**
+     * Retrieves the image file of a hash.
+     *
+     * @param hash the hash as returned by {@link #store(String, String, byte[])}
+     * @return the image file
+     */
+    public File fileOf(String hash) {
+        return new File(new File(directory, hash.substring(0, 2)), hash + ".png");
+    }
+
+    /**
+     * Reads the index.
+     *
+     * @return all "test\tstep" keys mapped to their hash, in order of storage
+     * @throws IOException if reading failed
+     */
+    public synchronized Map<String, String> readIndex() throws IOException {
+        final File index = new File(directory, INDEX);
+        if (!index.exists()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> entries = new LinkedHashMap<String, String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(index), ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int split = line.lastIndexOf('\t');
+                if (split > 0) {
+                    entries.put(line.substring(0, split), line.substring(split + 1));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    /**
+     * @return how many images were written in this jvm
+     */
+    public synchronized long getStored() {
+        return stored;
+    }
+
+    /**
+     * @return how many images were already stored and therefore not written again in this jvm
+     */
+    public synchronized long getDeduplicated() {
+        return deduplicated;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private void appendIndex(String test, String step, String hash) throws IOException {
+        directory.mkdirs();
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, INDEX), true), ENCODING);
+        try {
+            writer.write(clean(test) + '\t' + clean(step) + '\t' + hash + '\n');
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String clean(String value) {
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * A decoded screenshot whose pixels are split into square tiles, each with a hash
+ * of its content. Tile hashes are computed lazily once and can be reused for many
+ * comparisons, e.g. when one baseline is compared against several screenshots.
+ *
+ * @since 1.6
+ */
+public final class TiledImage {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final int tileSize;
+    private final int columns;
+    private final int rows;
+
+    private volatile long[] hashes;
+
+    TiledImage(BufferedImage image, int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("tileSize must be positive but was " + tileSize);
+        }
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        this.tileSize = tileSize;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.rows = (height + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Decodes a PNG as returned by {@link com.thoughtworks.selenium.Selenium#captureScreenshotToString()}
+     * and {@link com.thoughtworks.selenium.Selenium#captureEntirePageScreenshotToString(String)}.
+     *
+     * @param base64 the base64 encoded PNG
+     * @param tileSize the edge length of the tiles in pixels
+     * @return the decoded image
+     * @throws IOException if decoding failed
+     */
+    public static TiledImage fromBase64(String base64, int tileSize) throws IOException {
+        return read(new ByteArrayInputStream(Base64.decodeBase64(base64)), tileSize);
+    }
+
+    /**
+     * Decodes an image file, e.g. a baseline.
+     *
+     * @param file the image file
+     * @param tileSize the edge length of the tiles in pixels
+     * @return the decoded image
+     * @throws IOException if reading or decoding failed
+     */
+    public static TiledImage read(File file, int tileSize) throws IOException {
+        final BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("unsupported image format: " + file);
+        }
+        return new TiledImage(image, tileSize);
+    }
+
+    /**
+     * Decodes an image from a stream. The stream will not be closed.
+     *
+     * @param stream the stream containing the image
+     * @param tileSize the edge length of the tiles in pixels
+     * @return the decoded image
+     * @throws IOException if reading or decoding failed
+     */
+    public static TiledImage read(InputStream stream, int tileSize) throws IOException {
+        final BufferedImage image = ImageIO.read(stream);
+        if (image == null) {
+            throw new IOException("unsupported image format");
+        }
+        return new TiledImage(image, tileSize);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getPixel(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    boolean hasHashes() {
+        return hashes != null;
+    }
+
+    long getHash(int column, int row) {
+        return hashes[row * columns + column];
+    }
+
+    /**
+     * Computes the hashes of all tiles in one row, called once per row by {@link ScreenshotDiff}.
+     */
+    void hashRow(long[] target, int row) {
+        final int top = row * tileSize;
+        final int bottom = Math.min(top + tileSize, height);
+        for (int column = 0; column < columns; column++) {
+            final int left = column * tileSize;
+            final int right = Math.min(left + tileSize, width);
+            long hash = FNV_OFFSET;
+            for (int y = top; y < bottom; y++) {
+                final int offset = y * width;
+                for (int x = left; x < right; x++) {
+                    hash ^= pixels[offset + x];
+                    hash *= FNV_PRIME;
+                }
+            }
+            target[row * columns + column] = hash;
+        }
+    }
+
+    long[] newHashes() {
+        return new long[columns * rows];
+    }
+
+    void setHashes(long[] hashes) {
+        this.hashes = hashes;
+    }
+
+}
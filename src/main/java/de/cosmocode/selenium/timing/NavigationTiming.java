@@ -0,0 +1,155 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.timing;
+
+/**
+ * The browser's Navigation and Resource Timing data of one page load.
+ * All times are in ms, relative to the start of the navigation, -1 if the browser did not provide them.
+ *
+ * @since 1.6
+ */
+public final class NavigationTiming {
+
+    /**
+     * Collects everything in one round trip, fields separated by "|", the url last.
+     */
+    private static final String SCRIPT = "(function () {" +
+            "var w = selenium.browserbot.getCurrentWindow(), p = w.performance;" +
+            "if (!p || !p.timing) { return ''; }" +
+            "var t = p.timing, start = t.navigationStart, count = 0, bytes = 0;" +
+            "var since = function (end) { return end > 0 ? end - start : -1; };" +
+            "if (p.getEntriesByType) {" +
+                "var entries = p.getEntriesByType('resource').concat(p.getEntriesByType('navigation'));" +
+                "for (var i = 0; i < entries.length; i++) {" +
+                    "bytes += entries[i].transferSize || entries[i].encodedBodySize || 0;" +
+                    "if (entries[i].entryType == 'resource') { count++; }" +
+                "}" +
+            "}" +
+            "return [t.domainLookupEnd - t.domainLookupStart, t.connectEnd - t.connectStart," +
+                "since(t.responseStart), since(t.domContentLoadedEventEnd), since(t.loadEventEnd)," +
+                "count, bytes, w.location.href].join('|');" +
+        "})()";
+
+    private final String url;
+    private final long dns;
+    private final long connect;
+    private final long timeToFirstByte;
+    private final long domReady;
+    private final long load;
+    private final int resources;
+    private final long resourceBytes;
+
+    public NavigationTiming(String url, long dns, long connect, long timeToFirstByte, long domReady, long load,
+            int resources, long resourceBytes) {
+        this.url = url;
+        this.dns = dns;
+        this.connect = connect;
+        this.timeToFirstByte = timeToFirstByte;
+        this.domReady = domReady;
+        this.load = load;
+        this.resources = resources;
+        this.resourceBytes = resourceBytes;
+    }
+
+    /**
+     * @return the script for {@link com.thoughtworks.selenium.Selenium#getEval(String)}
+     */
+    public static String script() {
+        return SCRIPT;
+    }
+
+    /**
+     * Parses the result of {@link #script()}.
+     *
+     * @param result the script's result
+     * @return the timing or null if the browser does not support the Navigation Timing API
+     */
+    public static NavigationTiming parse(String result) {
+        final String[] fields = result == null ? new String[0] : result.split("\\|", 8);
+        if (fields.length < 8) {
+            return null;
+        }
+        try {
+            return new NavigationTiming(fields[7], Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                Long.parseLong(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                Integer.parseInt(fields[5]), Long.parseLong(fields[6]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the time of the dns lookup
+     */
+    public long getDns() {
+        return dns;
+    }
+
+    /**
+     * @return the time to establish the connection
+     */
+    public long getConnect() {
+        return connect;
+    }
+
+    /**
+     * @return when the first byte of the response arrived
+     */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * @return when the DOMContentLoaded handlers finished
+     */
+    public long getDomReady() {
+        return domReady;
+    }
+
+    /**
+     * @return when the load handlers finished
+     */
+    public long getLoad() {
+        return load;
+    }
+
+    /**
+     * @return how many resources the page loaded so far
+     */
+    public int getResources() {
+        return resources;
+    }
+
+    /**
+     * @return the transferred bytes of the document and its resources, 0 for cross-origin
+     *         resources which do not allow timing
+     */
+    public long getResourceBytes() {
+        return resourceBytes;
+    }
+
+    @Override
+    public String toString() {
+        return url + ": dns " + dns + "ms, connect " + connect + "ms, ttfb " + timeToFirstByte + "ms, dom ready " +
+            domReady + "ms, load " + load + "ms, " + resources + " resources, " + resourceBytes + " bytes";
+    }
+
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.timing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import de.cosmocode.selenium.Reports;
+
+/**
+ * Aggregates the {@link NavigationTiming}s of a run per url pattern, so the functional
+ * tests double as a monitor for the front-end performance of the tested application.
+ *
+ * @since 1.6
+ */
+public final class NavigationTimings implements Reports.Report {
+
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+        "/(\\d+|(?=[^/]*\\d)[0-9a-fA-F]{8,}|" +
+        "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12})(?=/|$)");
+
+    private static NavigationTimings instance;
+
+    private final Map<String, Stats> patterns = new HashMap<String, Stats>();
+
+    private final Reports.OnShutdown onShutdown = Reports.onShutdown("selenium-navigation-timings", this);
+
+    private NavigationTimings() {
+
+    }
+
+    /**
+     * @return the timings of this jvm
+     */
+    public static synchronized NavigationTimings get() {
+        if (instance == null) {
+            instance = new NavigationTimings();
+        }
+        return instance;
+    }
+
+    /**
+     * Derives the default pattern of an url: query and fragment are dropped and path
+     * segments which look like ids, i.e. numbers, hexadecimal hashes and uuids, are replaced by "*".
+     *
+     * @param url the url, e.g. "http://shop/product/4711?ref=home"
+     * @return the pattern, e.g. "http://shop/product/*"
+     */
+    public static String patternOf(String url) {
+        String pattern = url;
+        final int fragment = pattern.indexOf('#');
+        if (fragment >= 0) {
+            pattern = pattern.substring(0, fragment);
+        }
+        final int query = pattern.indexOf('?');
+        if (query >= 0) {
+            pattern = pattern.substring(0, query);
+        }
+        return ID_SEGMENT.matcher(pattern).replaceAll("/*");
+    }
+
+    /**
+     * Adds a page load.
+     *
+     * @param pattern the url pattern the page belongs to
+     * @param timing the page's timing
+     */
+    public synchronized void record(String pattern, NavigationTiming timing) {
+        Stats stats = patterns.get(pattern);
+        if (stats == null) {
+            stats = new Stats(pattern);
+            patterns.put(pattern, stats);
+        }
+        stats.add(timing);
+    }
+
+    /**
+     * Retrieves the aggregated timings of one pattern.
+     *
+     * @param pattern the url pattern
+     * @return a copy of the aggregated timings or null if no page of this pattern was loaded
+     */
+    public synchronized Stats get(String pattern) {
+        final Stats stats = patterns.get(pattern);
+        return stats == null ? null : stats.copy();
+    }
+
+    /**
+     * Ranks the patterns.
+     *
+     * @return all patterns, the slowest average load first
+     */
+    public synchronized List<Stats> getRanked() {
+        final List<Stats> ranked = new ArrayList<Stats>(patterns.size());
+        for (Stats stats : patterns.values()) {
+            ranked.add(stats.copy());
+        }
+        Collections.sort(ranked, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats left, Stats right) {
+                return Double.compare(right.getLoad(), left.getLoad());
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * Writes one tab separated line per url pattern, the slowest average load first.
+     *
+     * @param file the report file
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void writeReport(File file) throws IOException {
+        final PrintWriter writer = Reports.open(file, false);
+        try {
+            writer.println("# loads\tavg dns ms\tavg connect ms\tavg ttfb ms\tavg dom ready ms\tavg load ms" +
+                "\tmax load ms\tavg resources\tavg bytes\tpattern");
+            for (Stats stats : getRanked()) {
+                writer.println(stats);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the {@link #writeReport(File) report} when the jvm shuts down.
+     *
+     * @param file the report file
+     * @see Reports.OnShutdown
+     */
+    public void writeReportOnShutdown(File file) {
+        onShutdown.writeTo(file);
+    }
+
+    /**
+     * The aggregated timings of one url pattern. Averages only include page loads
+     * which provided the respective value.
+     */
+    public static final class Stats {
+
+        private static final int DNS = 0;
+        private static final int CONNECT = 1;
+        private static final int TTFB = 2;
+        private static final int DOM_READY = 3;
+        private static final int LOAD = 4;
+        private static final int RESOURCES = 5;
+        private static final int BYTES = 6;
+
+        private final String pattern;
+        private final long[] sums = new long[7];
+        private final int[] counts = new int[7];
+        private int loads;
+        private long maxLoad = -1;
+
+        private Stats(String pattern) {
+            this.pattern = pattern;
+        }
+
+        private void add(NavigationTiming timing) {
+            loads++;
+            add(DNS, timing.getDns());
+            add(CONNECT, timing.getConnect());
+            add(TTFB, timing.getTimeToFirstByte());
+            add(DOM_READY, timing.getDomReady());
+            add(LOAD, timing.getLoad());
+            add(RESOURCES, timing.getResources());
+            add(BYTES, timing.getResourceBytes());
+            maxLoad = Math.max(maxLoad, timing.getLoad());
+        }
+
+        private void add(int field, long value) {
+            if (value >= 0) {
+                sums[field] += value;
+                counts[field]++;
+            }
+        }
+
+        private double average(int field) {
+            return counts[field] == 0 ? -1 : (double) sums[field] / counts[field];
+        }
+
+        private Stats copy() {
+            final Stats copy = new Stats(pattern);
+            System.arraycopy(sums, 0, copy.sums, 0, sums.length);
+            System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+            copy.loads = loads;
+            copy.maxLoad = maxLoad;
+            return copy;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return how many pages of this pattern were loaded
+         */
+        public int getLoads() {
+            return loads;
+        }
+
+        public double getDns() {
+            return average(DNS);
+        }
+
+        public double getConnect() {
+            return average(CONNECT);
+        }
+
+        public double getTimeToFirstByte() {
+            return average(TTFB);
+        }
+
+        public double getDomReady() {
+            return average(DOM_READY);
+        }
+
+        public double getLoad() {
+            return average(LOAD);
+        }
+
+        /**
+         * @return the slowest load in ms, -1 if unknown
+         */
+        public long getMaxLoad() {
+            return maxLoad;
+        }
+
+        public double getResources() {
+            return average(RESOURCES);
+        }
+
+        public double getResourceBytes() {
+            return average(BYTES);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f\t%d\t%.1f\t%.0f\t%s",
+                loads, getDns(), getConnect(), getTimeToFirstByte(), getDomReady(), getLoad(),
+                maxLoad, getResources(), getResourceBytes(), pattern);
+        }
+
+    }
+
+}
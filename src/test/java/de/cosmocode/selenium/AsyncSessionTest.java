@@ -0,0 +1,116 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.TestCase;
+
+import com.thoughtworks.selenium.Selenium;
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Tests {@link AsyncSession}.
+ *
+ * @since 1.6
+ */
+public class AsyncSessionTest extends TestCase {
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+    private Selenium recording() {
+        return (Selenium) Proxy.newProxyInstance(Selenium.class.getClassLoader(), new Class<?>[] {Selenium.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("click".equals(method.getName())) {
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    calls.add(method.getName());
+                    if ("getTitle".equals(method.getName())) {
+                        return "title";
+                    } else if ("isTextPresent".equals(method.getName())) {
+                        return Boolean.TRUE;
+                    } else if ("getText".equals(method.getName())) {
+                        throw new SeleniumException("element " + args[0] + " not found");
+                    }
+                    return null;
+                }
+            });
+    }
+
+    public void testEveryMethodMaps() {
+        for (Method method : AsyncSelenium.class.getMethods()) {
+            final Method target = AsyncSession.targetOf(method);
+            assertNotNull("no target of " + method, target);
+            assertEquals(method.getName(), target.getName());
+        }
+    }
+
+    public void testCommandsRunInOrder() throws Exception {
+        final AsyncSession session = new AsyncSession(recording(), true);
+        final AsyncSelenium async = session.async();
+        async.open("/");
+        async.type("q", "selenium");
+        async.click("search");
+        assertEquals("title", async.getTitle().get());
+        assertEquals(Boolean.TRUE, async.isTextPresent("results").get());
+        session.close(1000);
+        assertEquals(Arrays.asList("open", "type", "click", "getTitle", "isTextPresent", "stop"), calls);
+    }
+
+    public void testStringArrayFutures() throws Exception {
+        final Method method = AsyncSelenium.class.getMethod("getAllLinks");
+        assertEquals(Selenium.class.getMethod("getAllLinks"), AsyncSession.targetOf(method));
+    }
+
+    public void testGuardOrdersSyncAfterAsyncCommands() throws Exception {
+        final AsyncGuard guard = new AsyncGuard();
+        final Selenium selenium = Interceptors.wrap(recording(), Arrays.asList(guard));
+        final AsyncSession session = new AsyncSession(selenium, false);
+        guard.setAsync(session);
+        session.async().click("send");
+        assertEquals("title", selenium.getTitle());
+        assertEquals(Arrays.asList("click", "getTitle"), calls);
+        session.close(1000);
+    }
+
+    public void testFailureEndsUpInFuture() throws Exception {
+        final AsyncSession session = new AsyncSession(recording(), false);
+        try {
+            session.async().getText("missing").get();
+            fail("getText did not fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SeleniumException);
+        } finally {
+            session.close(1000);
+        }
+        assertFalse("stopped a session it does not own", calls.contains("stop"));
+    }
+
+}
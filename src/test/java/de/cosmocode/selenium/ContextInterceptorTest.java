@@ -0,0 +1,97 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * Tests {@link ContextInterceptor}.
+ *
+ * @since 1.6
+ */
+public class ContextInterceptorTest extends TestCase {
+
+    private final List<String> calls = new ArrayList<String>();
+    private final ContextInterceptor tracker = new ContextInterceptor();
+    private Selenium selenium;
+
+    @Override
+    protected void setUp() {
+        final Selenium recording = (Selenium) Proxy.newProxyInstance(Selenium.class.getClassLoader(),
+            new Class<?>[] {Selenium.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    calls.add(method.getName() + (args == null ? "" : " " + args[0]));
+                    return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                }
+            });
+        selenium = Interceptors.wrap(recording, Arrays.asList(tracker));
+    }
+
+    public void testRepeatedSwitchIsSkipped() {
+        selenium.selectFrame("content");
+        selenium.selectFrame("relative=top");
+        selenium.selectFrame("relative=top");
+        assertEquals(Arrays.asList("selectFrame content", "selectFrame relative=top"), calls);
+        assertEquals(1, tracker.getSkipped());
+        assertEquals(BrowserContext.main(), tracker.getCurrent());
+    }
+
+    public void testPageLoadForgetsFrame() {
+        selenium.selectFrame("content");
+        selenium.click("link");
+        selenium.waitForPageToLoad("30000");
+        assertNull(tracker.getCurrent());
+        selenium.selectFrame("content");
+        assertEquals(Arrays.asList("selectFrame content", "click link", "waitForPageToLoad 30000",
+            "selectFrame content"), calls);
+        assertEquals(0, tracker.getSkipped());
+    }
+
+    public void testNavigationForgetsFrame() {
+        for (String command : new String[] {"goBack", "refresh"}) {
+            selenium.selectWindow("null");
+            selenium.selectFrame("content");
+            if ("goBack".equals(command)) {
+                selenium.goBack();
+            } else {
+                selenium.refresh();
+            }
+            assertNull(command, tracker.getCurrent());
+        }
+    }
+
+    public void testOtherCommandsKeepContext() {
+        selenium.selectFrame("content");
+        selenium.getText("title");
+        selenium.isElementPresent("link");
+        assertEquals(BrowserContext.main().frame("content"), tracker.getCurrent());
+        selenium.selectFrame("relative=up");
+        selenium.selectFrame("relative=top");
+        assertEquals(1, tracker.getSkipped());
+    }
+
+}
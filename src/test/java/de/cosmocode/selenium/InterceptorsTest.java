@@ -0,0 +1,104 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * Tests {@link Interceptors#openString(Selenium, String)}.
+ *
+ * @since 1.6
+ */
+public class InterceptorsTest extends TestCase {
+
+    private static final byte[] SOURCE = "<html>\u00e4</html>".getBytes();
+
+    private final List<String> events = new ArrayList<String>();
+
+    private final StreamingSelenium session = new StreamingSelenium("localhost", 4444, "*mock", "http://localhost/") {
+
+        @Override
+        public InputStream openString(String command, String... args) {
+            events.add("open " + command);
+            return new ByteArrayInputStream(SOURCE);
+        }
+
+    };
+
+    private final SeleniumInterceptor recording = new SeleniumInterceptor() {
+
+        @Override
+        public Object intercept(SeleniumInvocation invocation) throws Throwable {
+            assertTrue(invocation.isStreaming());
+            final StreamedString stream = (StreamedString) invocation.proceed();
+            stream.onClose(new Runnable() {
+                @Override
+                public void run() {
+                    events.add("closed " + stream.getCount());
+                }
+            });
+            return stream;
+        }
+
+    };
+
+    public void testStreamsThroughInterceptors() throws Exception {
+        final CommandLatencies latencies = new CommandLatencies(0);
+        final Selenium selenium = Interceptors.wrap(session, Arrays.asList(latencies, recording));
+
+        final InputStream stream = Interceptors.openString(selenium, "getHtmlSource");
+        assertEquals(Arrays.asList("open getHtmlSource"), events);
+        assertEquals("the command lasts until the stream is closed", 0, latencies.getMeasured("getHtmlSource"));
+
+        final byte[] buffer = new byte[SOURCE.length];
+        assertEquals(SOURCE.length, stream.read(buffer));
+        stream.close();
+        stream.close();
+        assertEquals(Arrays.asList("open getHtmlSource", "closed " + SOURCE.length), events);
+        assertEquals(1, latencies.getMeasured("getHtmlSource"));
+    }
+
+    public void testUnwrapped() throws Exception {
+        final InputStream stream = Interceptors.openString(session, "getBodyText");
+        assertFalse(stream instanceof StreamedString);
+        stream.close();
+        assertEquals(Arrays.asList("open getBodyText"), events);
+    }
+
+    public void testNotStreaming() {
+        final Selenium plain = (Selenium) Proxy.newProxyInstance(Selenium.class.getClassLoader(),
+            new Class<?>[] {Selenium.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return "<html></html>";
+                }
+            });
+        assertNull(Interceptors.openString(Interceptors.wrap(plain, Arrays.asList(recording)), "getHtmlSource"));
+    }
+
+}
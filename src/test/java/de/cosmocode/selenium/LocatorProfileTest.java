@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how {@link LocatorProfile} adds the measurements of the browser.
+ *
+ * @since 1.6
+ */
+public class LocatorProfileTest extends TestCase {
+
+    private static LocatorProfile.Stats statsOf(String locator) {
+        for (LocatorProfile.Stats stats : LocatorProfile.get().getRanked()) {
+            if (stats.getLocator().equals(locator)) {
+                return stats;
+            }
+        }
+        throw new AssertionError(locator);
+    }
+
+    private static void measure(String locator, String result) {
+        assertTrue(LocatorProfile.get().use(locator, 10));
+        LocatorProfile.get().sample(locator, result);
+    }
+
+    public void testSamples() {
+        final String locator = getName() + "=//div[@class='a']";
+        measure(locator, "10|1|div|");
+        measure(locator, "30|1|div|2.5|id=a");
+        final LocatorProfile.Stats stats = statsOf(locator);
+        assertEquals(2, stats.getUses());
+        assertEquals(20.0, stats.getAverageMicros(), 0.001);
+        assertEquals(40.0, stats.getTotalMicros(), 0.001);
+        assertTrue(stats.isFound());
+        assertEquals("id=a", stats.getSuggestion());
+    }
+
+    public void testInvalidSamplesAreDropped() {
+        final String locator = getName() + "=//div";
+        measure(locator, "10|1|div|");
+        measure(locator, null);
+        measure(locator, "null|1|div|");
+        measure(locator, "NaN|1|div|");
+        measure(locator, "-5|1|div|");
+        measure(locator, "10");
+        measure(locator, "20|1|div|null|id=a");
+        measure(locator, "20|1|div|id=a");
+        final LocatorProfile.Stats stats = statsOf(locator);
+        assertEquals(8, stats.getUses());
+        assertEquals(10.0, stats.getAverageMicros(), 0.001);
+        assertNull(stats.getSuggestion());
+    }
+
+}
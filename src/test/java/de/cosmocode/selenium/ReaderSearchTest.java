@@ -0,0 +1,108 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link ReaderSearch}.
+ *
+ * @since 1.6
+ */
+public class ReaderSearchTest extends TestCase {
+
+    /**
+     * Hands out at most a few chars per read, so matches span many reads.
+     */
+    private static final class ChunkedReader extends StringReader {
+
+        private final int chunk;
+        private boolean closed;
+
+        ChunkedReader(String text, int chunk) {
+            super(text);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) throws IOException {
+            return super.read(buffer, off, Math.min(len, chunk));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            super.close();
+        }
+
+    }
+
+    private static boolean contains(String stream, String text) throws IOException {
+        for (int chunk = 1; chunk <= 4; chunk++) {
+            final boolean found = ReaderSearch.contains(new ChunkedReader(stream, chunk), text);
+            assertEquals("chunks of " + chunk, stream.contains(text), found);
+        }
+        return ReaderSearch.contains(new StringReader(stream), text);
+    }
+
+    public void testEmpty() throws IOException {
+        assertTrue(contains("", ""));
+        assertTrue(contains("abc", ""));
+        assertFalse(contains("", "a"));
+    }
+
+    public void testSimple() throws IOException {
+        assertTrue(contains("hello world", "world"));
+        assertTrue(contains("hello world", "hello world"));
+        assertFalse(contains("hello world", "worlds"));
+        assertFalse(contains("hello", "hello world"));
+    }
+
+    public void testOverlappingPrefixes() throws IOException {
+        assertTrue(contains("aaab", "aab"));
+        assertTrue(contains("abababac", "ababac"));
+        assertTrue(contains("abcabcabd", "abcabd"));
+        assertTrue(contains("aabaabaaab", "aabaaab"));
+        assertFalse(contains("abababab", "ababac"));
+        assertFalse(contains("aaaaaaa", "aaab"));
+    }
+
+    public void testMatchAcrossBuffers() throws IOException {
+        // the search buffer holds 8192 chars
+        final char[] filler = new char[8190];
+        Arrays.fill(filler, 'a');
+        final String stream = new String(filler) + "aab<needle>";
+        assertTrue(ReaderSearch.contains(new StringReader(stream), "aab<needle>"));
+        assertTrue(ReaderSearch.contains(new StringReader(stream), "<needle>"));
+        assertFalse(ReaderSearch.contains(new StringReader(stream), "aab<needles>"));
+    }
+
+    public void testStopsAtMatchAndKeepsReaderOpen() throws IOException {
+        final ChunkedReader reader = new ChunkedReader("first second third", 3);
+        assertTrue(ReaderSearch.contains(reader, "second"));
+        assertFalse(reader.closed);
+        // the match ended with the fourth chunk, nothing after it was read
+        final char[] next = new char[32];
+        assertEquals(" th", new String(next, 0, reader.read(next)));
+    }
+
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.thoughtworks.selenium.Selenium;
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Tests the circuit breaker of {@link SeleniumServerHealth} against an in-process node.
+ *
+ * @since 1.6
+ */
+public class SeleniumServerHealthTest extends TestCase {
+
+    private static final String[] PROPERTIES = {
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_FAILURES,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_ERROR_RATE,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_COOLDOWN,
+        CosmoCodeSeleniumTest.CONFIG_SELENIUM_PROBE_INTERVAL
+    };
+
+    private final AtomicInteger status = new AtomicInteger(200);
+    private volatile CountDownLatch probing;
+    private volatile CountDownLatch answer;
+
+    private HttpServer server;
+    private SeleniumServerHealth health;
+
+    @Override
+    protected void setUp() throws Exception {
+        System.setProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_FAILURES, "3");
+        System.setProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_ERROR_RATE, "0.5");
+        System.setProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_CIRCUIT_COOLDOWN, "100");
+        System.setProperty(CosmoCodeSeleniumTest.CONFIG_SELENIUM_PROBE_INTERVAL, "600000");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (probing != null) {
+                    probing.countDown();
+                    try {
+                        answer.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                exchange.sendResponseHeaders(status.get(), -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        // a new port per test, so every test gets its own health
+        final int port = server.getAddress().getPort();
+        health = SeleniumServerHealth.of(new SeleniumServer() {
+            @Override
+            public String getHost() {
+                return "127.0.0.1";
+            }
+
+            @Override
+            public int getPort() {
+                return port;
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        for (String property : PROPERTIES) {
+            System.clearProperty(property);
+        }
+    }
+
+    private void trip() {
+        for (int i = 0; i < 3; i++) {
+            health.recordFailure(10);
+        }
+        assertEquals(SeleniumServerHealth.State.OPEN, health.getCircuitState());
+    }
+
+    public void testConsecutiveFailuresOpen() {
+        assertTrue(health.allowSession());
+        health.recordFailure(10);
+        health.recordFailure(10);
+        health.recordSuccess(10);
+        health.recordFailure(10);
+        assertEquals(SeleniumServerHealth.State.CLOSED, health.getCircuitState());
+        trip();
+        assertEquals(1, health.getTrips());
+        // within the cool-down
+        assertFalse(health.allowSession());
+    }
+
+    public void testErrorRateOpens() {
+        health.recordSuccess(10);
+        health.recordFailure(10);
+        health.recordSuccess(10);
+        health.recordFailure(10);
+        assertEquals(SeleniumServerHealth.State.CLOSED, health.getCircuitState());
+        health.recordSuccess(10);
+        health.recordFailure(10);
+        assertEquals(0.5, health.getErrorRate(), 0.0001);
+        assertEquals(SeleniumServerHealth.State.OPEN, health.getCircuitState());
+    }
+
+    public void testHalfOpenCloses() throws Exception {
+        trip();
+        Thread.sleep(150);
+
+        probing = new CountDownLatch(1);
+        answer = new CountDownLatch(1);
+        final AtomicBoolean allowed = new AtomicBoolean();
+        final Thread prober = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                allowed.set(health.allowSession());
+            }
+        });
+        prober.start();
+        assertTrue(probing.await(5, TimeUnit.SECONDS));
+        assertEquals(SeleniumServerHealth.State.HALF_OPEN, health.getCircuitState());
+        // only one session probes
+        assertFalse(health.allowSession());
+        answer.countDown();
+        prober.join(5000);
+
+        assertTrue(allowed.get());
+        assertEquals(SeleniumServerHealth.State.CLOSED, health.getCircuitState());
+        assertEquals(0, health.getConsecutiveFailures());
+        assertEquals(0.0, health.getErrorRate(), 0.0001);
+    }
+
+    public void testHalfOpenReopens() throws Exception {
+        trip();
+        Thread.sleep(150);
+        status.set(503);
+        assertFalse(health.allowSession());
+        assertEquals(SeleniumServerHealth.State.OPEN, health.getCircuitState());
+        assertEquals(2, health.getTrips());
+        // a new cool-down started
+        status.set(200);
+        assertFalse(health.allowSession());
+        Thread.sleep(150);
+        assertTrue(health.allowSession());
+        assertEquals(SeleniumServerHealth.State.CLOSED, health.getCircuitState());
+    }
+
+    public void testInterceptorCountsNodeFailuresOnly() {
+        final Selenium selenium = Interceptors.wrap((Selenium) Proxy.newProxyInstance(
+            Selenium.class.getClassLoader(), new Class<?>[] {Selenium.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("click".equals(method.getName())) {
+                        throw new SeleniumException("ERROR: Element " + args[0] + " not found");
+                    } else if ("waitForPageToLoad".equals(method.getName())) {
+                        throw new SeleniumException("Timed out after 30000ms");
+                    } else if ("getTitle".equals(method.getName())) {
+                        throw new SeleniumException("Connection refused", new IOException("Connection refused"));
+                    }
+                    return null;
+                }
+            }), Arrays.asList(new HealthInterceptor(health)));
+
+        selenium.open("/");
+        for (int i = 0; i < 3; i++) {
+            try {
+                selenium.click("id=missing");
+                fail("not found");
+            } catch (SeleniumException e) {
+                // a failed test, not a failed node
+            }
+            try {
+                selenium.waitForPageToLoad("30000");
+                fail("timed out");
+            } catch (SeleniumException e) {
+                // the page is slow, not the node
+            }
+        }
+        assertEquals(0, health.getConsecutiveFailures());
+        assertEquals(0.0, health.getErrorRate(), 0.0001);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                selenium.getTitle();
+                fail("connection refused");
+            } catch (SeleniumException e) {
+                // the node is gone
+            }
+        }
+        assertEquals(SeleniumServerHealth.State.OPEN, health.getCircuitState());
+    }
+
+}
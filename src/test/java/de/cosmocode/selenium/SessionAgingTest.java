@@ -0,0 +1,105 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import com.thoughtworks.selenium.Selenium;
+
+/**
+ * Tests the latency tracking and heap sampling of {@link SessionAging}.
+ *
+ * @since 1.6
+ */
+public class SessionAgingTest extends TestCase {
+
+    private static Selenium heap(String... samples) {
+        final Iterator<String> values = Arrays.asList(samples).iterator();
+        return (Selenium) Proxy.newProxyInstance(Selenium.class.getClassLoader(), new Class<?>[] {Selenium.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    // fails on any sample but the given ones
+                    return "getEval".equals(method.getName()) ? values.next() : "title";
+                }
+            });
+    }
+
+    public void testCommandsDoNotSample() {
+        final SessionAging aging = new SessionAging(1);
+        final Selenium selenium = Interceptors.wrap(heap(), Arrays.asList(aging));
+        for (int i = 0; i < 10; i++) {
+            selenium.getTitle();
+        }
+        assertEquals(10, aging.getCommands());
+        assertEquals(-1, aging.getBaselineMemory());
+        assertEquals(0, aging.getMemoryGrowth());
+    }
+
+    public void testFirstCommandIsTimed() {
+        final SessionAging aging = new SessionAging(0);
+        final Selenium slow = (Selenium) Proxy.newProxyInstance(Selenium.class.getClassLoader(),
+            new Class<?>[] {Selenium.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws InterruptedException {
+                    Thread.sleep(50);
+                    return "title";
+                }
+            });
+        // a lazy start happens outside of the interceptors, so the first command is an ordinary one
+        Interceptors.wrap(slow, Arrays.asList(aging)).getTitle();
+        assertEquals(1, aging.getCommands());
+        assertTrue(String.valueOf(aging.getBaselineLatency()), aging.getBaselineLatency() >= 40);
+    }
+
+    public void testFirstCheckpointIsBaseline() {
+        final SessionAging aging = new SessionAging(1);
+        final Selenium target = heap("1000", "1500", "-1", "2500");
+        aging.checkpoint(target);
+        aging.checkpoint(target);
+        assertEquals(1000, aging.getBaselineMemory());
+        assertEquals(500, aging.getMemoryGrowth());
+        // unknown samples keep the latest known one
+        aging.checkpoint(target);
+        assertEquals(500, aging.getMemoryGrowth());
+        aging.checkpoint(target);
+        assertEquals(1500, aging.getMemoryGrowth());
+        assertEquals(0, aging.getCommands());
+    }
+
+    public void testInterval() {
+        final SessionAging aging = new SessionAging(3);
+        final Selenium target = heap("1000", "4000");
+        for (int i = 0; i < 6; i++) {
+            aging.checkpoint(target);
+        }
+        assertEquals(3000, aging.getMemoryGrowth());
+    }
+
+    public void testNeverSample() {
+        final SessionAging aging = new SessionAging(0);
+        aging.checkpoint(heap());
+        assertEquals(-1, aging.getMemory());
+    }
+
+}
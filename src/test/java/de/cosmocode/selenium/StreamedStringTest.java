@@ -0,0 +1,120 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the byte count and the close listeners of {@link StreamedString}.
+ *
+ * @since 1.6
+ */
+public class StreamedStringTest extends TestCase {
+
+    private final List<String> calls = new ArrayList<String>();
+
+    private Runnable listener(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                calls.add(name);
+            }
+        };
+    }
+
+    private StreamedString stream(String content) {
+        return new StreamedString(new FilterInputStream(new ByteArrayInputStream(content.getBytes())) {
+            @Override
+            public void close() throws IOException {
+                calls.add("stream");
+                super.close();
+            }
+        });
+    }
+
+    public void testCount() throws IOException {
+        final StreamedString stream = stream("0123456789");
+        assertEquals('0', stream.read());
+        assertEquals(3, stream.read(new byte[3]));
+        assertEquals(2, stream.skip(2));
+        assertEquals(6, stream.getCount());
+        assertEquals(4, stream.read(new byte[10]));
+        assertEquals(-1, stream.read());
+        assertEquals(10, stream.getCount());
+    }
+
+    public void testListenersRunInReverseAfterClosing() throws IOException {
+        final StreamedString stream = stream("");
+        // registered from the innermost to the outermost interceptor
+        stream.onClose(listener("inner"));
+        stream.onClose(listener("outer"));
+        assertTrue(calls.isEmpty());
+        stream.close();
+        assertEquals(Arrays.asList("stream", "outer", "inner"), calls);
+    }
+
+    public void testListenersRunOnce() throws IOException {
+        final StreamedString stream = stream("");
+        stream.onClose(listener("listener"));
+        stream.close();
+        stream.close();
+        assertEquals(Arrays.asList("stream", "listener"), calls);
+    }
+
+    public void testListenersRunIfClosingFails() {
+        final StreamedString stream = new StreamedString(new ByteArrayInputStream(new byte[0]) {
+            @Override
+            public void close() throws IOException {
+                throw new IOException("broken");
+            }
+        });
+        stream.onClose(listener("listener"));
+        try {
+            stream.close();
+            fail("close failed");
+        } catch (IOException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertEquals(Arrays.asList("listener"), calls);
+    }
+
+    public void testFailingListenerDoesNotSkipOthers() throws IOException {
+        final StreamedString stream = stream("");
+        stream.onClose(listener("inner"));
+        stream.onClose(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("outer");
+            }
+        });
+        try {
+            stream.close();
+            fail("listener failed");
+        } catch (IllegalStateException e) {
+            assertEquals("outer", e.getMessage());
+        }
+        assertEquals(Arrays.asList("stream", "inner"), calls);
+    }
+
+}
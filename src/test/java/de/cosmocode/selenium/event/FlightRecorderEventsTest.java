@@ -0,0 +1,92 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.event;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link FlightRecorderEvents}. The module compiles for Java 6, so the
+ * recording is controlled reflectively as well.
+ *
+ * @since 1.6
+ */
+public class FlightRecorderEventsTest extends TestCase {
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.EventFactory");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public void testInstall() {
+        assertEquals(isAvailable(), FlightRecorderEvents.install());
+        // idempotent
+        assertEquals(isAvailable(), FlightRecorderEvents.install());
+    }
+
+    public void testRecording() throws Exception {
+        if (!FlightRecorderEvents.install()) {
+            return;
+        }
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        final Object recording = recordingClass.newInstance();
+        for (String name : new String[] {"Command", "Wait", "PageLoad"}) {
+            recordingClass.getMethod("enable", String.class).invoke(recording, "de.cosmocode.selenium." + name);
+        }
+        final File file = File.createTempFile("selenium", ".jfr");
+        try {
+            recordingClass.getMethod("start").invoke(recording);
+            SeleniumEvents.fire(new CommandEvent("click", "id=save", 1000L, 2000000L, 0, null));
+            SeleniumEvents.fire(new WaitEvent("waitForElementPresent", "id=done", 1000L, 300L, 3, 200L, true));
+            SeleniumEvents.fire(new PageLoadEvent("clickAndWait", "id=save", 1000L, 500L, 400L, false));
+            recordingClass.getMethod("stop").invoke(recording);
+
+            final Class<?> pathClass = Class.forName("java.nio.file.Path");
+            final Object path = File.class.getMethod("toPath").invoke(file);
+            recordingClass.getMethod("dump", pathClass).invoke(recording, path);
+
+            final List<String> found = new ArrayList<String>();
+            final Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+            for (Object event : (List<?>) recordingFile.getMethod("readAllEvents", pathClass).invoke(null, path)) {
+                final Class<?> recorded = event.getClass();
+                final Object type = recorded.getMethod("getEventType").invoke(event);
+                final String name = (String) type.getClass().getMethod("getName").invoke(type);
+                if (name.startsWith("de.cosmocode.selenium.")) {
+                    final String field = name.endsWith("Command") ? "command" : name.endsWith("Wait") ? "method"
+                        : "trigger";
+                    found.add(name + " " + recorded.getMethod("getString", String.class).invoke(event, field) +
+                        " " + recorded.getMethod("getLong", String.class).invoke(event, "started"));
+                }
+            }
+            assertEquals(3, found.size());
+            assertTrue(found.toString(), found.contains("de.cosmocode.selenium.Command click 1000"));
+            assertTrue(found.toString(), found.contains("de.cosmocode.selenium.Wait waitForElementPresent 1000"));
+            assertTrue(found.toString(), found.contains("de.cosmocode.selenium.PageLoad clickAndWait 1000"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            assertTrue(file.delete());
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.headless;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.thoughtworks.selenium.Selenium;
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Tests {@link HeadlessSelenium} against an in-process http server.
+ *
+ * @since 1.6
+ */
+public class HeadlessSeleniumTest extends TestCase {
+
+    private static final String FORM =
+        "<html><head><title>Form</title></head><body>" +
+        "<form id=\"form\" action=\"echo?stale=1\" method=\"%s\">" +
+        "<input type=\"text\" name=\"q\" id=\"q\" value=\"a b\">" +
+        "<input type=\"hidden\" name=\"h\" id=\"h\" value=\"x\">" +
+        "<input type=\"checkbox\" name=\"c\" id=\"c\" value=\"yes\">" +
+        "<select name=\"s\" id=\"s\"><option>one</option><option value=\"2\">two</option></select>" +
+        "<input type=\"submit\" name=\"go\" id=\"go\" value=\"Go\">" +
+        "<input type=\"reset\" id=\"reset\">" +
+        "<input type=\"image\" name=\"img\" id=\"img\" src=\"go.png\">" +
+        "<button id=\"button\">Button</button>" +
+        "</form></body></html>";
+
+    private HttpServer server;
+    private String base;
+    private Selenium selenium;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new Pages());
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        selenium = HeadlessSelenium.create(base);
+        selenium.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        selenium.stop();
+        server.stop(0);
+    }
+
+    public void testOpenResolvesAgainstBrowserUrl() {
+        selenium.open("/dir/page.html");
+        assertEquals(base + "dir/page.html", selenium.getLocation());
+        assertEquals("Page", selenium.getTitle());
+        // relative to the browser url, not to the current page
+        selenium.open("dir/page.html");
+        assertEquals(base + "dir/page.html", selenium.getLocation());
+    }
+
+    public void testOpenFailsOnErrors() {
+        try {
+            selenium.open("/missing");
+            fail("404");
+        } catch (SeleniumException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Response_Code = 404"));
+        }
+    }
+
+    public void testLinksResolveAgainstCurrentPage() {
+        selenium.open("/dir/page.html");
+        selenium.click("link=Sibling");
+        assertEquals(base + "dir/sibling.html", selenium.getLocation());
+        selenium.goBack();
+        assertEquals(base + "dir/page.html", selenium.getLocation());
+        selenium.click("link=Up");
+        assertEquals(base + "top.html", selenium.getLocation());
+        assertEquals("Top", selenium.getText("//p"));
+    }
+
+    public void testRedirect() {
+        selenium.open("/redirect");
+        assertEquals(base + "dir/page.html", selenium.getLocation());
+    }
+
+    public void testGetForm() {
+        selenium.open("/form/get");
+        selenium.check("c");
+        selenium.select("s", "label=two");
+        selenium.click("go");
+        assertEquals(base + "form/echo?q=a+b&h=x&c=yes&s=2&go=Go", selenium.getLocation());
+        assertEquals("GET q=a+b&h=x&c=yes&s=2&go=Go", selenium.getBodyText());
+    }
+
+    public void testPostForm() {
+        selenium.open("/form/post");
+        selenium.type("q", "typed");
+        selenium.submit("form");
+        assertEquals(base + "form/echo?stale=1", selenium.getLocation());
+        assertEquals("POST q=typed&h=x&s=one", selenium.getBodyText());
+    }
+
+    public void testImageSubmit() {
+        selenium.open("/form/post");
+        selenium.click("img");
+        assertEquals("POST q=a+b&h=x&s=one&img.x=0&img.y=0", selenium.getBodyText());
+    }
+
+    public void testAllButtonsAndFields() {
+        selenium.open("/form/get");
+        assertEquals(Arrays.asList("go", "reset"), Arrays.asList(selenium.getAllButtons()));
+        assertEquals(Arrays.asList("q"), Arrays.asList(selenium.getAllFields()));
+    }
+
+    public void testCookies() {
+        selenium.open("/cookie/set");
+        assertEquals("abc", selenium.getCookieByName("session"));
+        assertEquals("dark", selenium.getCookieByName("theme"));
+
+        selenium.createCookie("manual=1", "");
+        selenium.deleteCookie("theme", "");
+        selenium.open("/cookie/echo");
+        assertEquals(selenium.getCookie(), selenium.getBodyText());
+        assertEquals("session=abc; manual=1", selenium.getCookie());
+
+        selenium.open("/cookie/expire");
+        assertFalse(selenium.isCookiePresent("session"));
+        assertTrue(selenium.isCookiePresent("manual"));
+
+        selenium.deleteAllVisibleCookies();
+        assertEquals("", selenium.getCookie());
+    }
+
+    /**
+     * Serves the pages of this test.
+     */
+    private static final class Pages implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final String path = exchange.getRequestURI().getPath();
+            final String query = exchange.getRequestURI().getRawQuery();
+            if ("/dir/page.html".equals(path)) {
+                send(exchange, 200, "<html><head><title>Page</title></head><body>" +
+                    "<a href=\"sibling.html\">Sibling</a> <a href=\"../top.html\">Up</a></body></html>");
+            } else if ("/dir/sibling.html".equals(path)) {
+                send(exchange, 200, "<html><body><p>Sibling</p></body></html>");
+            } else if ("/top.html".equals(path)) {
+                send(exchange, 200, "<html><body><p>Top</p></body></html>");
+            } else if ("/redirect".equals(path)) {
+                exchange.getResponseHeaders().add("Location", "/dir/page.html");
+                send(exchange, 302, "");
+            } else if (path.startsWith("/form/echo")) {
+                final String data = "POST".equals(exchange.getRequestMethod()) ? read(exchange) : query;
+                send(exchange, 200, "<html><body>" + exchange.getRequestMethod() + " " + data + "</body></html>");
+            } else if ("/form/get".equals(path)) {
+                send(exchange, 200, String.format(FORM, "get"));
+            } else if ("/form/post".equals(path)) {
+                send(exchange, 200, String.format(FORM, "post"));
+            } else if ("/cookie/set".equals(path)) {
+                exchange.getResponseHeaders().add("Set-Cookie", "session=abc; Path=/");
+                exchange.getResponseHeaders().add("Set-Cookie", "theme=dark");
+                send(exchange, 200, "<html><body>set</body></html>");
+            } else if ("/cookie/expire".equals(path)) {
+                exchange.getResponseHeaders().add("Set-Cookie", "session=; Max-Age=0");
+                send(exchange, 200, "<html><body>expired</body></html>");
+            } else if ("/cookie/echo".equals(path)) {
+                final String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+                send(exchange, 200, "<html><body>" + cookie + "</body></html>");
+            } else {
+                send(exchange, 404, "<html><body>not found</body></html>");
+            }
+        }
+
+        private static String read(HttpExchange exchange) throws IOException {
+            final InputStream stream = exchange.getRequestBody();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toString("UTF-8");
+        }
+
+        private static void send(HttpExchange exchange, int status, String body) throws IOException {
+            final byte[] bytes = body.getBytes("UTF-8");
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            final OutputStream stream = exchange.getResponseBody();
+            try {
+                stream.write(bytes);
+            } finally {
+                stream.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.headless;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Tests {@link Locators} on static HTML.
+ *
+ * @since 1.6
+ */
+public class LocatorsTest extends TestCase {
+
+    private static final Document PAGE = HtmlDocuments.parse(
+        "<html><head><title>Page</title></head><body>" +
+        "<div id=\"main\" class=\"content wide\">" +
+        "<p id=\"intro\" class=\"lead\">Hello <b>World</b></p>" +
+        "<ul><li><a id=\"first\" href=\"/one\">First link</a></li>" +
+        "<li><a name=\"second\" href=\"/two?x=1\">Second  link</a></li></ul>" +
+        "<form id=\"search\" action=\"/find\">" +
+        "<input type=\"text\" name=\"q\" id=\"query\" data-role=\"search-box\">" +
+        "<input type=\"submit\" name=\"go\" value=\"Go\">" +
+        "</form></div>" +
+        "<div id=\"footer\"><p class=\"lead small\">Footer</p></div>" +
+        "</body></html>");
+
+    private static List<String> ids(String locator) {
+        final List<String> ids = new ArrayList<String>();
+        for (Element element : Locators.findAll(PAGE, locator)) {
+            ids.add(element.hasAttribute("id") ? element.getAttribute("id") : element.getNodeName());
+        }
+        return ids;
+    }
+
+    public void testIdAndName() {
+        assertEquals(Arrays.asList("intro"), ids("id=intro"));
+        assertEquals(Arrays.asList("query"), ids("name=q"));
+        assertTrue(ids("id=missing").isEmpty());
+    }
+
+    public void testIdentifier() {
+        assertEquals(Arrays.asList("intro"), ids("identifier=intro"));
+        // falls back to the name
+        assertEquals(Arrays.asList("query"), ids("identifier=q"));
+        assertEquals(Arrays.asList("query"), ids("q"));
+        assertEquals(Arrays.asList("main"), ids("main"));
+    }
+
+    public void testXpath() {
+        assertEquals(Arrays.asList("first", "a"), ids("//a"));
+        assertEquals(Arrays.asList("a"), ids("xpath=//a[@name='second']"));
+        try {
+            Locators.findAll(PAGE, "//a[");
+            fail("invalid xpath");
+        } catch (SeleniumException e) {
+            // expected
+        }
+    }
+
+    public void testLink() {
+        assertEquals(Arrays.asList("first"), ids("link=First link"));
+        // whitespace is collapsed like a browser renders it
+        assertEquals(Arrays.asList("a"), ids("link=Second link"));
+        assertEquals(Arrays.asList("first", "a"), ids("link=* link"));
+        assertEquals(Arrays.asList("a"), ids("link=regexp:^Sec"));
+    }
+
+    public void testCss() {
+        assertEquals(Arrays.asList("intro", "p"), ids("css=p.lead"));
+        assertEquals(Arrays.asList("intro"), ids("css=#main p.lead"));
+        assertEquals(Arrays.asList("intro", "p"), ids("css=div > p"));
+        assertTrue(ids("css=#main > b").isEmpty());
+        assertEquals(Arrays.asList("main"), ids("css=div.content.wide"));
+        assertEquals(Arrays.asList("query"), ids("css=input[data-role^=search]"));
+        assertEquals(Arrays.asList("query"), ids("css=input[data-role$='box']"));
+        assertEquals(Arrays.asList("query"), ids("css=input[data-role*=\"h-b\"]"));
+        assertEquals(Arrays.asList("query", "input"), ids("css=form input[name]"));
+        assertEquals(Arrays.asList("input"), ids("css=input[type=submit]"));
+        assertEquals(Arrays.asList("p"), ids("css=p[class~=small]"));
+    }
+
+    public void testUnsupportedCss() {
+        try {
+            Locators.findAll(PAGE, "css=a:first-child");
+            fail("pseudo classes are not supported");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testUnknownPrefix() {
+        try {
+            Locators.findAll(PAGE, "foo=bar");
+            fail("unknown locator type");
+        } catch (SeleniumException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("'foo'"));
+        }
+    }
+
+    public void testDom() {
+        try {
+            Locators.findAll(PAGE, "dom=document.forms[0]");
+            fail("dom locators need javascript");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testRequire() {
+        assertEquals("intro", Locators.require(PAGE, "intro").getAttribute("id"));
+        try {
+            Locators.require(PAGE, "missing");
+            fail("missing element");
+        } catch (SeleniumException e) {
+            assertEquals("ERROR: Element missing not found", e.getMessage());
+        }
+    }
+
+    public void testText() {
+        assertEquals("Hello World", Locators.textOf(Locators.require(PAGE, "intro")));
+        assertEquals("Hello World First link Second link", Locators.textOf(Locators.require(PAGE, "main")));
+    }
+
+}
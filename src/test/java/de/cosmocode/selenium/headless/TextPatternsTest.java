@@ -0,0 +1,60 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.headless;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link TextPatterns}.
+ *
+ * @since 1.6
+ */
+public class TextPatternsTest extends TestCase {
+
+    public void testGlob() {
+        assertTrue(TextPatterns.matches("Hello*", "Hello World"));
+        assertTrue(TextPatterns.matches("glob:H?llo", "Hallo"));
+        assertFalse(TextPatterns.matches("Hello", "Hello World"));
+        assertTrue(TextPatterns.matches("*", ""));
+        // regex characters are literals
+        assertTrue(TextPatterns.matches("a.b (c)", "a.b (c)"));
+        assertFalse(TextPatterns.matches("a.b", "axb"));
+        assertTrue(TextPatterns.matches("line*end", "line\nend"));
+    }
+
+    public void testExact() {
+        assertTrue(TextPatterns.matches("exact:a*b", "a*b"));
+        assertFalse(TextPatterns.matches("exact:a*b", "axxb"));
+        assertTrue(TextPatterns.contains("exact:*", "1 * 2"));
+    }
+
+    public void testRegexp() {
+        // regular expressions search, like in selenium
+        assertTrue(TextPatterns.matches("regexp:W.rld", "Hello World"));
+        assertFalse(TextPatterns.matches("regexp:^World", "Hello World"));
+        assertFalse(TextPatterns.matches("regexp:world", "Hello World"));
+        assertTrue(TextPatterns.matches("regexpi:world", "Hello World"));
+    }
+
+    public void testContains() {
+        assertTrue(TextPatterns.contains("World", "Hello World!"));
+        assertTrue(TextPatterns.contains("W*d", "Hello World!"));
+        assertFalse(TextPatterns.contains("world", "Hello World!"));
+        assertTrue(TextPatterns.contains("regexpi:WORLD", "Hello World!"));
+    }
+
+}
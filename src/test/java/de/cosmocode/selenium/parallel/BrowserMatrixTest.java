@@ -0,0 +1,145 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestListener;
+import junit.framework.TestResult;
+
+/**
+ * Tests how {@link BrowserMatrix} reports the results of its browsers.
+ *
+ * @since 1.6
+ */
+public class BrowserMatrixTest extends TestCase {
+
+    /**
+     * One passing, one failing and one broken test method.
+     */
+    public static class Sample extends TestCase {
+
+        public void testPass() {
+            // passes
+        }
+
+        public void testFail() {
+            fail("failed");
+        }
+
+        public void testError() {
+            throw new IllegalStateException("broken");
+        }
+
+    }
+
+    /**
+     * Records every reported event as "event test".
+     */
+    private static final class Recorder implements TestListener {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        private final List<Test> tests = Collections.synchronizedList(new ArrayList<Test>());
+
+        @Override
+        public void startTest(Test test) {
+            events.add("start " + test);
+            tests.add(test);
+        }
+
+        @Override
+        public void addError(Test test, Throwable throwable) {
+            events.add("error " + test + " " + throwable.getMessage());
+        }
+
+        @Override
+        public void addFailure(Test test, AssertionFailedError failure) {
+            events.add("failure " + test + " " + failure.getMessage());
+        }
+
+        @Override
+        public void endTest(Test test) {
+            events.add("end " + test);
+        }
+
+    }
+
+    private static List<String> sorted(List<String> events) {
+        final List<String> copy = new ArrayList<String>(events);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    public void testResults() {
+        final BrowserMatrix matrix = new BrowserMatrix(Sample.class).addBrowser("*firefox").addBrowser("*chrome");
+        assertEquals(6, matrix.countTestCases());
+
+        final TestResult result = new TestResult();
+        final Recorder recorder = new Recorder();
+        result.addListener(recorder);
+        matrix.run(result);
+
+        assertEquals(6, result.runCount());
+        assertEquals(2, result.failureCount());
+        assertEquals(2, result.errorCount());
+        assertEquals(2, matrix.getResults().size());
+        assertEquals(1, matrix.getResults().get("*firefox").failureCount());
+        assertEquals(1, matrix.getResults().get("*chrome").errorCount());
+
+        // each test method is reported at once, never interleaved with another one
+        for (int i = 0; i < recorder.events.size(); i++) {
+            final String event = recorder.events.get(i);
+            if (event.startsWith("start ")) {
+                final String test = event.substring(6);
+                int end = i + 1;
+                while (!recorder.events.get(end).startsWith("end ")) {
+                    assertTrue(recorder.events.get(end), recorder.events.get(end).contains(test));
+                    end++;
+                }
+                assertEquals("end " + test, recorder.events.get(end));
+            }
+        }
+        assertTrue(recorder.events.contains("failure testFail(" + Sample.class.getName() + ")[*chrome] failed"));
+        assertTrue(recorder.events.contains("error testError(" + Sample.class.getName() + ")[*firefox] broken"));
+    }
+
+    public void testTaggedTestsReplayTheirResult() {
+        final TestResult result = new TestResult();
+        final Recorder recorder = new Recorder();
+        result.addListener(recorder);
+        new BrowserMatrix(Sample.class).addBrowser("*firefox").run(result);
+
+        final TestResult replayed = new TestResult();
+        final Recorder replay = new Recorder();
+        replayed.addListener(replay);
+        for (Test test : new ArrayList<Test>(recorder.tests)) {
+            assertEquals(1, test.countTestCases());
+            test.run(replayed);
+        }
+
+        assertEquals(3, replayed.runCount());
+        assertEquals(1, replayed.failureCount());
+        assertEquals(1, replayed.errorCount());
+        assertEquals(sorted(recorder.events), sorted(replay.events));
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link DurationHistory}.
+ *
+ * @since 1.6
+ */
+public class DurationHistoryTest extends TestCase {
+
+    private File directory;
+    private File file;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = File.createTempFile("history", "");
+        assertTrue(directory.delete());
+        // save creates missing directories
+        file = new File(new File(directory, "target"), "durations.properties");
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+        file.getParentFile().delete();
+        directory.delete();
+    }
+
+    public void testMissingFile() {
+        final DurationHistory history = DurationHistory.load(file);
+        assertEquals(-1, history.get("a.test"));
+        assertEquals(-1, history.getTotal("a."));
+        assertEquals(0, history.getMean());
+    }
+
+    public void testRoundTrip() throws IOException {
+        final DurationHistory history = DurationHistory.load(file);
+        history.record("a.testOne", 100);
+        history.record("a.testTwo", 300);
+        history.record("b.testOne", 50);
+        history.save();
+
+        final DurationHistory loaded = DurationHistory.load(file);
+        assertEquals(file, loaded.getFile());
+        assertEquals(100, loaded.get("a.testOne"));
+        assertEquals(300, loaded.get("a.testTwo"));
+        assertEquals(50, loaded.get("b.testOne"));
+        assertEquals(400, loaded.getTotal("a."));
+        assertEquals(150, loaded.getMean());
+    }
+
+    public void testSmoothing() throws IOException {
+        final DurationHistory history = DurationHistory.load(file);
+        history.record("a.test", 100);
+        history.record("a.test", 300);
+        assertEquals(200, history.get("a.test"));
+        history.save();
+
+        // smoothing continues across runs
+        final DurationHistory next = DurationHistory.load(file);
+        next.record("a.test", 1000);
+        assertEquals(600, next.get("a.test"));
+    }
+
+    public void testInvalidValues() throws IOException {
+        assertTrue(file.getParentFile().mkdirs());
+        final Writer writer = new FileWriter(file);
+        try {
+            writer.write("a.testOne=abc\na.testTwo=40\n");
+        } finally {
+            writer.close();
+        }
+        final DurationHistory history = DurationHistory.load(file);
+        assertEquals(-1, history.get("a.testOne"));
+        assertEquals(40, history.getTotal("a."));
+        assertEquals(40, history.getMean());
+        history.record("a.testOne", 10);
+        assertEquals(10, history.get("a.testOne"));
+    }
+
+}
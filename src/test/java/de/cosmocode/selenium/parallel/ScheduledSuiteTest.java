@@ -0,0 +1,137 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import junit.framework.TestResult;
+
+/**
+ * Tests the longest processing time first planning of {@link ScheduledSuite}.
+ *
+ * @since 1.6
+ */
+public class ScheduledSuiteTest extends TestCase {
+
+    private static final List<String> RUN = Collections.synchronizedList(new ArrayList<String>());
+
+    private File file;
+
+    /**
+     * Records the order its methods run in.
+     */
+    public static class Sample extends TestCase {
+
+        public void testA() {
+            RUN.add(getName());
+        }
+
+        public void testB() {
+            RUN.add(getName());
+        }
+
+        public void testC() {
+            RUN.add(getName());
+        }
+
+        public void testD() {
+            RUN.add(getName());
+        }
+
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        RUN.clear();
+        file = File.createTempFile("durations", ".properties");
+        assertTrue(file.delete());
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    private static String key(String method) {
+        return Sample.class.getName() + "." + method;
+    }
+
+    private DurationHistory history(long a, long b, long c) {
+        final DurationHistory history = DurationHistory.load(file);
+        history.record(key("testA"), a);
+        history.record(key("testB"), b);
+        history.record(key("testC"), c);
+        return history;
+    }
+
+    private static ScheduledSuite suite(int workers, DurationHistory history) {
+        final ScheduledSuite suite = new ScheduledSuite("sample", workers, history);
+        suite.addTestSuite(Sample.class);
+        return suite;
+    }
+
+    public void testLongestFirst() {
+        // testD is unknown and expected to take the mean of 216ms
+        final ScheduledSuite suite = suite(1, history(300, 100, 250));
+        final TestResult result = new TestResult();
+        suite.run(result);
+        assertTrue(result.wasSuccessful());
+        assertEquals(Arrays.asList("testA", "testC", "testD", "testB"), RUN);
+        assertEquals(866, suite.getPlannedMakespan());
+    }
+
+    public void testLeastLoadedWorker() {
+        // A to the first, C to the second, D to the second and B to the first worker
+        final ScheduledSuite suite = suite(2, history(300, 100, 250));
+        suite.run(new TestResult());
+        assertEquals(4, RUN.size());
+        assertEquals(466, suite.getPlannedMakespan());
+    }
+
+    public void testUnknownDurationsSpreadEvenly() {
+        final ScheduledSuite suite = suite(2, DurationHistory.load(file));
+        assertEquals(4, suite.countTestCases());
+        suite.run(new TestResult());
+        assertEquals(4, RUN.size());
+        // each unknown test counts 1ms, two per worker
+        assertEquals(2, suite.getPlannedMakespan());
+    }
+
+    public void testRunUpdatesHistory() {
+        suite(2, DurationHistory.load(file)).run(new TestResult());
+        final DurationHistory saved = DurationHistory.load(file);
+        for (String method : new String[] {"testA", "testB", "testC", "testD"}) {
+            assertTrue(method, saved.get(key(method)) >= 0);
+        }
+    }
+
+    public void testInvalidWorkers() {
+        try {
+            new ScheduledSuite("none", 0, DurationHistory.load(file));
+            fail("no workers");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.parallel;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link ShardProtocol#escape(String)} and {@link ShardProtocol#unescape(String)}.
+ *
+ * @since 1.6
+ */
+public class ShardProtocolTest extends TestCase {
+
+    private static void assertRoundTrip(String value) {
+        final String escaped = ShardProtocol.escape(value);
+        assertFalse("tab in " + escaped, escaped.indexOf('\t') >= 0);
+        assertFalse("line break in " + escaped, escaped.indexOf('\n') >= 0 || escaped.indexOf('\r') >= 0);
+        assertEquals(value, ShardProtocol.unescape(escaped));
+    }
+
+    public void testPlain() {
+        assertEquals("expected:<1> but was:<2>", ShardProtocol.escape("expected:<1> but was:<2>"));
+        assertRoundTrip("expected:<1> but was:<2>");
+    }
+
+    public void testEmpty() {
+        assertRoundTrip("");
+    }
+
+    public void testNull() {
+        assertEquals("", ShardProtocol.escape(null));
+    }
+
+    public void testSeparators() {
+        assertEquals("a\\tb\\nc\\rd", ShardProtocol.escape("a\tb\nc\rd"));
+        assertRoundTrip("a\tb\nc\rd");
+        assertRoundTrip("\r\n\tat de.cosmocode.Test.testLogin(Test.java:42)\r\n");
+    }
+
+    public void testBackslashes() {
+        assertEquals("C:\\\\temp\\\\new", ShardProtocol.escape("C:\\temp\\new"));
+        assertRoundTrip("C:\\temp\\new");
+        assertRoundTrip("\\");
+        assertRoundTrip("\\\\");
+        assertRoundTrip("\\t");
+        assertRoundTrip("\\n\n");
+        assertRoundTrip("trailing\\");
+    }
+
+    public void testRandom() {
+        final char[] alphabet = {'a', '\\', 't', 'n', 'r', '\t', '\n', '\r', '\u00e4', ' '};
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final char[] value = new char[random.nextInt(12)];
+            for (int j = 0; j < value.length; j++) {
+                value[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            assertRoundTrip(new String(value));
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Compares writing base64 encoded screenshots with commons-codec and a {@link FileOutputStream}
+ * to the {@link Base64Decoder}, in throughput and heap allocated per screenshot.
+ *
+ * <p>
+ * Usage: {@code java -cp ... de.cosmocode.selenium.screenshot.Base64Benchmark [KB per image] [images]},
+ * defaults to 2048 KB and 200 images. Allocations are only reported on jvms which can measure them per thread.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class Base64Benchmark {
+
+    private static final int ROUNDS = 3;
+
+    private final String base64;
+    private final int images;
+    private final File directory;
+
+    private Base64Benchmark(int kilobytes, int images, File directory) {
+        final byte[] image = new byte[kilobytes * 1024];
+        new Random(42).nextBytes(image);
+        this.base64 = new String(Base64.encodeBase64(image));
+        this.images = images;
+        this.directory = directory;
+    }
+
+    /**
+     * One way to write a screenshot.
+     */
+    private abstract static class Approach {
+
+        private final String name;
+
+        Approach(String name) {
+            this.name = name;
+        }
+
+        abstract void write(String base64, File file) throws IOException;
+
+    }
+
+    private void run(Approach approach, boolean report) throws IOException {
+        final long allocatedBefore = allocated();
+        final long start = System.nanoTime();
+        for (int i = 0; i < images; i++) {
+            approach.write(base64, new File(directory, (i % 16) + ".png"));
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final long allocatedAfter = allocated();
+        if (!report) {
+            return;
+        }
+
+        final double megabytes = (double) images * Base64Decoder.decodedLength(base64) / (1 << 20);
+        System.out.println(String.format("%-28s %8.2f ms/image %8.1f MB/s %s",
+            approach.name, seconds * 1000 / images, megabytes / seconds,
+            allocatedBefore < 0 ? "" : String.format("%10.1f KB allocated/image",
+                (allocatedAfter - allocatedBefore) / 1024.0 / images)));
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far or -1 if unsupported
+     */
+    private static long allocated() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+            if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the size of each image in KB and the number of images
+     * @throws IOException if writing failed
+     */
+    public static void main(String[] args) throws IOException {
+        final int kilobytes = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        final int images = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "base64-benchmark");
+        directory.mkdirs();
+
+        final Approach[] approaches = {
+            new Approach("commons-codec + stream") {
+                @Override
+                void write(String base64, File file) throws IOException {
+                    final OutputStream stream = new FileOutputStream(file);
+                    try {
+                        stream.write(Base64.decodeBase64(base64));
+                    } finally {
+                        stream.close();
+                    }
+                }
+            },
+            new Approach("decoder + mapped file") {
+                @Override
+                void write(String base64, File file) throws IOException {
+                    Base64Decoder.decodeTo(base64, file);
+                }
+            },
+            new Approach("decoder + direct buffer") {
+                @Override
+                void write(String base64, File file) throws IOException {
+                    final ByteBuffer buffer = Base64Decoder.decodeToBuffer(base64);
+                    final FileChannel channel = new FileOutputStream(file).getChannel();
+                    try {
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    } finally {
+                        channel.close();
+                    }
+                }
+            }
+        };
+
+        final Base64Benchmark benchmark = new Base64Benchmark(kilobytes, images, directory);
+        System.out.println(images + " images of " + kilobytes + " KB, " + ROUNDS + " rounds after a warm-up");
+        for (Approach approach : approaches) {
+            // warm-up
+            benchmark.run(approach, false);
+        }
+        for (int round = 1; round <= ROUNDS; round++) {
+            System.out.println("round " + round);
+            for (Approach approach : approaches) {
+                benchmark.run(approach, true);
+            }
+        }
+
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Tests {@link Base64Decoder} against commons-codec.
+ *
+ * @since 1.6
+ */
+public class Base64DecoderTest extends TestCase {
+
+    private static byte[] decode(String base64) {
+        final ByteBuffer buffer = ByteBuffer.allocate(Base64Decoder.decodedLength(base64));
+        assertEquals(buffer.capacity(), Base64Decoder.decode(base64, buffer));
+        assertFalse(buffer.hasRemaining());
+        return buffer.array();
+    }
+
+    private static void assertLikeCodec(String base64) {
+        final byte[] expected = Base64.decodeBase64(base64);
+        assertEquals(base64, expected.length, Base64Decoder.decodedLength(base64));
+        assertTrue(base64, Arrays.equals(expected, decode(base64)));
+    }
+
+    private static byte[] bytes(int length, long seed) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    public void testEmpty() {
+        assertLikeCodec("");
+        assertLikeCodec("====");
+    }
+
+    public void testPadding() {
+        assertLikeCodec("TQ==");
+        assertLikeCodec("TWE=");
+        assertLikeCodec("TWFu");
+        // without padding
+        assertLikeCodec("TQ");
+        assertLikeCodec("TWE");
+        // anything after the padding is ignored
+        assertLikeCodec("TQ==TWFu");
+    }
+
+    public void testIncompleteGroup() {
+        // a single character of a last group carries no byte
+        assertLikeCodec("TWFuT");
+    }
+
+    public void testWhitespace() {
+        final String base64 = Base64.encodeBase64String(bytes(1000, 1));
+        assertLikeCodec(base64);
+        assertLikeCodec(new String(Base64.encodeBase64Chunked(bytes(1000, 1))));
+        assertLikeCodec(" " + base64.replaceAll("(.{7})", "$1 \t\r\n") + "\n");
+    }
+
+    public void testUrlSafe() {
+        for (int length = 0; length < 64; length++) {
+            final byte[] bytes = bytes(length, length);
+            assertTrue(Arrays.equals(bytes, decode(Base64.encodeBase64URLSafeString(bytes))));
+        }
+    }
+
+    public void testInvalidCharacters() {
+        assertLikeCodec("T!W@F#u$");
+        assertLikeCodec("TW\u00e4Fu\u20ac");
+        assertLikeCodec("\u0000TWFu\u007f");
+    }
+
+    public void testRandom() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            assertLikeCodec(Base64.encodeBase64String(bytes(random.nextInt(10000), i)));
+        }
+    }
+
+    public void testLargerThanChunk() {
+        // a multiple of the chunk size and one byte more
+        assertLikeCodec(Base64.encodeBase64String(bytes(3 * 1024 * 4, 2)));
+        assertLikeCodec(Base64.encodeBase64String(bytes(3 * 1024 * 4 + 1, 3)));
+    }
+
+    public void testBufferTooSmall() {
+        final String base64 = Base64.encodeBase64String(bytes(100, 4));
+        try {
+            Base64Decoder.decode(base64, ByteBuffer.allocate(99));
+            fail("decoded 100 bytes into 99");
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+    }
+
+    public void testDecodeToBuffer() {
+        final byte[] large = bytes(5000, 5);
+        final byte[] small = bytes(10, 6);
+        for (byte[] bytes : new byte[][] {large, small, large}) {
+            final ByteBuffer buffer = Base64Decoder.decodeToBuffer(Base64.encodeBase64String(bytes));
+            assertEquals(0, buffer.position());
+            assertEquals(bytes.length, buffer.remaining());
+            final byte[] decoded = new byte[bytes.length];
+            buffer.get(decoded);
+            assertTrue(Arrays.equals(bytes, decoded));
+        }
+    }
+
+    public void testDecodeTo() throws IOException {
+        final byte[] bytes = bytes(10000, 7);
+        final File file = File.createTempFile("base64", ".bin");
+        try {
+            assertEquals(bytes.length, Base64Decoder.decodeTo(Base64.encodeBase64String(bytes), file));
+            assertEquals(bytes.length, file.length());
+            final byte[] written = new byte[bytes.length];
+            final FileInputStream input = new FileInputStream(file);
+            try {
+                assertEquals(bytes.length, input.read(written));
+            } finally {
+                input.close();
+            }
+            assertTrue(Arrays.equals(bytes, written));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+}
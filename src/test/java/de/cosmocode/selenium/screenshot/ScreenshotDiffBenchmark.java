@@ -0,0 +1,100 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Measures how long {@link ScreenshotDiff#compare(TiledImage, TiledImage)} takes for a full page
+ * screenshot against a baseline whose tile hashes are already known.
+ *
+ * <p>
+ * Usage: {@code java -cp ... de.cosmocode.selenium.screenshot.ScreenshotDiffBenchmark [width] [height]},
+ * defaults to 1280 x 4000 pixels.
+ * </p>
+ *
+ * @since 1.6
+ */
+public final class ScreenshotDiffBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    private ScreenshotDiffBenchmark() {
+
+    }
+
+    private static BufferedImage image(int width, int height, double changedTiles) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random pixels = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, pixels.nextInt(0x1000000));
+            }
+        }
+        final Random tiles = new Random(7);
+        final int size = ScreenshotDiff.DEFAULT_TILE_SIZE;
+        for (int top = 0; top < height; top += size) {
+            for (int left = 0; left < width; left += size) {
+                if (tiles.nextDouble() < changedTiles) {
+                    image.setRGB(left, top, ~image.getRGB(left, top));
+                }
+            }
+        }
+        return image;
+    }
+
+    private static void measure(String name, BufferedImage baseline, BufferedImage screenshot) {
+        final ScreenshotDiff diff = new ScreenshotDiff(0, 0.01);
+        final TiledImage expected = new TiledImage(baseline, ScreenshotDiff.DEFAULT_TILE_SIZE);
+        // hashes the baseline once, like a baseline reused across runs
+        diff.compare(expected, new TiledImage(baseline, ScreenshotDiff.DEFAULT_TILE_SIZE));
+
+        DiffResult result = null;
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            final TiledImage actual = new TiledImage(screenshot, ScreenshotDiff.DEFAULT_TILE_SIZE);
+            final long start = System.nanoTime();
+            result = diff.compare(expected, actual);
+            final long nanos = System.nanoTime() - start;
+            best = Math.min(best, nanos);
+            total += nanos;
+        }
+        System.out.println(String.format("%-20s best %6.1f ms, mean %6.1f ms, %s",
+            name, best / 1e6, total / 1e6 / ROUNDS, result));
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the width and height of the screenshot
+     */
+    public static void main(String[] args) {
+        final int width = args.length > 0 ? Integer.parseInt(args[0]) : 1280;
+        final int height = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+        System.out.println(width + " x " + height + " pixels, " + ROUNDS + " rounds, " +
+            Runtime.getRuntime().availableProcessors() + " cpus");
+
+        final BufferedImage baseline = image(width, height, 0);
+        measure("identical", baseline, image(width, height, 0));
+        measure("1% tiles changed", baseline, image(width, height, 0.01));
+        measure("10% tiles changed", baseline, image(width, height, 0.1));
+        measure("all tiles changed", baseline, image(width, height, 1));
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link ScreenshotDiff} on generated images.
+ *
+ * @since 1.6
+ */
+public class ScreenshotDiffTest extends TestCase {
+
+    private static final int TILE = 16;
+
+    private static BufferedImage image(int width, int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+
+    private static TiledImage tiled(BufferedImage image) {
+        return new TiledImage(image, TILE);
+    }
+
+    private static void fill(BufferedImage image, Rectangle region, int rgb) {
+        for (int y = region.y; y < region.y + region.height; y++) {
+            for (int x = region.x; x < region.x + region.width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+    }
+
+    public void testIdentical() {
+        final DiffResult result = new ScreenshotDiff(0, 0).compare(tiled(image(100, 70)), tiled(image(100, 70)));
+        assertEquals(0, result.getDifferentPixels());
+        assertEquals(100 * 70, result.getTotalPixels());
+        assertTrue(result.isSameSize());
+        assertTrue(result.getChangedTiles().isEmpty());
+        assertTrue(result.isMatch());
+    }
+
+    public void testOneTileDiffers() {
+        final BufferedImage actual = image(100, 70);
+        // inside the tile at column 2, row 1
+        fill(actual, new Rectangle(35, 20, 4, 3), 0xff00ff);
+
+        final DiffResult result = new ScreenshotDiff(0, 0).compare(tiled(image(100, 70)), tiled(actual));
+        assertEquals(4 * 3, result.getDifferentPixels());
+        assertEquals(Arrays.asList(new Rectangle(32, 16, TILE, TILE)), result.getChangedTiles());
+        assertFalse(result.isMatch());
+        assertTrue(new ScreenshotDiff(0, 12.0 / (100 * 70)).compare(tiled(image(100, 70)), tiled(actual)).isMatch());
+    }
+
+    public void testEdgeTile() {
+        final BufferedImage actual = image(100, 70);
+        actual.setRGB(99, 69, 0);
+
+        final DiffResult result = new ScreenshotDiff(0, 0).compare(tiled(image(100, 70)), tiled(actual));
+        assertEquals(1, result.getDifferentPixels());
+        assertEquals(Arrays.asList(new Rectangle(96, 64, 4, 6)), result.getChangedTiles());
+    }
+
+    public void testChannelTolerance() {
+        final BufferedImage expected = image(32, 32);
+        final BufferedImage actual = image(32, 32);
+        final int rgb = actual.getRGB(5, 5);
+        final int blue = rgb & 0xff;
+        actual.setRGB(5, 5, (rgb & ~0xff) | (blue < 128 ? blue + 10 : blue - 10));
+
+        assertEquals(1, new ScreenshotDiff(9, 0).compare(tiled(expected), tiled(actual)).getDifferentPixels());
+        assertEquals(0, new ScreenshotDiff(10, 0).compare(tiled(expected), tiled(actual)).getDifferentPixels());
+    }
+
+    public void testMask() {
+        final BufferedImage actual = image(100, 70);
+        fill(actual, new Rectangle(0, 0, 20, 20), 0);
+        fill(actual, new Rectangle(60, 40, 5, 5), 0);
+
+        final DiffResult result = new ScreenshotDiff(0, 0)
+            .mask(new Rectangle(0, 0, 20, 20))
+            .mask(new Rectangle(60, 40, 3, 5))
+            .compare(tiled(image(100, 70)), tiled(actual));
+        assertEquals(2 * 5, result.getDifferentPixels());
+        assertEquals(Arrays.asList(new Rectangle(48, 32, TILE, TILE), new Rectangle(64, 32, TILE, TILE)),
+            result.getChangedTiles());
+    }
+
+    public void testSizeMismatch() {
+        final DiffResult result = new ScreenshotDiff(0, 1).compare(tiled(image(100, 70)), tiled(image(100, 80)));
+        assertFalse(result.isSameSize());
+        assertEquals(100 * 80, result.getTotalPixels());
+        // same seed, so the first rows of pixels only match where the row width is the same
+        assertEquals(100 * 10, result.getDifferentPixels());
+        assertTrue(result.isMatch());
+        assertFalse(new ScreenshotDiff(0, 0.1).compare(tiled(image(100, 70)), tiled(image(100, 80))).isMatch());
+    }
+
+    public void testDifferentTileSizes() {
+        try {
+            new ScreenshotDiff(0, 0).compare(new TiledImage(image(10, 10), 8), new TiledImage(image(10, 10), 16));
+            fail("tile sizes differ");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testRatioRange() {
+        new ScreenshotDiff(0, 0);
+        new ScreenshotDiff(0, 1);
+        for (double ratio : new double[] {-0.01, 1.01, Double.NaN, Double.POSITIVE_INFINITY}) {
+            try {
+                new ScreenshotDiff(0, ratio);
+                fail("accepted ratio " + ratio);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testChannelToleranceRange() {
+        try {
+            new ScreenshotDiff(256, 0);
+            fail("accepted tolerance 256");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+}
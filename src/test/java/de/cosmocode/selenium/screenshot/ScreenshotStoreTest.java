@@ -0,0 +1,136 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.screenshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the deduplication of {@link ScreenshotStore} in a temporary directory.
+ *
+ * @since 1.6
+ */
+public class ScreenshotStoreTest extends TestCase {
+
+    private static final int ROUNDS = 20;
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = File.createTempFile("screenshots", "");
+        assertTrue(directory.delete());
+    }
+
+    @Override
+    protected void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static List<String> filesOf(ScreenshotStore store, String hash) {
+        final List<String> names = new ArrayList<String>();
+        final File[] children = store.fileOf(hash).getParentFile().listFiles();
+        if (children != null) {
+            for (File child : children) {
+                // other images may share the directory
+                if (child.getName().startsWith(hash)) {
+                    names.add(child.getName());
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    public void testSequential() throws IOException {
+        final ScreenshotStore store = ScreenshotStore.open(directory);
+        final String first = store.store("test", "one", new byte[] {1, 2, 3});
+        final String second = store.store("test", "two", new byte[] {1, 2, 3});
+        final String third = store.store("test", "three", new byte[] {4});
+        assertEquals(first, second);
+        assertFalse(first.equals(third));
+        assertEquals(Arrays.asList(first + ".png"), filesOf(store, first));
+        assertEquals(2, store.getStored());
+        assertEquals(1, store.getDeduplicated());
+
+        final Map<String, String> index = store.readIndex();
+        assertEquals(Arrays.asList("test\tone", "test\ttwo", "test\tthree"), new ArrayList<String>(index.keySet()));
+        assertEquals(Arrays.asList(first, first, third), new ArrayList<String>(index.values()));
+    }
+
+    public void testSameImageFromTwoThreads() throws Exception {
+        final ScreenshotStore store = ScreenshotStore.open(directory);
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                // large enough that both threads hash it at the same time
+                final byte[] image = new byte[1 << 20];
+                Arrays.fill(image, (byte) round);
+                final List<Future<String>> hashes = new ArrayList<Future<String>>();
+                final String step = "round" + round;
+                for (final String thread : new String[] {"first", "second"}) {
+                    hashes.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            barrier.await();
+                            return store.store(thread, step, image);
+                        }
+                    }));
+                }
+                final String hash = hashes.get(0).get();
+                assertEquals(hash, hashes.get(1).get());
+                // one image and no temporary file left
+                assertEquals(Arrays.asList(hash + ".png"), filesOf(store, hash));
+                assertEquals(image.length, store.fileOf(hash).length());
+                // and two index lines
+                final Map<String, String> index = store.readIndex();
+                assertEquals(hash, index.get("first\t" + step));
+                assertEquals(hash, index.get("second\t" + step));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(ROUNDS, store.getStored());
+        assertEquals(ROUNDS, store.getDeduplicated());
+        assertEquals(2 * ROUNDS, store.readIndex().size());
+    }
+
+}
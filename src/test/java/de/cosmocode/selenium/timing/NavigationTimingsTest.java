@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.selenium.timing;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link NavigationTimings#patternOf(String)}.
+ *
+ * @since 1.6
+ */
+public class NavigationTimingsTest extends TestCase {
+
+    public void testPlain() {
+        assertEquals("http://shop/", NavigationTimings.patternOf("http://shop/"));
+        assertEquals("http://shop/products/list.html", NavigationTimings.patternOf("http://shop/products/list.html"));
+    }
+
+    public void testNumericIds() {
+        assertEquals("http://shop/product/*", NavigationTimings.patternOf("http://shop/product/4711"));
+        assertEquals("http://shop/product/*/", NavigationTimings.patternOf("http://shop/product/4711/"));
+        assertEquals("http://shop/order/*/item/*", NavigationTimings.patternOf("http://shop/order/12/item/3"));
+        assertEquals("http://shop/a/*/*/b", NavigationTimings.patternOf("http://shop/a/1/2/b"));
+    }
+
+    public void testSegmentsWithDigitsStay() {
+        assertEquals("http://shop/v2/page1", NavigationTimings.patternOf("http://shop/v2/page1"));
+        assertEquals("http://shop/4711.html", NavigationTimings.patternOf("http://shop/4711.html"));
+        // neither the port nor a numeric host are path segments
+        assertEquals("http://shop:8080/x", NavigationTimings.patternOf("http://shop:8080/x"));
+        assertEquals("http://10.0.0.1/x", NavigationTimings.patternOf("http://10.0.0.1/x"));
+    }
+
+    public void testHashesAndUuids() {
+        assertEquals("http://shop/commit/*", NavigationTimings.patternOf("http://shop/commit/3f2a9c1e"));
+        assertEquals("http://shop/commit/*", NavigationTimings.patternOf(
+            "http://shop/commit/3f2a9c1e5b7d4e6f8a0b1c2d3e4f5a6b7c8d9e0f"));
+        assertEquals("http://shop/user/*/edit", NavigationTimings.patternOf(
+            "http://shop/user/123e4567-e89b-12d3-a456-426614174000/edit"));
+        // words of hex letters only are no hashes
+        assertEquals("http://shop/cafebabe", NavigationTimings.patternOf("http://shop/cafebabe"));
+        // too short for a hash
+        assertEquals("http://shop/ab12", NavigationTimings.patternOf("http://shop/ab12"));
+    }
+
+    public void testQueryStrings() {
+        assertEquals("http://shop/product/*", NavigationTimings.patternOf("http://shop/product/4711?ref=home"));
+        assertEquals("http://shop/search", NavigationTimings.patternOf("http://shop/search?q=1/2&page=3"));
+        assertEquals("http://shop/search", NavigationTimings.patternOf("http://shop/search?"));
+    }
+
+    public void testFragments() {
+        assertEquals("http://shop/faq", NavigationTimings.patternOf("http://shop/faq#section-2"));
+        assertEquals("http://shop/product/*", NavigationTimings.patternOf("http://shop/product/7#reviews?page=2"));
+        assertEquals("http://shop/search", NavigationTimings.patternOf("http://shop/search?q=a#top"));
+        assertEquals("http://shop/app", NavigationTimings.patternOf("http://shop/app#/item/42"));
+    }
+
+}